@@ -0,0 +1,78 @@
+package com.damon.localmsgtx.bench;
+
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TxMsgSqlStore#batchUpdateSendMsg(List)} at various IN-list sizes
+ * Every operation acknowledges the next window of waiting rows, the window is reset to waiting before the
+ * invocation (outside the measurement) so every update really writes {@code inListSize} rows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchUpdateSendMsgBenchmark {
+
+    private static final int POOL_SIZE = 50000;
+
+    @Param({"1", "10", "100", "500"})
+    public int inListSize;
+
+    private BenchDatabase database;
+    private TxMsgSqlStore store;
+    private long firstId;
+    private long windowStart;
+    private List<Long> window;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchDatabase();
+        database.seed(POOL_SIZE, TxMsgStatusEnum.WAITING, System.currentTimeMillis(), BenchDatabase.content(256));
+        store = database.newStore();
+        firstId = database.minId();
+        windowStart = firstId;
+    }
+
+    @Setup(Level.Invocation)
+    public void nextWindow() {
+        if (windowStart + inListSize > firstId + POOL_SIZE) {
+            windowStart = firstId;
+        }
+        database.setStatus(TxMsgStatusEnum.WAITING, windowStart, windowStart + inListSize - 1);
+        window = new ArrayList<>(inListSize);
+        for (long id = windowStart; id < windowStart + inListSize; id++) {
+            window.add(id);
+        }
+        windowStart += inListSize;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public int batchUpdateSendMsg() {
+        return store.batchUpdateSendMsg(window);
+    }
+}
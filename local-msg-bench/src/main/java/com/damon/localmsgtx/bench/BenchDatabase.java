@@ -0,0 +1,103 @@
+package com.damon.localmsgtx.bench;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import com.damon.localmsgtx.store.TxMsgTableVersion;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Embedded H2 database (MySQL mode) holding one V2 layout message table
+ * The table is created by the store from its own DDL (without the index comments H2 does not accept), so the
+ * benchmarks follow the schema of the store
+ */
+public class BenchDatabase implements AutoCloseable {
+
+    public static final String TABLE_NAME = "tx_msg_bench";
+    public static final String TOPIC = "tx-msg-bench";
+    /**
+     * Two digit random factor, one digit shard tail numbers split the table into 10 shards
+     */
+    public static final int RANDOM_FACTOR_LENGTH = 2;
+
+    private static final String INSERT_SQL = "INSERT INTO %s (content, topic, msg_key, msg_tag, status, random_factor, shard, create_time, update_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcConnectionPool dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private long keySequence;
+
+    public BenchDatabase() {
+        this.dataSource = JdbcConnectionPool.create("jdbc:h2:mem:bench-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        newStore();
+    }
+
+    public JdbcConnectionPool getDataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public TxMsgSqlStore newStore() {
+        TxMsgStoreConfig storeConfig = new TxMsgStoreConfig(TABLE_NAME, TOPIC, RANDOM_FACTOR_LENGTH);
+        storeConfig.setTableVersion(TxMsgTableVersion.V2);
+        return new TxMsgSqlStore(dataSource, storeConfig) {
+            @Override
+            protected String createTableSql() {
+                return withoutIndexComments(super.createTableSql());
+            }
+        };
+    }
+
+    /**
+     * Insert rows directly with JDBC batches, ids are consecutive in insertion order
+     */
+    public void seed(int count, TxMsgStatusEnum status, long createTime, String content) {
+        String sql = String.format(INSERT_SQL, TABLE_NAME);
+        List<Object[]> batch = new ArrayList<>(1000);
+        for (int i = 0; i < count; i++) {
+            int shard = ThreadLocalRandom.current().nextInt(100);
+            batch.add(new Object[]{content, TOPIC, "seed-" + (keySequence++), "", status.getStatus(),
+                    String.format("%02d", shard), shard, createTime, createTime});
+            if (batch.size() == 1000) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+    }
+
+    public void setStatus(TxMsgStatusEnum status, long fromId, long toId) {
+        jdbcTemplate.update("UPDATE " + TABLE_NAME + " SET status = ? WHERE id BETWEEN ? AND ?", status.getStatus(), fromId, toId);
+    }
+
+    public long minId() {
+        Long minId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM " + TABLE_NAME, Long.class);
+        return minId == null ? 0 : minId;
+    }
+
+    public void truncate() {
+        jdbcTemplate.execute("TRUNCATE TABLE " + TABLE_NAME);
+    }
+
+    public static String content(int size) {
+        return "x".repeat(size);
+    }
+
+    @Override
+    public void close() {
+        jdbcTemplate.execute("SHUTDOWN");
+        dataSource.dispose();
+    }
+}
@@ -0,0 +1,66 @@
+package com.damon.localmsgtx.bench;
+
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TxMsgSqlStore#deleteExpiredSendedMsg(Long, int, TxMsgStatusEnum)} removing {@code expiredRows} expired sent
+ * messages, with as many waiting messages left in place. The expired rows are inserted before every invocation
+ * (outside the measurement)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DeleteExpiredSendedMsgBenchmark {
+
+    @Param({"1000", "10000"})
+    public int expiredRows;
+
+    @Param({"200", "1000"})
+    public int deleteBatchSize;
+
+    private BenchDatabase database;
+    private TxMsgSqlStore store;
+    private String content;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchDatabase();
+        content = BenchDatabase.content(1024);
+        database.seed(expiredRows, TxMsgStatusEnum.WAITING, 1L, content);
+        store = database.newStore();
+    }
+
+    @Setup(Level.Invocation)
+    public void seedExpired() {
+        database.seed(expiredRows, TxMsgStatusEnum.SENT, 1L, content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public void deleteExpiredSendedMsg() {
+        store.deleteExpiredSendedMsg(2L, deleteBatchSize, TxMsgStatusEnum.SENT);
+    }
+}
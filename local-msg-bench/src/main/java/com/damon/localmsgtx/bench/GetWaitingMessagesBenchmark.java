@@ -0,0 +1,63 @@
+package com.damon.localmsgtx.bench;
+
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TxMsgSqlStore#getWaitingMessages(int, Long, String)} (first page of a shard) at various backlog sizes,
+ * a tenth of the table is sent so the status predicate has something to skip
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GetWaitingMessagesBenchmark {
+
+    @Param({"1000", "100000"})
+    public int backlog;
+
+    @Param({"50", "500"})
+    public int pageSize;
+
+    private BenchDatabase database;
+    private TxMsgSqlStore store;
+    private int shardTailNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchDatabase();
+        database.seed(backlog, TxMsgStatusEnum.WAITING, System.currentTimeMillis(), BenchDatabase.content(1024));
+        database.seed(backlog / 10, TxMsgStatusEnum.SENT, System.currentTimeMillis(), BenchDatabase.content(1024));
+        store = database.newStore();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<TxMsgModel> getWaitingMessages() {
+        shardTailNumber = (shardTailNumber + 1) % 10;
+        return store.getWaitingMessages(pageSize, 0L, String.valueOf(shardTailNumber));
+    }
+}
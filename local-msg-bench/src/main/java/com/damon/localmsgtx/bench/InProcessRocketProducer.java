@@ -0,0 +1,43 @@
+package com.damon.localmsgtx.bench;
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RocketMQ producer stand-in acknowledging every send immediately on the calling thread (no broker, no network)
+ */
+public class InProcessRocketProducer extends DefaultMQProducer {
+
+    private final AtomicLong sentMessages = new AtomicLong();
+
+    public InProcessRocketProducer() {
+        super("tx-msg-bench");
+    }
+
+    @Override
+    public void send(Message msg, SendCallback sendCallback) {
+        sentMessages.incrementAndGet();
+        sendCallback.onSuccess(sendResult(msg.getTopic()));
+    }
+
+    @Override
+    public void send(Collection<Message> msgs, SendCallback sendCallback, long timeout) {
+        sentMessages.addAndGet(msgs.size());
+        sendCallback.onSuccess(sendResult(msgs.iterator().next().getTopic()));
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    private SendResult sendResult(String topic) {
+        return new SendResult(SendStatus.SEND_OK, null, null, new MessageQueue(topic, "bench-broker", 0), 0);
+    }
+}
@@ -0,0 +1,61 @@
+package com.damon.localmsgtx.bench;
+
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TxMsgSqlStore#insertTxMsg(String, String, String)}, one message per operation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertTxMsgBenchmark {
+
+    @Param({"256", "4096"})
+    public int contentSize;
+
+    private BenchDatabase database;
+    private TxMsgSqlStore store;
+    private String content;
+    private long keySequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchDatabase();
+        store = database.newStore();
+        content = BenchDatabase.content(contentSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncate() {
+        database.truncate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public TxMsgModel insertTxMsg() {
+        return store.insertTxMsg(content, "insert-" + (keySequence++), "");
+    }
+}
@@ -0,0 +1,92 @@
+package com.damon.localmsgtx.bench;
+
+import com.damon.localmsgtx.handler.AbstractTxMsgHandler;
+import com.damon.localmsgtx.handler.KafkaTxMsgHandler;
+import com.damon.localmsgtx.handler.RocketTxMsgHandler;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AbstractTxMsgHandler#resendWaitingMessages(String)} end to end over all shards: page reads, producer sends
+ * and status updates. The whole backlog is reset to waiting before every invocation (outside the measurement),
+ * one operation resends the whole backlog
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ResendWaitingMessagesBenchmark {
+
+    public enum Broker {
+        KAFKA, ROCKET
+    }
+
+    @Param({"KAFKA", "ROCKET"})
+    public Broker broker;
+
+    @Param({"500", "5000"})
+    public int backlog;
+
+    private BenchDatabase database;
+    private MockProducer<String, byte[]> kafkaProducer;
+    private AbstractTxMsgHandler handler;
+    private long firstId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchDatabase();
+        database.seed(backlog, TxMsgStatusEnum.WAITING, System.currentTimeMillis(), BenchDatabase.content(1024));
+        firstId = database.minId();
+        TxMsgSqlStore store = database.newStore();
+        if (broker == Broker.KAFKA) {
+            kafkaProducer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+            handler = new KafkaTxMsgHandler(kafkaProducer, store, 50, Integer.MAX_VALUE, 200, 1);
+        } else {
+            handler = new RocketTxMsgHandler(new InProcessRocketProducer(), store, 50, Integer.MAX_VALUE, 200, 1);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void resetBacklog() {
+        database.setStatus(TxMsgStatusEnum.WAITING, firstId, firstId + backlog - 1);
+        if (kafkaProducer != null) {
+            // MockProducer keeps every sent record
+            kafkaProducer.clear();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handler.shutdown();
+        database.close();
+    }
+
+    @Benchmark
+    public int resendWaitingMessages() {
+        int processed = 0;
+        for (int shardTailNumber = 0; shardTailNumber < 10; shardTailNumber++) {
+            processed += handler.resendWaitingMessages(String.valueOf(shardTailNumber));
+        }
+        return processed;
+    }
+}
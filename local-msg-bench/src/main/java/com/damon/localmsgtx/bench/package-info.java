@@ -0,0 +1,12 @@
+/**
+ * JMH benchmarks of the store and handler hot paths, run against an embedded H2 database (MySQL mode)
+ * and in-process producer stand-ins (Kafka {@code MockProducer}, {@link com.damon.localmsgtx.bench.InProcessRocketProducer})
+ * <p>
+ * Build and run (allocation per operation is reported by the gc profiler):
+ * <pre>
+ * mvn -pl local-msg-bench -am package -DskipTests
+ * java -jar local-msg-bench/target/benchmarks.jar -prof gc -rf json -rff result.json
+ * </pre>
+ * Compare the JSON results of two releases to spot regressions before rolling out
+ */
+package com.damon.localmsgtx.bench;
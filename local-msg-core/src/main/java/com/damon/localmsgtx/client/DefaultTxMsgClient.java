@@ -4,6 +4,7 @@ import com.damon.localmsgtx.config.TxMsgConfig;
 import com.damon.localmsgtx.exception.TxMsgException;
 import com.damon.localmsgtx.handler.AbstractTxMsgHandler;
 import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
 import com.damon.localmsgtx.model.TxMsgStatusEnum;
 import com.damon.localmsgtx.utils.StrUtil;
 import org.slf4j.Logger;
@@ -12,26 +13,34 @@ import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Optional;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Kafka transactional message client implementation
  * Ensuring eventual consistency between message sending and local transactions
  */
-public class DefaultTxMsgClient implements ITxMsgClient {
+public class DefaultTxMsgClient implements ITxMsgClient, AutoCloseable {
 
     protected static final Logger logger = LoggerFactory.getLogger(DefaultTxMsgClient.class);
     private static final int MAX_MESSAGE_SIZE = 1048576;
     private final AbstractTxMsgHandler txMsgHandler;
     private final ExecutorService asyncSendExecutor;
+    private final boolean shutdownAsyncSendExecutor;
+    private final TxMsgInFlightLimiter inFlightLimiter;
 
     public DefaultTxMsgClient(TxMsgConfig config) {
         Assert.notNull(config.getAsyncSendExecutor(), "AsyncSendExecutor cannot be null");
         Assert.notNull(config.getTxMsgHandler(), "TxMsgHandler cannot be null");
+        Assert.notNull(config.getInFlightLimiter(), "InFlightLimiter cannot be null");
         this.txMsgHandler = config.getTxMsgHandler();
         this.asyncSendExecutor = config.getAsyncSendExecutor();
+        this.shutdownAsyncSendExecutor = config.isShutdownAsyncSendExecutor();
+        this.inFlightLimiter = config.getInFlightLimiter();
     }
 
     /**
@@ -52,63 +61,218 @@ public class DefaultTxMsgClient implements ITxMsgClient {
 
     @Override
     public Long sendTxMsg(String msgKey, String msgTag, String content) {
-        // Parameter validation
         Assert.hasText(content, "Message content cannot be empty");
+        return sendTxMsg(new TxMsgParam(msgKey, msgTag, content));
+    }
+
+    /**
+     * Send transactional message given as UTF-8 bytes
+     * The bytes are copied and validated as UTF-8 (malformed input is rejected), then stored and sent as they are
+     *
+     * @param msgKey  Message key (non-null)
+     * @param msgTag  Message tag (nullable)
+     * @param content UTF-8 encoded message content (non-empty)
+     * @return Message ID
+     */
+    @Override
+    public Long sendTxMsg(String msgKey, String msgTag, byte[] content) {
+        Assert.notNull(content, "Message content cannot be empty");
+        return sendTxMsg(new TxMsgParam(msgKey, msgTag, content));
+    }
+
+    /**
+     * Send transactional message given as a buffer of UTF-8 bytes (from position to limit, the buffer position is not changed)
+     */
+    @Override
+    public Long sendTxMsg(String msgKey, String msgTag, ByteBuffer content) {
+        Assert.notNull(content, "Message content cannot be empty");
+        return sendTxMsg(new TxMsgParam(msgKey, msgTag, content));
+    }
+
+    /**
+     * Send transactional message to the given topic
+     * Messages of every topic are stored in the same table and resent by the same compensation task
+     *
+     * @param topic   Topic (nullable, the default topic of the store is used)
+     * @param msgKey  Message key (non-null)
+     * @param msgTag  Message tag (nullable)
+     * @param content Message content (non-null)
+     * @return Message ID
+     */
+    @Override
+    public Long sendTxMsg(String topic, String msgKey, String msgTag, String content) {
+        Assert.hasText(content, "Message content cannot be empty");
+        return sendTxMsg(TxMsgParam.ofTopic(topic, msgKey, msgTag, content));
+    }
+
+    @Override
+    public Long sendTxMsg(String topic, String msgKey, String msgTag, byte[] content) {
+        Assert.notNull(content, "Message content cannot be empty");
+        return sendTxMsg(TxMsgParam.ofTopic(topic, msgKey, msgTag, content));
+    }
+
+    private Long sendTxMsg(TxMsgParam txMsgParam) {
+        checkTxMsg(txMsgParam);
+        TxMsgModel txMsg = storeTxMsg(txMsgParam);
+        registerTransactionCallback(List.of(txMsg));
+        return txMsg.getId();
+    }
+
+    /**
+     * Send a batch of transactional messages
+     * All messages are stored with one batched INSERT, and sent after transaction commits
+     *
+     * @param txMsgParams Messages to send (non-empty)
+     * @return Message IDs, in the same order as the given messages
+     */
+    @Override
+    public List<Long> sendTxMsgBatch(List<TxMsgParam> txMsgParams) {
+        Assert.notEmpty(txMsgParams, "Message list cannot be empty");
+        for (TxMsgParam param : txMsgParams) {
+            Assert.notNull(param, "Message cannot be null");
+            checkTxMsg(param);
+        }
+        List<TxMsgModel> txMsgs = storeTxMsgBatch(txMsgParams);
+        registerTransactionCallback(txMsgs);
+        return txMsgs.stream().map(TxMsgModel::getId).toList();
+    }
+
+    /**
+     * Validate message parameters
+     * The UTF-8 bytes computed for the size check are kept in the parameter and reused by the store and the handlers
+     */
+    private void checkTxMsg(TxMsgParam txMsgParam) {
+        String msgKey = txMsgParam.getMsgKey();
+        String msgTag = txMsgParam.getMsgTag();
+        byte[] content = txMsgParam.getContentBytes();
+        // Parameter validation
+        Assert.isTrue(content != null && content.length > 0, "Message content cannot be empty");
         Assert.hasText(msgKey, "Message key cannot be empty");
         Assert.isTrue(msgKey.length() <= 128, "Message key length cannot exceed 128 characters");
         if (StrUtil.isNotEmpty(msgTag)) {
             //msgTag max length 128
             Assert.isTrue(msgTag.length() <= 128, "Message tag length cannot exceed 128 characters");
         }
+        if (StrUtil.isNotEmpty(txMsgParam.getTopic())) {
+            Assert.isTrue(txMsgParam.getTopic().length() <= 255, "Message topic length cannot exceed 255 characters");
+        }
         // 检查消息大小是否超过 Kafka 默认限制
-        int messageSize = content.getBytes(StandardCharsets.UTF_8).length;
+        int messageSize = content.length;
         if (messageSize > MAX_MESSAGE_SIZE) {
             logger.warn("Message size {} bytes exceeds Kafka default limit {} bytes", messageSize, MAX_MESSAGE_SIZE);
             throw new TxMsgException("Message size exceeds Kafka default limit of 1MB");
         }
-        TxMsgModel txMsg = storeTxMsg(content, msgKey, Optional.ofNullable(msgTag).orElse(StrUtil.EMPTY));
-        registerTransactionCallback(txMsg);
-        return txMsg.getId();
     }
 
     /**
-     * Store message to database (within local transaction)
+     * Check that the current operation is within an active transaction
      */
-    private TxMsgModel storeTxMsg(String content, String msgKey, String msgTag) {
-        // Check transaction status
+    private void checkTransactionActive() {
         if (!TransactionSynchronizationManager.isActualTransactionActive()) {
             String errorMsg = "Current operation is not within an active transaction, message sending consistency cannot be guaranteed";
             throw new TxMsgException(errorMsg);
         }
+    }
 
-        TxMsgModel txMsg = txMsgHandler.saveMsg(content, msgKey, msgTag);
+    /**
+     * Store message to database (within local transaction)
+     */
+    private TxMsgModel storeTxMsg(TxMsgParam txMsgParam) {
+        // Check transaction status
+        checkTransactionActive();
+
+        TxMsgModel txMsg = txMsgHandler.saveMsg(txMsgParam);
         logger.debug("Transactional message stored in database, msgId: {}", txMsg.getId());
         return txMsg;
 
     }
 
+    /**
+     * Store messages to database in one batch (within local transaction)
+     */
+    private List<TxMsgModel> storeTxMsgBatch(List<TxMsgParam> txMsgParams) {
+        // Check transaction status
+        checkTransactionActive();
+
+        List<TxMsgModel> txMsgs = txMsgHandler.saveMsgBatch(txMsgParams);
+        logger.debug("Transactional messages stored in database, count: {}", txMsgs.size());
+        return txMsgs;
+    }
+
     /**
      * Register transaction synchronization callback, send message after transaction commits
+     * Only one synchronization is registered per transaction (bound as a transaction resource keyed by this client),
+     * it collects every message stored in the transaction and dispatches them as a single batch after commit
      */
-    private void registerTransactionCallback(TxMsgModel txMsg) {
-        // Register post-transaction-commit callback
-        TransactionSynchronization synchronization = new TransactionSynchronization() {
-            @Override
-            public void afterCommit() {
-                logger.debug("Transaction committed, preparing to send message, msgId: {}", txMsg.getId());
-                asyncSendExecutor.submit(() -> txMsgHandler.sendMsg(txMsg));
-            }
+    private void registerTransactionCallback(List<TxMsgModel> txMsgs) {
+        TxMsgSendSynchronization synchronization = (TxMsgSendSynchronization) TransactionSynchronizationManager.getResource(this);
+        if (synchronization == null) {
+            // Register post-transaction-commit callback
+            synchronization = new TxMsgSendSynchronization();
+            TransactionSynchronizationManager.bindResource(this, synchronization);
+            TransactionSynchronizationManager.registerSynchronization(synchronization);
+            logger.debug("Transaction synchronization callback registered");
+        }
+        synchronization.add(txMsgs);
+    }
 
-            @Override
-            public void afterCompletion(int status) {
-                if (status != TransactionSynchronization.STATUS_COMMITTED) {
-                    logger.info("Transaction not committed (status: {}), no need to send message, msgId: {}", status, txMsg.getId());
-                }
+    /**
+     * Transaction synchronization collecting all messages of one transaction
+     */
+    private class TxMsgSendSynchronization implements TransactionSynchronization {
+
+        private final List<TxMsgModel> txMsgs = new ArrayList<>();
+
+        void add(List<TxMsgModel> txMsgModels) {
+            txMsgs.addAll(txMsgModels);
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResourceIfPossible(DefaultTxMsgClient.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(DefaultTxMsgClient.this, this);
+        }
+
+        @Override
+        public void afterCommit() {
+            logger.debug("Transaction committed, preparing to send messages, count: {}", txMsgs.size());
+            List<TxMsgModel> committedMsgs = List.copyOf(txMsgs);
+            int msgCount = committedMsgs.size();
+            long msgBytes = 0;
+            for (TxMsgModel txMsg : committedMsgs) {
+                msgBytes += txMsg.getContentBytes().length;
+            }
+            if (!inFlightLimiter.tryAcquire(msgCount, msgBytes)) {
+                logger.warn("In-flight send limit reached (messages: {}, bytes: {}), {} messages left to the compensation task",
+                        inFlightLimiter.getInFlightMessages(), inFlightLimiter.getInFlightBytes(), msgCount);
+                return;
             }
-        };
+            final long admittedBytes = msgBytes;
+            try {
+                asyncSendExecutor.submit(() -> {
+                    try {
+                        txMsgHandler.sendMsgBatch(committedMsgs);
+                    } finally {
+                        inFlightLimiter.release(msgCount, admittedBytes);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlightLimiter.release(msgCount, admittedBytes);
+                logger.warn("Async send executor rejected {} messages, they will be resent by the compensation task", msgCount);
+            }
+        }
 
-        TransactionSynchronizationManager.registerSynchronization(synchronization);
-        logger.debug("Transaction synchronization callback registered, msgId: {}", txMsg.getId());
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(DefaultTxMsgClient.this);
+            if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                logger.info("Transaction not committed (status: {}), no need to send messages, count: {}", status, txMsgs.size());
+            }
+        }
     }
 
     /**
@@ -131,4 +295,24 @@ public class DefaultTxMsgClient implements ITxMsgClient {
         logger.info("Starting to clean up expired messages, expiration time: {}ms", expireTime);
         txMsgHandler.deleteExpiredSentMessages(expireTime, TxMsgStatusEnum.SENT);
     }
+
+    /**
+     * Stop the async send executor (waiting for submitted sends) when the config hands it over to the client,
+     * and release handler resources, flushing any queued status updates. An executor owned by the caller is left
+     * running, its pending sends are resent by the compensation task if they do not complete
+     */
+    @Override
+    public void close() {
+        if (shutdownAsyncSendExecutor) {
+            asyncSendExecutor.shutdown();
+            try {
+                if (!asyncSendExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logger.warn("Async send executor did not terminate in time, unsent messages will be resent by the compensation task");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        txMsgHandler.shutdown();
+    }
 }
@@ -3,7 +3,19 @@ package com.damon.localmsgtx.client;
 
 import com.damon.localmsgtx.exception.TxMsgDuplicateKeyException;
 import com.damon.localmsgtx.exception.TxMsgStoreException;
+import com.damon.localmsgtx.model.TxMsgParam;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Transactional message client
+ * <p>
+ * Message keys are unique across all topics of a table and a duplicate is rejected with
+ * {@link TxMsgDuplicateKeyException}, except on a partitioned table
+ * ({@link com.damon.localmsgtx.config.TxMsgStoreConfig#setPartitionInterval}), which cannot enforce it: a duplicate
+ * key is stored and sent again, consumers must deduplicate
+ */
 public interface ITxMsgClient {
 
     /**
@@ -12,7 +24,7 @@ public interface ITxMsgClient {
      * @param msgKey  Message key (must not be null or empty)
      * @param content Message content (must not be null or empty)
      * @return Message ID
-     * @throws TxMsgDuplicateKeyException if the message key already exists
+     * @throws TxMsgDuplicateKeyException if the message key already exists (unique message keys only)
      * @throws TxMsgStoreException        if the message cannot be stored
      * @throws IllegalArgumentException   if the message key or content is null or empty
      */
@@ -31,6 +43,71 @@ public interface ITxMsgClient {
      */
     Long sendTxMsg(String msgKey, String magTag, String content) throws IllegalArgumentException, TxMsgDuplicateKeyException, TxMsgStoreException;
 
+    /**
+     * send transactional message given as UTF-8 bytes, stored and sent without conversion to a String
+     *
+     * @param msgKey  Message key (must not be null or empty)
+     * @param msgTag  Message tag (may be null)
+     * @param content UTF-8 encoded message content (must not be null or empty)
+     * @return Message ID
+     * @throws TxMsgDuplicateKeyException if the message key already exists (unique message keys only)
+     * @throws TxMsgStoreException        if the message cannot be stored
+     * @throws IllegalArgumentException   if the message key or content is null or empty, or the content is not valid UTF-8
+     */
+    Long sendTxMsg(String msgKey, String msgTag, byte[] content) throws IllegalArgumentException, TxMsgDuplicateKeyException, TxMsgStoreException;
+
+    /**
+     * send transactional message given as a buffer of UTF-8 bytes (the remaining bytes are used)
+     *
+     * @param msgKey  Message key (must not be null or empty)
+     * @param msgTag  Message tag (may be null)
+     * @param content UTF-8 encoded message content (must not be null or empty)
+     * @return Message ID
+     * @throws TxMsgDuplicateKeyException if the message key already exists (unique message keys only)
+     * @throws TxMsgStoreException        if the message cannot be stored
+     * @throws IllegalArgumentException   if the message key or content is null or empty, or the content is not valid UTF-8
+     */
+    Long sendTxMsg(String msgKey, String msgTag, ByteBuffer content) throws IllegalArgumentException, TxMsgDuplicateKeyException, TxMsgStoreException;
+
+    /**
+     * send transactional message to the given topic, messages of any topic share the table of the store
+     *
+     * @param topic   Topic (null or empty for the default topic of the store)
+     * @param msgKey  Message key (must not be null or empty)
+     * @param msgTag  Message tag (may be null)
+     * @param content Message content (must not be null or empty)
+     * @return Message ID
+     * @throws TxMsgDuplicateKeyException if the message key already exists (unique message keys only)
+     * @throws TxMsgStoreException        if the message cannot be stored
+     * @throws IllegalArgumentException   if the message key or content is null or empty
+     */
+    Long sendTxMsg(String topic, String msgKey, String msgTag, String content) throws IllegalArgumentException, TxMsgDuplicateKeyException, TxMsgStoreException;
+
+    /**
+     * send transactional message given as UTF-8 bytes to the given topic
+     *
+     * @param topic   Topic (null or empty for the default topic of the store)
+     * @param msgKey  Message key (must not be null or empty)
+     * @param msgTag  Message tag (may be null)
+     * @param content UTF-8 encoded message content (must not be null or empty)
+     * @return Message ID
+     * @throws TxMsgDuplicateKeyException if the message key already exists (unique message keys only)
+     * @throws TxMsgStoreException        if the message cannot be stored
+     * @throws IllegalArgumentException   if the message key or content is null or empty, or the content is not valid UTF-8
+     */
+    Long sendTxMsg(String topic, String msgKey, String msgTag, byte[] content) throws IllegalArgumentException, TxMsgDuplicateKeyException, TxMsgStoreException;
+
+    /**
+     * send a batch of transactional messages with one batched insert
+     *
+     * @param txMsgParams Messages to send (must not be null or empty), each may target its own topic
+     * @return Message IDs, in the same order as the given messages
+     * @throws TxMsgDuplicateKeyException if any message key already exists (unique message keys only)
+     * @throws TxMsgStoreException        if the messages cannot be stored
+     * @throws IllegalArgumentException   if any message key or content is null or empty
+     */
+    List<Long> sendTxMsgBatch(List<TxMsgParam> txMsgParams) throws IllegalArgumentException, TxMsgDuplicateKeyException, TxMsgStoreException;
+
     /**
      * resend all unsent messages
      *
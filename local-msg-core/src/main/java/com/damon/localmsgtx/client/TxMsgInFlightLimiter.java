@@ -0,0 +1,76 @@
+package com.damon.localmsgtx.client;
+
+import org.springframework.util.Assert;
+
+/**
+ * Admission control for the afterCommit send path
+ * Bounds the number of messages and content bytes handed to the async send executor but not yet finished.
+ * When a committed transaction does not fit, its messages are not queued in memory: they stay in "waiting to send"
+ * status and are delivered by the compensation task, so heap usage stays bounded while the broker is slow
+ */
+public class TxMsgInFlightLimiter {
+
+    /**
+     * Maximum number of in-flight messages
+     */
+    private final int maxInFlightMessages;
+    /**
+     * Maximum UTF-8 content bytes of in-flight messages
+     */
+    private final long maxInFlightBytes;
+    private int inFlightMessages;
+    private long inFlightBytes;
+
+    /**
+     * Full parameter constructor
+     *
+     * @param maxInFlightMessages Maximum number of in-flight messages
+     * @param maxInFlightBytes    Maximum content bytes of in-flight messages
+     */
+    public TxMsgInFlightLimiter(int maxInFlightMessages, long maxInFlightBytes) {
+        Assert.isTrue(maxInFlightMessages > 0, "Maximum in-flight messages must be greater than 0");
+        Assert.isTrue(maxInFlightBytes > 0, "Maximum in-flight bytes must be greater than 0");
+        this.maxInFlightMessages = maxInFlightMessages;
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    /**
+     * Simplified constructor (using default configuration)
+     * - At most 10000 in-flight messages
+     * - At most 64MB in-flight content
+     */
+    public TxMsgInFlightLimiter() {
+        this(10000, 64L * 1024 * 1024);
+    }
+
+    /**
+     * Try to admit messages, never blocks
+     * A batch is always admitted when nothing is in flight, so a single large transaction cannot be starved
+     *
+     * @param messages Number of messages
+     * @param bytes    Content bytes of the messages
+     * @return true if admitted, {@link #release(int, long)} must then be called once they are finished
+     */
+    public synchronized boolean tryAcquire(int messages, long bytes) {
+        if (inFlightMessages > 0
+                && (inFlightMessages + messages > maxInFlightMessages || inFlightBytes + bytes > maxInFlightBytes)) {
+            return false;
+        }
+        inFlightMessages += messages;
+        inFlightBytes += bytes;
+        return true;
+    }
+
+    public synchronized void release(int messages, long bytes) {
+        inFlightMessages -= messages;
+        inFlightBytes -= bytes;
+    }
+
+    public synchronized int getInFlightMessages() {
+        return inFlightMessages;
+    }
+
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+}
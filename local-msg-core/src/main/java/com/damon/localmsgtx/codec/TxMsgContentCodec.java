@@ -0,0 +1,125 @@
+package com.damon.localmsgtx.codec;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec of the stored message content, the code is persisted with every row (content_codec column)
+ * so rows written with another codec can still be read after the configuration changes
+ */
+public enum TxMsgContentCodec {
+
+    /**
+     * Content stored as text in the content column
+     */
+    NONE(0) {
+        @Override
+        public byte[] encode(byte[] data) {
+            return data;
+        }
+
+        @Override
+        public byte[] decode(byte[] data) {
+            return data;
+        }
+    },
+    /**
+     * LZ4 block format prefixed with the original length, fast compression and decompression
+     */
+    LZ4(1) {
+        @Override
+        public byte[] encode(byte[] data) {
+            LZ4Compressor compressor = LZ4_FACTORY.fastCompressor();
+            byte[] compressed = new byte[4 + compressor.maxCompressedLength(data.length)];
+            ByteBuffer.wrap(compressed).putInt(data.length);
+            int compressedLength = compressor.compress(data, 0, data.length, compressed, 4);
+            return Arrays.copyOf(compressed, 4 + compressedLength);
+        }
+
+        @Override
+        public byte[] decode(byte[] data) {
+            int originalLength = ByteBuffer.wrap(data).getInt();
+            LZ4FastDecompressor decompressor = LZ4_FACTORY.fastDecompressor();
+            byte[] restored = new byte[originalLength];
+            decompressor.decompress(data, 4, restored, 0, originalLength);
+            return restored;
+        }
+    },
+    /**
+     * Raw DEFLATE (JDK), higher compression ratio, slower than LZ4
+     */
+    DEFLATE(2) {
+        @Override
+        public byte[] encode(byte[] data) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public byte[] decode(byte[] data) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+                byte[] buffer = new byte[8192];
+                while (!inflater.finished()) {
+                    int inflated = inflater.inflate(buffer);
+                    if (inflated == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new TxMsgException("Truncated DEFLATE content");
+                    }
+                    out.write(buffer, 0, inflated);
+                }
+                return out.toByteArray();
+            } catch (DataFormatException e) {
+                throw new TxMsgException("Invalid DEFLATE content", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+
+    private final int code;
+
+    TxMsgContentCodec(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public abstract byte[] encode(byte[] data);
+
+    public abstract byte[] decode(byte[] data);
+
+    public static TxMsgContentCodec fromCode(int code) {
+        for (TxMsgContentCodec codec : values()) {
+            if (codec.code == code) {
+                return codec;
+            }
+        }
+        throw new TxMsgException("Unknown content codec: " + code);
+    }
+}
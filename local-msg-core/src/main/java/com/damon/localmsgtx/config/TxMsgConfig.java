@@ -1,5 +1,6 @@
 package com.damon.localmsgtx.config;
 
+import com.damon.localmsgtx.client.TxMsgInFlightLimiter;
 import com.damon.localmsgtx.handler.AbstractTxMsgHandler;
 
 import java.util.concurrent.ExecutorService;
@@ -7,13 +8,33 @@ import java.util.concurrent.ExecutorService;
 public class TxMsgConfig {
 
     public TxMsgConfig(ExecutorService asyncSendExecutor, AbstractTxMsgHandler txMsgHandler) {
+        this(asyncSendExecutor, txMsgHandler, false);
+    }
+
+    /**
+     * @param asyncSendExecutor         Executor of the afterCommit sends
+     * @param txMsgHandler              Message handler
+     * @param shutdownAsyncSendExecutor Whether the client shuts the executor down when closed, for an executor
+     *                                  created only for this client
+     */
+    public TxMsgConfig(ExecutorService asyncSendExecutor, AbstractTxMsgHandler txMsgHandler, boolean shutdownAsyncSendExecutor) {
         this.asyncSendExecutor = asyncSendExecutor;
         this.txMsgHandler = txMsgHandler;
+        this.shutdownAsyncSendExecutor = shutdownAsyncSendExecutor;
     }
 
     private ExecutorService asyncSendExecutor;
+    /**
+     * Whether {@link com.damon.localmsgtx.client.DefaultTxMsgClient#close()} shuts the async send executor down
+     * (default: false, the executor may be shared with other components; true for the executors of the config factories)
+     */
+    private boolean shutdownAsyncSendExecutor;
 
     private AbstractTxMsgHandler txMsgHandler;
+    /**
+     * Admission control of the afterCommit send path
+     */
+    private TxMsgInFlightLimiter inFlightLimiter = new TxMsgInFlightLimiter();
 
     public ExecutorService getAsyncSendExecutor() {
         return asyncSendExecutor;
@@ -23,6 +44,14 @@ public class TxMsgConfig {
         this.asyncSendExecutor = asyncSendExecutor;
     }
 
+    public boolean isShutdownAsyncSendExecutor() {
+        return shutdownAsyncSendExecutor;
+    }
+
+    public void setShutdownAsyncSendExecutor(boolean shutdownAsyncSendExecutor) {
+        this.shutdownAsyncSendExecutor = shutdownAsyncSendExecutor;
+    }
+
     public AbstractTxMsgHandler getTxMsgHandler() {
         return txMsgHandler;
     }
@@ -30,4 +59,12 @@ public class TxMsgConfig {
     public void setTxMsgHandler(AbstractTxMsgHandler txMsgHandler) {
         this.txMsgHandler = txMsgHandler;
     }
-}
\ No newline at end of file
+
+    public TxMsgInFlightLimiter getInFlightLimiter() {
+        return inFlightLimiter;
+    }
+
+    public void setInFlightLimiter(TxMsgInFlightLimiter inFlightLimiter) {
+        this.inFlightLimiter = inFlightLimiter;
+    }
+}
@@ -0,0 +1,253 @@
+package com.damon.localmsgtx.config;
+
+import com.damon.localmsgtx.codec.TxMsgContentCodec;
+import com.damon.localmsgtx.store.TxMsgAckMode;
+import com.damon.localmsgtx.store.TxMsgIdGenerator;
+import com.damon.localmsgtx.store.TxMsgPartitionInterval;
+import com.damon.localmsgtx.store.TxMsgTableVersion;
+
+public class TxMsgStoreConfig {
+
+    public TxMsgStoreConfig(String tableName, String topic, int randomFactorLength) {
+        this.tableName = tableName;
+        this.topic = topic;
+        this.randomFactorLength = randomFactorLength;
+    }
+
+    /**
+     * Message storage table name
+     */
+    private String tableName;
+    /**
+     * Default topic, used for messages stored without a topic of their own
+     */
+    private String topic;
+    /**
+     * Length of the random factor used for shard scans
+     */
+    private int randomFactorLength;
+    /**
+     * Table layout version (default: V1)
+     */
+    private TxMsgTableVersion tableVersion = TxMsgTableVersion.V1;
+    /**
+     * What to do with acknowledged messages (default: MARK_SENT)
+     */
+    private TxMsgAckMode ackMode = TxMsgAckMode.MARK_SENT;
+    /**
+     * Archive table name used by {@link TxMsgAckMode#ARCHIVE} (default: table name + "_archive")
+     */
+    private String archiveTableName;
+    /**
+     * Send attempts before a message is moved to the failed (dead letter) status, V2 table layout only (default: 16)
+     */
+    private int maxRetryCount = 16;
+    /**
+     * Delay before the first retry, doubled after every failed attempt (default: 1 second)
+     */
+    private long retryBackoffMillis = 1000;
+    /**
+     * Upper bound of the retry delay (default: 1 hour)
+     */
+    private long maxRetryBackoffMillis = 3600000;
+    /**
+     * Codec used to store the message content, V2 table layout only (default: NONE, stored as text)
+     */
+    private TxMsgContentCodec contentCodec = TxMsgContentCodec.NONE;
+    /**
+     * Content smaller than this (UTF-8 bytes) is stored as text even when a codec is configured (default: 512)
+     */
+    private int contentCompressThreshold = 512;
+    /**
+     * Whether compensation scans claim the messages they read with a lease, so that several nodes can scan the same
+     * shards without sending a message twice (MySQL 8.0+, V2 table layout, default: false).
+     * {@link com.damon.localmsgtx.store.PostgresTxMsgStore} always claims
+     */
+    private boolean claimWaitingMessages;
+    /**
+     * How long a claimed message stays hidden from other scanners (default: 60 seconds)
+     * Must be longer than the time needed to send a page, an expired claim is taken over by the next scanner
+     */
+    private long leaseMillis = 60000;
+    /**
+     * Range partition the message table on create_time with this interval (MySQL, V2 table layout, MARK_SENT ack mode,
+     * default: null, not partitioned). Expired sent messages are then removed by dropping whole partitions.
+     * Message key uniqueness is not enforced (every unique key must contain create_time), so
+     * {@link #setUniqueMsgKey(boolean)} must be turned off. Only applies when the store creates the table
+     */
+    private TxMsgPartitionInterval partitionInterval;
+    /**
+     * Number of partitions created ahead of the current one (default: 3)
+     * The cleanup task creates the missing ones, rows created beyond the last partition go to the p_max partition
+     */
+    private int partitionsAhead = 3;
+    /**
+     * Whether the table rejects a duplicate msg_key with {@link com.damon.localmsgtx.exception.TxMsgDuplicateKeyException}
+     * (default: true). A partitioned table has no unique msg_key index, duplicates are then stored and sent again
+     * and the consumers must deduplicate, which has to be acknowledged by setting it to false
+     */
+    private boolean uniqueMsgKey = true;
+    /**
+     * Whether messages carry a destination bitmask and per-destination acknowledgements (dest_mask and acked_mask
+     * columns, V2 table layout, default: false), used by {@link com.damon.localmsgtx.handler.FanoutTxMsgHandler}
+     */
+    private boolean fanout;
+    /**
+     * Assigns message ids before the insert instead of AUTO_INCREMENT (default: null). Inserts no longer ask for
+     * generated keys, and the shard of a message is derived from its id instead of a random factor.
+     * A table created by the store then has no AUTO_INCREMENT. Every writer of the table must switch at once: an
+     * AUTO_INCREMENT insert moves the sequence past the generated ids and collides with later ones, so the store
+     * refuses an existing table that still has it, see {@link com.damon.localmsgtx.store.TxMsgTableMigrator#dropIdSequence()}
+     */
+    private TxMsgIdGenerator idGenerator;
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public int getRandomFactorLength() {
+        return randomFactorLength;
+    }
+
+    public void setRandomFactorLength(int randomFactorLength) {
+        this.randomFactorLength = randomFactorLength;
+    }
+
+    public TxMsgTableVersion getTableVersion() {
+        return tableVersion;
+    }
+
+    public void setTableVersion(TxMsgTableVersion tableVersion) {
+        this.tableVersion = tableVersion;
+    }
+
+    public TxMsgAckMode getAckMode() {
+        return ackMode;
+    }
+
+    public void setAckMode(TxMsgAckMode ackMode) {
+        this.ackMode = ackMode;
+    }
+
+    public String getArchiveTableName() {
+        return archiveTableName != null ? archiveTableName : tableName + "_archive";
+    }
+
+    public void setArchiveTableName(String archiveTableName) {
+        this.archiveTableName = archiveTableName;
+    }
+
+    public int getMaxRetryCount() {
+        return maxRetryCount;
+    }
+
+    public void setMaxRetryCount(int maxRetryCount) {
+        this.maxRetryCount = maxRetryCount;
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public long getMaxRetryBackoffMillis() {
+        return maxRetryBackoffMillis;
+    }
+
+    public void setMaxRetryBackoffMillis(long maxRetryBackoffMillis) {
+        this.maxRetryBackoffMillis = maxRetryBackoffMillis;
+    }
+
+    public TxMsgContentCodec getContentCodec() {
+        return contentCodec;
+    }
+
+    public void setContentCodec(TxMsgContentCodec contentCodec) {
+        this.contentCodec = contentCodec;
+    }
+
+    public int getContentCompressThreshold() {
+        return contentCompressThreshold;
+    }
+
+    public void setContentCompressThreshold(int contentCompressThreshold) {
+        this.contentCompressThreshold = contentCompressThreshold;
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public void setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+    }
+
+    public boolean isClaimWaitingMessages() {
+        return claimWaitingMessages;
+    }
+
+    public void setClaimWaitingMessages(boolean claimWaitingMessages) {
+        this.claimWaitingMessages = claimWaitingMessages;
+    }
+
+    public TxMsgPartitionInterval getPartitionInterval() {
+        return partitionInterval;
+    }
+
+    /**
+     * Range partition the message table on create_time, requires {@code setUniqueMsgKey(false)}: a partitioned
+     * table cannot reject duplicate message keys
+     *
+     * @param partitionInterval Partition width, null for an unpartitioned table
+     */
+    public void setPartitionInterval(TxMsgPartitionInterval partitionInterval) {
+        this.partitionInterval = partitionInterval;
+    }
+
+    public int getPartitionsAhead() {
+        return partitionsAhead;
+    }
+
+    public void setPartitionsAhead(int partitionsAhead) {
+        this.partitionsAhead = partitionsAhead;
+    }
+
+    public boolean isUniqueMsgKey() {
+        return uniqueMsgKey;
+    }
+
+    public void setUniqueMsgKey(boolean uniqueMsgKey) {
+        this.uniqueMsgKey = uniqueMsgKey;
+    }
+
+    public boolean isFanout() {
+        return fanout;
+    }
+
+    public void setFanout(boolean fanout) {
+        this.fanout = fanout;
+    }
+
+    public TxMsgIdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    public void setIdGenerator(TxMsgIdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+}
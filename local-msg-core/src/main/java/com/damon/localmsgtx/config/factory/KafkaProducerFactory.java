@@ -2,17 +2,19 @@ package com.damon.localmsgtx.config.factory;
 
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
 import java.util.Map;
 import java.util.Properties;
 
 public class KafkaProducerFactory {
-    public static KafkaProducer<String, String> simpleProducer(String server) {
+    public static KafkaProducer<String, byte[]> simpleProducer(String server) {
         Properties props = new Properties();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, server);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        // 消息内容在存储时已编码为UTF-8字节，直接发送
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
         props.put(ProducerConfig.ACKS_CONFIG, "1");
         props.put(ProducerConfig.RETRIES_CONFIG, 3);
         // 批量发送相关配置
@@ -27,11 +29,17 @@ public class KafkaProducerFactory {
         return new KafkaProducer<>(props);
     }
 
-    public static KafkaProducer<String, String> customProducer(Properties properties) {
+    /**
+     * The value serializer must be {@link ByteArraySerializer}
+     */
+    public static KafkaProducer<String, byte[]> customProducer(Properties properties) {
         return new KafkaProducer<>(properties);
     }
 
-    public static KafkaProducer<String, String> customProducer(Map<String, Object> properties) {
+    /**
+     * The value serializer must be {@link ByteArraySerializer}
+     */
+    public static KafkaProducer<String, byte[]> customProducer(Map<String, Object> properties) {
         return new KafkaProducer<>(properties);
     }
 
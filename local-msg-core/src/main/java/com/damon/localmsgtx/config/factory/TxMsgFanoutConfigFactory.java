@@ -0,0 +1,58 @@
+package com.damon.localmsgtx.config.factory;
+
+import com.damon.localmsgtx.config.TxMsgConfig;
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.handler.AbstractTxMsgHandler;
+import com.damon.localmsgtx.handler.FanoutTxMsgHandler;
+import com.damon.localmsgtx.handler.KafkaTxMsgPublisher;
+import com.damon.localmsgtx.handler.RocketTxMsgPublisher;
+import com.damon.localmsgtx.handler.TxMsgPublisher;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import com.damon.localmsgtx.store.TxMsgTableVersion;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Messages stored once and delivered to Kafka (destination 0) and RocketMQ (destination 1)
+ */
+public class TxMsgFanoutConfigFactory {
+
+    public static final int KAFKA_DESTINATION = 0;
+
+    public static final int ROCKET_DESTINATION = 1;
+
+    private final static int RANMON_FACTOR_LENGTH = 6;
+
+    public static TxMsgConfig simpleConfig(String kafkaServer, String namesrvAddr, String topic, String producerGroup,
+                                           DataSource dataSource, String txMsgTableName) {
+        TxMsgStoreConfig storeConfig = new TxMsgStoreConfig(txMsgTableName, topic, RANMON_FACTOR_LENGTH);
+        storeConfig.setTableVersion(TxMsgTableVersion.V2);
+        storeConfig.setFanout(true);
+        return simpleConfig(kafkaServer, namesrvAddr, producerGroup, dataSource, storeConfig);
+    }
+
+    public static TxMsgConfig simpleConfig(String kafkaServer, String namesrvAddr, String producerGroup,
+                                           DataSource dataSource, TxMsgStoreConfig storeConfig) {
+
+        ExecutorService asyncSendExecutor = TxMsgSenderThreadPoolFactory.simpleThreadPool();
+
+        KafkaProducer<String, byte[]> kafkaProducer = KafkaProducerFactory.simpleProducer(kafkaServer);
+
+        DefaultMQProducer rocketProducer = RocketProducerFactory.simpleProducer(namesrvAddr, producerGroup);
+
+        TxMsgSqlStore txMsgSqlStore = new TxMsgSqlStore(dataSource, storeConfig);
+
+        List<TxMsgPublisher> destinations = List.of(
+                new KafkaTxMsgPublisher(kafkaProducer),
+                new RocketTxMsgPublisher(rocketProducer)
+        );
+        AbstractTxMsgHandler txMsgHandler = new FanoutTxMsgHandler(destinations, txMsgSqlStore);
+
+        return new TxMsgConfig(asyncSendExecutor, txMsgHandler, true);
+
+    }
+}
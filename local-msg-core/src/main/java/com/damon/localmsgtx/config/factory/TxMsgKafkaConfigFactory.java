@@ -1,6 +1,7 @@
 package com.damon.localmsgtx.config.factory;
 
 import com.damon.localmsgtx.config.TxMsgConfig;
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
 import com.damon.localmsgtx.handler.AbstractTxMsgHandler;
 import com.damon.localmsgtx.handler.KafkaTxMsgHandler;
 import com.damon.localmsgtx.store.TxMsgSqlStore;
@@ -14,16 +15,20 @@ public class TxMsgKafkaConfigFactory {
     private final static int RANMON_FACTOR_LENGTH = 6;
 
     public static TxMsgConfig simpleConfig(String kafkaServer, String topic, DataSource dataSource, String txMsgTableName) {
+        return simpleConfig(kafkaServer, dataSource, new TxMsgStoreConfig(txMsgTableName, topic, RANMON_FACTOR_LENGTH));
+    }
+
+    public static TxMsgConfig simpleConfig(String kafkaServer, DataSource dataSource, TxMsgStoreConfig storeConfig) {
 
         ExecutorService asyncSendExecutor = TxMsgSenderThreadPoolFactory.simpleThreadPool();
 
-        KafkaProducer<String, String> producer = KafkaProducerFactory.simpleProducer(kafkaServer);
+        KafkaProducer<String, byte[]> producer = KafkaProducerFactory.simpleProducer(kafkaServer);
 
-        TxMsgSqlStore txMsgSqlStore = new TxMsgSqlStore(dataSource, txMsgTableName, topic, RANMON_FACTOR_LENGTH);
+        TxMsgSqlStore txMsgSqlStore = new TxMsgSqlStore(dataSource, storeConfig);
 
         AbstractTxMsgHandler txMsgHandler = new KafkaTxMsgHandler(producer, txMsgSqlStore);
 
-        return new TxMsgConfig(asyncSendExecutor, txMsgHandler);
+        return new TxMsgConfig(asyncSendExecutor, txMsgHandler, true);
         
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.damon.localmsgtx.config.factory;
 
 import com.damon.localmsgtx.config.TxMsgConfig;
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
 import com.damon.localmsgtx.handler.AbstractTxMsgHandler;
 import com.damon.localmsgtx.handler.RocketTxMsgHandler;
 import com.damon.localmsgtx.store.TxMsgSqlStore;
@@ -14,16 +15,20 @@ public class TxMsgRocketConfigFactory {
     private final static int RANMON_FACTOR_LENGTH = 6;
 
     public static TxMsgConfig simpleConfig(String namesrvAddr, String topic, String producerGroup, DataSource dataSource, String txMsgTableName) {
+        return simpleConfig(namesrvAddr, producerGroup, dataSource, new TxMsgStoreConfig(txMsgTableName, topic, RANMON_FACTOR_LENGTH));
+    }
+
+    public static TxMsgConfig simpleConfig(String namesrvAddr, String producerGroup, DataSource dataSource, TxMsgStoreConfig storeConfig) {
 
         ExecutorService asyncSendExecutor = TxMsgSenderThreadPoolFactory.simpleThreadPool();
 
         DefaultMQProducer producer = RocketProducerFactory.simpleProducer(namesrvAddr, producerGroup);
 
-        TxMsgSqlStore txMsgSqlStore = new TxMsgSqlStore(dataSource, txMsgTableName, topic, RANMON_FACTOR_LENGTH);
+        TxMsgSqlStore txMsgSqlStore = new TxMsgSqlStore(dataSource, storeConfig);
 
         AbstractTxMsgHandler txMsgHandler = new RocketTxMsgHandler(producer, txMsgSqlStore);
 
-        return new TxMsgConfig(asyncSendExecutor, txMsgHandler);
+        return new TxMsgConfig(asyncSendExecutor, txMsgHandler, true);
 
     }
 }
\ No newline at end of file
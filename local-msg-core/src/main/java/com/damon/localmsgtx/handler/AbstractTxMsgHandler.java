@@ -1,23 +1,43 @@
 package com.damon.localmsgtx.handler;
 
+import com.damon.localmsgtx.exception.TxMsgException;
+import com.damon.localmsgtx.metrics.TxMsgMetrics;
 import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
 import com.damon.localmsgtx.model.TxMsgStatusEnum;
-import com.damon.localmsgtx.store.TxMsgSqlStore;
+import com.damon.localmsgtx.store.ITxMsgStore;
+import com.damon.localmsgtx.store.TxMsgSentStatusCoalescer;
+import com.damon.localmsgtx.utils.ListUtils;
+import com.damon.localmsgtx.utils.StrUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractTxMsgHandler {
     private static final Logger logger = LoggerFactory.getLogger(AbstractTxMsgHandler.class);
+    /**
+     * End markers of the pipelined resend stages
+     */
+    private static final List<TxMsgModel> NO_MORE_PAGES = new ArrayList<>();
+    private static final SentPage NO_MORE_ACKS = new SentPage(List.of(), List.of(), StrUtil.EMPTY);
     /**
      * Batch size for deleting expired messages in a single operation
      */
     protected final int deleteBatchSize;
 
-    protected final TxMsgSqlStore txMsgSqlStore;
+    protected final ITxMsgStore txMsgStore;
     /**
      * Maximum number of pending messages to fetch in a single request
      */
@@ -28,23 +48,54 @@ public abstract class AbstractTxMsgHandler {
     protected final int maxResendNumPerTask;
 
     protected final int exceptionSleep;
+    /**
+     * Write-behind stage for status updates of messages acknowledged in producer callbacks
+     */
+    protected final TxMsgSentStatusCoalescer sentStatusCoalescer;
 
-    protected AbstractTxMsgHandler(int deleteBatchSize, TxMsgSqlStore txMsgSqlStore, int fetchLimit, int maxResendNumPerTask, int exceptionSleep) {
+    protected volatile TxMsgMetrics metrics = TxMsgMetrics.NOOP;
+
+    protected AbstractTxMsgHandler(int deleteBatchSize, ITxMsgStore txMsgStore, int fetchLimit, int maxResendNumPerTask, int exceptionSleep) {
+        this(deleteBatchSize, txMsgStore, fetchLimit, maxResendNumPerTask, exceptionSleep, new TxMsgSentStatusCoalescer(txMsgStore));
+    }
+
+    protected AbstractTxMsgHandler(int deleteBatchSize, ITxMsgStore txMsgStore, int fetchLimit, int maxResendNumPerTask, int exceptionSleep,
+                                   TxMsgSentStatusCoalescer sentStatusCoalescer) {
         Assert.isTrue(deleteBatchSize > 0, "Delete batch size must be greater than 0");
-        Assert.notNull(txMsgSqlStore, "TxMsgSqlStore cannot be null");
+        Assert.notNull(txMsgStore, "TxMsgStore cannot be null");
         Assert.isTrue(fetchLimit > 0, "Fetch limit must be greater than 0");
         Assert.isTrue(maxResendNumPerTask > 0, "Maximum resend number per task must be greater than 0");
         Assert.isTrue(deleteBatchSize > 0, "Delete batch size must be greater than 0");
         Assert.isTrue(exceptionSleep > 0, "exceptionSleep resend number per task must be greater than 0");
         this.deleteBatchSize = deleteBatchSize;
-        this.txMsgSqlStore = txMsgSqlStore;
+        this.txMsgStore = txMsgStore;
         this.fetchLimit = fetchLimit;
         this.maxResendNumPerTask = maxResendNumPerTask;
         this.exceptionSleep = exceptionSleep;
+        Assert.notNull(sentStatusCoalescer, "TxMsgSentStatusCoalescer cannot be null");
+        this.sentStatusCoalescer = sentStatusCoalescer;
     }
 
     public TxMsgModel saveMsg(String content, String msgKey, String msgTag) {
-        return txMsgSqlStore.insertTxMsg(content, msgKey, msgTag);
+        long startTime = System.nanoTime();
+        TxMsgModel txMsgModel = txMsgStore.insertTxMsg(content, msgKey, msgTag);
+        metrics.recordInsert(txMsgStore.getTopic(), 1, System.nanoTime() - startTime);
+        return txMsgModel;
+    }
+
+    public TxMsgModel saveMsg(TxMsgParam txMsgParam) {
+        long startTime = System.nanoTime();
+        TxMsgModel txMsgModel = txMsgStore.insertTxMsg(txMsgParam);
+        metrics.recordInsert(txMsgModel.getTopic(), 1, System.nanoTime() - startTime);
+        return txMsgModel;
+    }
+
+    public List<TxMsgModel> saveMsgBatch(List<TxMsgParam> txMsgParams) {
+        long startTime = System.nanoTime();
+        List<TxMsgModel> txMsgModels = txMsgStore.batchInsertTxMsg(txMsgParams);
+        long costNanos = System.nanoTime() - startTime;
+        groupByTopic(txMsgModels).forEach((topic, topicMessages) -> metrics.recordInsert(topic, topicMessages.size(), costNanos));
+        return txMsgModels;
     }
 
     /**
@@ -55,7 +106,7 @@ public abstract class AbstractTxMsgHandler {
     public void deleteExpiredSentMessages(Long expireTime, TxMsgStatusEnum statusEnum) {
         Assert.notNull(expireTime, "Expiration timestamp cannot be null");
         logger.info("Starting to clean up expired sent messages, expiration time: {}ms", expireTime);
-        txMsgSqlStore.deleteExpiredSendedMsg(expireTime, deleteBatchSize, statusEnum);
+        txMsgStore.deleteExpiredSendedMsg(expireTime, deleteBatchSize, statusEnum);
         logger.info("Cleanup of expired sent messages completed");
     }
 
@@ -67,16 +118,32 @@ public abstract class AbstractTxMsgHandler {
     public void sendMsg(TxMsgModel txMsgModel) {
         Assert.notNull(txMsgModel, "Transactional message model cannot be null");
         Assert.hasText(txMsgModel.getTopic(), "Message topic cannot be empty");
-        Assert.hasText(txMsgModel.getContent(), "Message content cannot be empty");
+        Assert.isTrue(txMsgModel.getContentBytes() != null && txMsgModel.getContentBytes().length > 0, "Message content cannot be empty");
         sendMessage(txMsgModel);
     }
 
+    /**
+     * Send the messages stored by one transaction as a single batch
+     * Failures are only logged, unsent messages stay in "waiting to send" status and are picked up by the compensation task
+     *
+     * @param txMsgModels Transactional message models (cannot be empty)
+     */
+    public void sendMsgBatch(List<TxMsgModel> txMsgModels) {
+        Assert.notEmpty(txMsgModels, "Transactional message models cannot be empty");
+        try {
+            batchSendMessages(txMsgModels, TxMsgMetrics.LIVE_SHARD);
+        } catch (Exception e) {
+            logger.error("Error while sending committed messages, count: {}, they will be resent by the compensation task", txMsgModels.size(), e);
+        }
+    }
 
     /**
      * Resend all messages in "waiting to send" status
      * Used for compensation mechanism to ensure unsent messages are retried
+     *
+     * @return Number of messages processed in this run, reaching {@link #getMaxResendNumPerTask()} means more may be waiting
      */
-    public void resendWaitingMessages(String shardTailNumber) {
+    public int resendWaitingMessages(String shardTailNumber) {
         int totalProcessed = 0;
         int currentFetchNum;
         Long maxId = 0L;
@@ -90,7 +157,7 @@ public abstract class AbstractTxMsgHandler {
             }
 
             // Fetch pending messages
-            List<TxMsgModel> waitingMessages = txMsgSqlStore.getWaitingMessages(fetchLimit, maxId, shardTailNumber);
+            List<TxMsgModel> waitingMessages = txMsgStore.getWaitingMessages(fetchLimit, maxId, shardTailNumber);
             currentFetchNum = waitingMessages.size();
             totalProcessed += currentFetchNum;
 
@@ -109,11 +176,130 @@ public abstract class AbstractTxMsgHandler {
         } while (currentFetchNum == fetchLimit); // If this fetch is full, there may be more messages
 
         logger.info("Resend task completed, total messages processed in this run: {}", totalProcessed);
+        return totalProcessed;
+    }
+
+    /**
+     * Pipelined variant of {@link #resendWaitingMessages(String)}
+     * The database read of page N+1 and the status update of page N-1 run on their own virtual threads and overlap
+     * with the broker send of page N, at most {@code maxInFlightPages} pages are buffered between two stages.
+     * Throughput is limited by the slowest stage instead of the sum of all three
+     *
+     * @param shardTailNumber  Shard tail number
+     * @param maxInFlightPages Maximum number of pages buffered between two stages
+     * @return Number of messages processed in this run, reaching {@link #getMaxResendNumPerTask()} means more may be waiting
+     */
+    public int resendWaitingMessagesPipelined(String shardTailNumber, int maxInFlightPages) {
+        Assert.isTrue(maxInFlightPages > 0, "Maximum in-flight pages must be greater than 0");
+        BlockingQueue<List<TxMsgModel>> fetchedPages = new ArrayBlockingQueue<>(maxInFlightPages);
+        BlockingQueue<SentPage> sentPages = new ArrayBlockingQueue<>(maxInFlightPages);
+        AtomicInteger totalProcessed = new AtomicInteger();
+
+        Thread reader = Thread.ofVirtual().name("tx-msg-resend-reader").start(
+                () -> fetchWaitingPages(shardTailNumber, fetchedPages, totalProcessed));
+        Thread updater = Thread.ofVirtual().name("tx-msg-resend-updater").start(
+                () -> ackSentPages(sentPages));
+        try {
+            List<TxMsgModel> waitingMessages;
+            while ((waitingMessages = fetchedPages.take()) != NO_MORE_PAGES) {
+                logger.info("Starting to process batch messages, count: {}, shardTailNumber: {}", waitingMessages.size(), shardTailNumber);
+                recordResendBatch(waitingMessages, shardTailNumber);
+                TxMsgPublishResult publishResult;
+                try {
+                    publishResult = publishByTopic(waitingMessages);
+                } catch (Exception e) {
+                    logger.error("Error while processing batch messages, shardTailNumber: {}, sleep : {}s", shardTailNumber, exceptionSleep, e);
+                    sentPages.put(SentPage.of(waitingMessages, TxMsgPublishResult.failed(waitingMessages), shardTailNumber));
+                    TimeUnit.SECONDS.sleep(exceptionSleep);
+                    continue;
+                }
+                recordDeliveries(waitingMessages, publishResult.successMsgIds());
+                sentPages.put(SentPage.of(waitingMessages, publishResult, shardTailNumber));
+            }
+            sentPages.put(NO_MORE_ACKS);
+            updater.join();
+        } catch (InterruptedException e) {
+            reader.interrupt();
+            updater.interrupt();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Pipelined resend task completed, total messages processed in this run: {}", totalProcessed.get());
+        return totalProcessed.get();
+    }
+
+    /**
+     * Read stage of the pipelined resend: keyset pagination by id, ends with {@link #NO_MORE_PAGES}
+     */
+    private void fetchWaitingPages(String shardTailNumber, BlockingQueue<List<TxMsgModel>> fetchedPages, AtomicInteger totalProcessed) {
+        Long maxId = 0L;
+        try {
+            try {
+                while (totalProcessed.get() < maxResendNumPerTask) {
+                    List<TxMsgModel> waitingMessages = txMsgStore.getWaitingMessages(fetchLimit, maxId, shardTailNumber);
+                    if (waitingMessages.isEmpty()) {
+                        break;
+                    }
+                    totalProcessed.addAndGet(waitingMessages.size());
+                    fetchedPages.put(waitingMessages);
+                    if (waitingMessages.size() < fetchLimit) {
+                        break;
+                    }
+                    maxId = waitingMessages.get(waitingMessages.size() - 1).getId();
+                }
+                if (totalProcessed.get() >= maxResendNumPerTask) {
+                    logger.warn("Single resend task has reached the maximum processing limit: {}, remaining messages will be processed in the next task", maxResendNumPerTask);
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.error("Error while fetching messages waiting to send, shardTailNumber: {}", shardTailNumber, e);
+            }
+            fetchedPages.put(NO_MORE_PAGES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Update stage of the pipelined resend, ends with {@link #NO_MORE_ACKS}
+     */
+    private void ackSentPages(BlockingQueue<SentPage> sentPages) {
+        try {
+            SentPage sentPage;
+            while ((sentPage = sentPages.take()) != NO_MORE_ACKS) {
+                try {
+                    ackSentMessages(sentPage.successMsgIds());
+                    recordSendFailures(sentPage.failedMsgs(), sentPage.shardTailNumber());
+                } catch (Exception e) {
+                    logger.error("Error while updating status of sent messages, they will be resent by the next task, count: {}",
+                            sentPage.successMsgIds().size() + sentPage.failedMsgs().size(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getMaxResendNumPerTask() {
+        return maxResendNumPerTask;
+    }
+
+    /**
+     * Metrics of the send, resend and status update paths (default {@link TxMsgMetrics#NOOP})
+     */
+    public void setMetrics(TxMsgMetrics metrics) {
+        Assert.notNull(metrics, "Metrics cannot be null");
+        this.metrics = metrics;
+    }
+
+    public TxMsgMetrics getMetrics() {
+        return metrics;
     }
 
     private void doBatchSendMessages(List<TxMsgModel> txMsgModels, String shardTailNumber) {
+        recordResendBatch(txMsgModels, shardTailNumber);
         try {
-            batchSendMessages(txMsgModels);
+            batchSendMessages(txMsgModels, shardTailNumber);
         } catch (Exception e) {
             logger.error("Error while processing batch messages, shardTailNumber: {}, sleep : {}s", shardTailNumber, exceptionSleep, e);
             try {
@@ -123,8 +309,168 @@ public abstract class AbstractTxMsgHandler {
         }
     }
 
+    /**
+     * Release resources held by the handler, flushing status updates still queued in the write-behind stage
+     */
+    public void shutdown() {
+        sentStatusCoalescer.close();
+    }
+
+    /**
+     * Send a batch of messages, acknowledge the ones the broker accepted and delay the retry of the ones it rejected,
+     * messages with an unknown outcome (send timeout) stay waiting with their retry budget untouched
+     *
+     * @param shardTailNumber Shard tail number of the compensation task, {@link TxMsgMetrics#LIVE_SHARD} for sends after commit
+     */
+    protected void batchSendMessages(List<TxMsgModel> txMsgModels, String shardTailNumber) {
+        if (ListUtils.isEmpty(txMsgModels)) {
+            return;
+        }
+        TxMsgPublishResult publishResult;
+        try {
+            publishResult = publishByTopic(txMsgModels);
+        } catch (Exception e) {
+            recordSendFailures(txMsgModels, shardTailNumber);
+            throw e;
+        }
+        recordDeliveries(txMsgModels, publishResult.successMsgIds());
+        ackSentMessages(publishResult.successMsgIds());
+        recordSendFailures(SentPage.of(txMsgModels, publishResult, shardTailNumber).failedMsgs(), shardTailNumber);
+    }
+
+    /**
+     * Publish a batch that may hold several topics as one sub-batch per topic, so that every call to
+     * {@link #publishMessages(List)} targets a single topic. Sub-batches run concurrently on virtual threads and a
+     * failing topic only fails its own messages
+     *
+     * @return Acknowledged and failed messages of all topics, the messages of a failing topic are failed
+     * @throws TxMsgException When every sub-batch failed, the caller backs off as for a single topic
+     */
+    private TxMsgPublishResult publishByTopic(List<TxMsgModel> txMsgModels) {
+        Map<String, List<TxMsgModel>> topicMessages = groupByTopic(txMsgModels);
+        if (topicMessages.size() == 1) {
+            return publishMessages(txMsgModels);
+        }
+        List<Long> successMsgIds = Collections.synchronizedList(new ArrayList<>());
+        List<Long> failedMsgIds = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failedTopics = new AtomicInteger();
+        List<Thread> publishers = new ArrayList<>(topicMessages.size());
+        topicMessages.forEach((topic, messages) -> publishers.add(Thread.ofVirtual().name("tx-msg-publisher-" + topic).start(() -> {
+            try {
+                TxMsgPublishResult publishResult = publishMessages(messages);
+                successMsgIds.addAll(publishResult.successMsgIds());
+                failedMsgIds.addAll(publishResult.failedMsgIds());
+            } catch (Exception e) {
+                failedTopics.incrementAndGet();
+                failedMsgIds.addAll(TxMsgPublishResult.failed(messages).failedMsgIds());
+                logger.error("Error while sending messages of topic: {}, count: {}", topic, messages.size(), e);
+            }
+        })));
+        try {
+            for (Thread publisher : publishers) {
+                publisher.join();
+            }
+        } catch (InterruptedException e) {
+            publishers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+        }
+        if (failedTopics.get() == topicMessages.size()) {
+            throw new TxMsgException("Error while sending messages of all " + failedTopics.get() + " topics");
+        }
+        synchronized (successMsgIds) {
+            synchronized (failedMsgIds) {
+                return new TxMsgPublishResult(new ArrayList<>(successMsgIds), new ArrayList<>(failedMsgIds));
+            }
+        }
+    }
+
+    private static Map<String, List<TxMsgModel>> groupByTopic(List<TxMsgModel> txMsgModels) {
+        Map<String, List<TxMsgModel>> topicMessages = new LinkedHashMap<>();
+        for (TxMsgModel txMsgModel : txMsgModels) {
+            topicMessages.computeIfAbsent(txMsgModel.getTopic(), topic -> new ArrayList<>()).add(txMsgModel);
+        }
+        return topicMessages;
+    }
+
+    private void recordResendBatch(List<TxMsgModel> txMsgModels, String shardTailNumber) {
+        groupByTopic(txMsgModels).forEach((topic, topicMessages) -> metrics.recordResendBatch(topic, shardTailNumber, topicMessages.size()));
+    }
+
+    /**
+     * Record the delivery delay of the messages acknowledged by the broker
+     */
+    private void recordDeliveries(List<TxMsgModel> txMsgModels, List<Long> successMsgIds) {
+        if (metrics == TxMsgMetrics.NOOP || ListUtils.isEmpty(successMsgIds)) {
+            return;
+        }
+        Set<Long> successIds = new HashSet<>(successMsgIds);
+        long currentTime = System.currentTimeMillis();
+        for (TxMsgModel txMsgModel : txMsgModels) {
+            if (successIds.contains(txMsgModel.getId())) {
+                metrics.recordDelivery(txMsgModel.getTopic(), currentTime - txMsgModel.getCreateTime());
+            }
+        }
+    }
+
+    /**
+     * Record failed send attempts, the messages are retried with exponential backoff and dead-lettered after the
+     * maximum retry count (V2 table layout). Only messages the broker rejected, not the ones with an unknown outcome
+     */
+    protected void recordSendFailures(List<TxMsgModel> failedMsgs, String shardTailNumber) {
+        if (ListUtils.isEmpty(failedMsgs)) {
+            return;
+        }
+        groupByTopic(failedMsgs).forEach((topic, topicMessages) -> metrics.recordSendFailures(topic, shardTailNumber, topicMessages.size()));
+        List<Long> failedMsgIds = failedMsgs.stream().map(TxMsgModel::getId).toList();
+        try {
+            int updateRows = txMsgStore.markSendFailed(failedMsgIds);
+            logger.info("Send failures recorded, failed messages: {}, retry delayed: {}", failedMsgIds.size(), updateRows);
+        } catch (Exception e) {
+            logger.error("Error while recording send failures, they will be retried without backoff, count: {}", failedMsgIds.size(), e);
+        }
+    }
+
+    /**
+     * Acknowledge sent messages in the store (status update, archive or delete depending on the ack mode)
+     */
+    protected void ackSentMessages(List<Long> successMsgIds) {
+        if (ListUtils.isEmpty(successMsgIds)) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        int updateRows = txMsgStore.ackSentMsg(successMsgIds);
+        metrics.recordStatusUpdate(txMsgStore.getTopic(), updateRows, System.nanoTime() - startTime);
+        logger.info("Batch message status update completed, should update: {}, actually updated: {}", successMsgIds.size(), updateRows);
+        if (updateRows != successMsgIds.size()) {
+            logger.warn("Some message status updates failed, expected to update: {}, actually updated: {}", successMsgIds.size(), updateRows);
+        }
+    }
+
     protected abstract void sendMessage(TxMsgModel txMsgModel);
 
-    protected abstract void batchSendMessages(List<TxMsgModel> txMsgModels);
+    /**
+     * Send a batch of messages to the broker and wait for the result, without touching the store
+     *
+     * @param txMsgModels Messages to send (not empty)
+     * @return Messages acknowledged and messages rejected by the broker, the others have an unknown outcome
+     */
+    protected abstract TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels);
+
+
+    /**
+     * Result of sending one page of the pipelined resend
+     */
+    private record SentPage(List<Long> successMsgIds, List<TxMsgModel> failedMsgs, String shardTailNumber) {
 
+        static SentPage of(List<TxMsgModel> txMsgModels, TxMsgPublishResult publishResult, String shardTailNumber) {
+            Set<Long> failedIds = new HashSet<>(publishResult.failedMsgIds());
+            List<TxMsgModel> failedMsgs = new ArrayList<>();
+            for (TxMsgModel txMsgModel : txMsgModels) {
+                if (failedIds.contains(txMsgModel.getId())) {
+                    failedMsgs.add(txMsgModel);
+                }
+            }
+            return new SentPage(publishResult.successMsgIds(), failedMsgs, shardTailNumber);
+        }
+    }
 }
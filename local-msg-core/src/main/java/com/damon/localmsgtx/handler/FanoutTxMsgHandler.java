@@ -0,0 +1,190 @@
+package com.damon.localmsgtx.handler;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import com.damon.localmsgtx.metrics.TxMsgMetrics;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.store.ITxMsgStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transactional message handler delivering one stored message to several destinations (brokers or clusters)
+ * <p>
+ * Destination {@code i} is bit {@code 1 << i} of the message's destination mask ({@link TxMsgParam#setDestMask(int)},
+ * 0 means every destination). Each destination publisher gets the messages it has not acknowledged yet, the
+ * acknowledgements are recorded per destination (acked_mask column) and the message is acknowledged once every
+ * destination did, so a retry only goes to the destinations that failed. The store must be configured with
+ * {@link com.damon.localmsgtx.config.TxMsgStoreConfig#setFanout(boolean)}.
+ * <p>
+ * Destinations are plain {@link TxMsgPublisher}s (e.g. {@link KafkaTxMsgPublisher}, {@link RocketTxMsgPublisher}):
+ * only this handler writes the store, through the destination masks
+ */
+public class FanoutTxMsgHandler extends AbstractTxMsgHandler {
+    private static final Logger logger = LoggerFactory.getLogger(FanoutTxMsgHandler.class);
+    /**
+     * Destinations are bits of an int column
+     */
+    public static final int MAX_DESTINATIONS = 31;
+
+    private final List<TxMsgPublisher> destinations;
+    /**
+     * Mask of all destinations, used for messages stored with a 0 destination mask
+     */
+    private final int allDestMask;
+
+    /**
+     * Full parameter constructor (recommended, supports custom configuration)
+     *
+     * @param destinations        Destination publishers, destination {@code i} is bit {@code 1 << i} of the destination mask
+     * @param txMsgStore          Transactional message storage manager (fanout store)
+     * @param fetchLimit          Number of pending messages to fetch in a single request
+     * @param maxResendNumPerTask Maximum number of messages to resend in a single task
+     * @param deleteBatchSize     Batch size for deletion
+     * @param exceptionSleep      Sleep time after an exception occurs
+     */
+    public FanoutTxMsgHandler(List<TxMsgPublisher> destinations,
+                              ITxMsgStore txMsgStore,
+                              int fetchLimit,
+                              int maxResendNumPerTask,
+                              int deleteBatchSize,
+                              int exceptionSleep) {
+        super(deleteBatchSize, txMsgStore, fetchLimit, maxResendNumPerTask, exceptionSleep);
+        Assert.notEmpty(destinations, "Destinations cannot be empty");
+        Assert.isTrue(destinations.size() <= MAX_DESTINATIONS, "Destination count cannot exceed " + MAX_DESTINATIONS);
+        Assert.noNullElements(destinations, "Destination cannot be null");
+        this.destinations = List.copyOf(destinations);
+        this.allDestMask = (1 << destinations.size()) - 1;
+    }
+
+    /**
+     * Simplified constructor (using default configuration)
+     * Suitable for quick initialization with default values:
+     * - Fetch 50 messages at a time
+     * - Maximum 2000 messages per resend task
+     * - Delete batch size of 200
+     * - Exception sleep time of 5 seconds
+     */
+    public FanoutTxMsgHandler(List<TxMsgPublisher> destinations, ITxMsgStore txMsgStore) {
+        this(destinations, txMsgStore, 50, 2000, 200, 5);
+    }
+
+    /**
+     * Destination mask of the given destination indexes
+     */
+    public static int destMask(int... destinationIndexes) {
+        int destMask = 0;
+        for (int destinationIndex : destinationIndexes) {
+            Assert.isTrue(destinationIndex >= 0 && destinationIndex < MAX_DESTINATIONS, "Destination index out of range: " + destinationIndex);
+            destMask |= 1 << destinationIndex;
+        }
+        return destMask;
+    }
+
+    @Override
+    public TxMsgModel saveMsg(TxMsgParam txMsgParam) {
+        checkDestMask(txMsgParam);
+        return super.saveMsg(txMsgParam);
+    }
+
+    @Override
+    public List<TxMsgModel> saveMsgBatch(List<TxMsgParam> txMsgParams) {
+        txMsgParams.forEach(this::checkDestMask);
+        return super.saveMsgBatch(txMsgParams);
+    }
+
+    private void checkDestMask(TxMsgParam txMsgParam) {
+        Assert.isTrue((txMsgParam.getDestMask() & ~allDestMask) == 0,
+                "Destination mask " + txMsgParam.getDestMask() + " has no destination publisher, destinations: " + destinations.size());
+    }
+
+    /**
+     * Deliver a single message to its destinations, failures are left to the compensation task
+     */
+    @Override
+    protected void sendMessage(TxMsgModel txMsgModel) {
+        try {
+            batchSendMessages(List.of(txMsgModel), TxMsgMetrics.LIVE_SHARD);
+        } catch (Exception e) {
+            logger.error("Fanout message sending failed [msgId: {}, topic: {}]", txMsgModel.getId(), txMsgModel.getTopic(), e);
+        }
+    }
+
+    /**
+     * Publish every message to the destinations that have not acknowledged it yet, the destinations are published
+     * concurrently on virtual threads. Acknowledgements of each destination are recorded in the store as soon as it
+     * returns, so they survive a failure of the other destinations
+     *
+     * @return Messages acknowledged by all of their destinations, and messages rejected by at least one destination
+     * (the others are still pending at some destination with an unknown outcome)
+     * @throws TxMsgException When every destination with pending messages failed
+     */
+    @Override
+    protected TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels) {
+        Map<Long, Integer> ackedMasks = new ConcurrentHashMap<>();
+        Set<Long> failedMsgIds = ConcurrentHashMap.newKeySet();
+        AtomicInteger failedDestinations = new AtomicInteger();
+        List<Thread> publishers = new ArrayList<>();
+        for (int i = 0; i < destinations.size(); i++) {
+            int destBit = 1 << i;
+            TxMsgPublisher destination = destinations.get(i);
+            List<TxMsgModel> pendingMessages = txMsgModels.stream().filter(model -> (pendingMask(model) & destBit) != 0).toList();
+            if (pendingMessages.isEmpty()) {
+                continue;
+            }
+            publishers.add(Thread.ofVirtual().name("tx-msg-fanout-" + i).start(() -> {
+                try {
+                    TxMsgPublishResult publishResult = destination.publishMessages(pendingMessages);
+                    txMsgStore.ackDestinations(publishResult.successMsgIds(), destBit);
+                    publishResult.successMsgIds().forEach(msgId -> ackedMasks.merge(msgId, destBit, (a, b) -> a | b));
+                    failedMsgIds.addAll(publishResult.failedMsgIds());
+                } catch (Exception e) {
+                    failedDestinations.incrementAndGet();
+                    failedMsgIds.addAll(TxMsgPublishResult.failed(pendingMessages).failedMsgIds());
+                    logger.error("Error while sending fanout messages to destination {}, count: {}", Integer.numberOfTrailingZeros(destBit), pendingMessages.size(), e);
+                }
+            }));
+        }
+        try {
+            for (Thread publisher : publishers) {
+                publisher.join();
+            }
+        } catch (InterruptedException e) {
+            publishers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+        }
+        if (!publishers.isEmpty() && failedDestinations.get() == publishers.size()) {
+            throw new TxMsgException("Error while sending fanout messages to all " + publishers.size() + " destinations");
+        }
+        List<Long> successMsgIds = new ArrayList<>();
+        List<Long> rejectedMsgIds = new ArrayList<>();
+        for (TxMsgModel txMsgModel : txMsgModels) {
+            if ((pendingMask(txMsgModel) & ~ackedMasks.getOrDefault(txMsgModel.getId(), 0)) == 0) {
+                successMsgIds.add(txMsgModel.getId());
+            } else if (failedMsgIds.contains(txMsgModel.getId())) {
+                rejectedMsgIds.add(txMsgModel.getId());
+            }
+        }
+        return new TxMsgPublishResult(successMsgIds, rejectedMsgIds);
+    }
+
+    /**
+     * Destinations the message still has to be delivered to
+     */
+    private int pendingMask(TxMsgModel txMsgModel) {
+        int destMask = txMsgModel.getDestMask() == 0 ? allDestMask : txMsgModel.getDestMask();
+        return destMask & ~txMsgModel.getAckedMask();
+    }
+
+    public List<TxMsgPublisher> getDestinations() {
+        return destinations;
+    }
+}
@@ -1,16 +1,15 @@
 package com.damon.localmsgtx.handler;
 
+import com.damon.localmsgtx.metrics.TxMsgMetrics;
 import com.damon.localmsgtx.model.TxMsgModel;
-import com.damon.localmsgtx.store.TxMsgSqlStore;
-import com.damon.localmsgtx.utils.ListUtils;
-import org.apache.kafka.clients.producer.KafkaProducer;
+import com.damon.localmsgtx.store.ITxMsgStore;
+import com.damon.localmsgtx.store.TxMsgSentStatusCoalescer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -20,29 +19,52 @@ import java.util.List;
 public class KafkaTxMsgHandler extends AbstractTxMsgHandler {
     private static final Logger logger = LoggerFactory.getLogger(KafkaTxMsgHandler.class);
 
-
-    private final KafkaProducer<String, String> kafkaProducer;
+    private final Producer<String, byte[]> kafkaProducer;
+    private final KafkaTxMsgPublisher publisher;
 
     /**
      * Full parameter constructor (recommended, supports custom configuration)
      *
-     * @param kafkaProducer       Kafka producer instance
-     * @param txMsgSqlStore       Transactional message storage manager
+     * @param kafkaProducer       Kafka producer instance (values are the UTF-8 encoded content, see {@link org.apache.kafka.common.serialization.ByteArraySerializer})
+     * @param txMsgStore          Transactional message storage manager
      * @param fetchLimit          Number of pending messages to fetch in a single request
      * @param maxResendNumPerTask Maximum number of messages to resend in a single task
      * @param deleteBatchSize     Batch size for deletion
      * @param exceptionSleep      Sleep time after an exception occurs
      */
-    public KafkaTxMsgHandler(KafkaProducer<String, String> kafkaProducer,
-                             TxMsgSqlStore txMsgSqlStore,
+    public KafkaTxMsgHandler(Producer<String, byte[]> kafkaProducer,
+                             ITxMsgStore txMsgStore,
                              int fetchLimit,
                              int maxResendNumPerTask,
                              int deleteBatchSize,
                              int exceptionSleep) {
-        super(deleteBatchSize, txMsgSqlStore, fetchLimit, maxResendNumPerTask, exceptionSleep);
+        this(kafkaProducer, txMsgStore, fetchLimit, maxResendNumPerTask, deleteBatchSize, exceptionSleep,
+                new TxMsgSentStatusCoalescer(txMsgStore));
+    }
+
+    /**
+     * Full parameter constructor with a custom write-behind stage for "sent" status updates
+     *
+     * @param kafkaProducer       Kafka producer instance (values are the UTF-8 encoded content, see {@link org.apache.kafka.common.serialization.ByteArraySerializer})
+     * @param txMsgStore          Transactional message storage manager
+     * @param fetchLimit          Number of pending messages to fetch in a single request
+     * @param maxResendNumPerTask Maximum number of messages to resend in a single task
+     * @param deleteBatchSize     Batch size for deletion
+     * @param exceptionSleep      Sleep time after an exception occurs
+     * @param sentStatusCoalescer Write-behind stage used by producer callbacks
+     */
+    public KafkaTxMsgHandler(Producer<String, byte[]> kafkaProducer,
+                             ITxMsgStore txMsgStore,
+                             int fetchLimit,
+                             int maxResendNumPerTask,
+                             int deleteBatchSize,
+                             int exceptionSleep,
+                             TxMsgSentStatusCoalescer sentStatusCoalescer) {
+        super(deleteBatchSize, txMsgStore, fetchLimit, maxResendNumPerTask, exceptionSleep, sentStatusCoalescer);
         // Parameter validation
         Assert.notNull(kafkaProducer, "KafkaProducer cannot be null");
         this.kafkaProducer = kafkaProducer;
+        this.publisher = new KafkaTxMsgPublisher(kafkaProducer);
     }
 
     /**
@@ -53,9 +75,9 @@ public class KafkaTxMsgHandler extends AbstractTxMsgHandler {
      * - Delete batch size of 200
      * - Exception sleep time of 5 seconds
      */
-    public KafkaTxMsgHandler(KafkaProducer<String, String> kafkaProducer,
-                             TxMsgSqlStore txMsgSqlStore) {
-        this(kafkaProducer, txMsgSqlStore, 50, 2000, 200, 5);
+    public KafkaTxMsgHandler(Producer<String, byte[]> kafkaProducer,
+                             ITxMsgStore txMsgStore) {
+        this(kafkaProducer, txMsgStore, 50, 2000, 200, 5);
     }
 
     /**
@@ -65,21 +87,21 @@ public class KafkaTxMsgHandler extends AbstractTxMsgHandler {
     protected void sendMessage(TxMsgModel txMsgModel) {
         String topic = txMsgModel.getTopic();
         String msgKey = txMsgModel.getMsgKey();
-        String content = txMsgModel.getContent();
+        byte[] content = txMsgModel.getContentBytes();
         Long msgId = txMsgModel.getId();
         try {
             // Build Kafka message
-            ProducerRecord<String, String> record = new ProducerRecord<>(topic, msgKey, content);
+            ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, msgKey, content);
             kafkaProducer.send(record, (metadata, exception) -> {
                 if (exception == null) {
                     logger.debug("Message sent successfully [msgId: {}, topic: {}, partition: {}, offset: {}]",
                             msgId, metadata.topic(), metadata.partition(), metadata.offset());
-                    int updateRows = txMsgSqlStore.updateSendMsg(txMsgModel);
-                    if (updateRows <= 0) {
-                        logger.warn("Message status update failed, corresponding record not found [msgId: {}]", msgId);
-                    }
+                    // Runs on the producer I/O thread: only enqueue, the status update is written behind
+                    sentStatusCoalescer.submit(msgId);
+                    metrics.recordDelivery(topic, System.currentTimeMillis() - txMsgModel.getCreateTime());
                 } else {
                     logger.error("Message sending failed [msgId: {}, topic: {}]", msgId, topic, exception);
+                    metrics.recordSendFailures(topic, TxMsgMetrics.LIVE_SHARD, 1);
                 }
             });
         } catch (Exception e) {
@@ -88,45 +110,19 @@ public class KafkaTxMsgHandler extends AbstractTxMsgHandler {
     }
 
     /**
-     * Actually execute batch message sending logic
+     * Maximum time a batch waits for its own records, records not acknowledged in time are left for the next compensation run
+     *
+     * @param batchSendTimeoutMillis Batch send timeout in milliseconds (default 30000)
      */
-    @Override
-    protected void batchSendMessages(List<TxMsgModel> txMsgModels) {
-        if (ListUtils.isEmpty(txMsgModels)) {
-            return;
-        }
-        // Process sending results and collect successful message IDs
-        final List<Long> successMsgIds = Collections.synchronizedList(new ArrayList<>(txMsgModels.size()));
-        final List<Long> failedMsgIds = Collections.synchronizedList(new ArrayList<>());
-        // Use callback for async processing
-        txMsgModels.forEach(model -> {
-            ProducerRecord<String, String> record = new ProducerRecord<>(model.getTopic(), model.getMsgKey(), model.getContent());
-            kafkaProducer.send(record, (metadata, exception) -> {
-                if (exception == null) {
-                    logger.debug("Batch message sent successfully [msgId: {}, topic: {}]", model.getId(), model.getTopic());
-                    successMsgIds.add(model.getId());
-                } else {
-                    logger.error("Batch message sending failed [msgId: {}, topic: {}]", model.getId(), model.getTopic(), exception);
-                    failedMsgIds.add(model.getId());
-                }
-            });
-        });
-        // Wait for all messages to be sent
-        kafkaProducer.flush();
-        if (ListUtils.isNotEmpty(successMsgIds)) {
-            // Batch update status of successfully sent messages
-            int updateRows = txMsgSqlStore.batchUpdateSendMsg(successMsgIds);
-            logger.info("Batch message status update completed, should update: {}, actually updated: {}", successMsgIds.size(), updateRows);
-            if (updateRows != successMsgIds.size()) {
-                logger.warn("Some message status updates failed, expected to update: {}, actually updated: {}", successMsgIds.size(), updateRows);
-            }
-        }
-
-        if (ListUtils.isNotEmpty(failedMsgIds)) {
-            String topic = txMsgModels.get(0).getTopic();
-            logger.error("Kafka topic:{}, batch message sending failed, failed message IDs: {}", topic, failedMsgIds);
-        }
-
+    public void setBatchSendTimeoutMillis(long batchSendTimeoutMillis) {
+        publisher.setBatchSendTimeoutMillis(batchSendTimeoutMillis);
+    }
 
+    /**
+     * Actually execute batch message sending logic, see {@link KafkaTxMsgPublisher#publishMessages(List)}
+     */
+    @Override
+    protected TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels) {
+        return publisher.publishMessages(txMsgModels);
     }
 }
@@ -0,0 +1,107 @@
+package com.damon.localmsgtx.handler;
+
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.utils.ListUtils;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes message batches to Kafka, used by {@link KafkaTxMsgHandler} and as a {@link FanoutTxMsgHandler} destination
+ */
+public class KafkaTxMsgPublisher implements TxMsgPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(KafkaTxMsgPublisher.class);
+
+    private final Producer<String, byte[]> kafkaProducer;
+    /**
+     * Maximum time a batch waits for its own records to be acknowledged
+     */
+    private volatile long batchSendTimeoutMillis = 30000;
+
+    /**
+     * @param kafkaProducer Kafka producer instance (values are the UTF-8 encoded content, see {@link org.apache.kafka.common.serialization.ByteArraySerializer})
+     */
+    public KafkaTxMsgPublisher(Producer<String, byte[]> kafkaProducer) {
+        Assert.notNull(kafkaProducer, "KafkaProducer cannot be null");
+        this.kafkaProducer = kafkaProducer;
+    }
+
+    /**
+     * Maximum time a batch waits for its own records, records not acknowledged in time are left for the next compensation run
+     *
+     * @param batchSendTimeoutMillis Batch send timeout in milliseconds (default 30000)
+     */
+    public void setBatchSendTimeoutMillis(long batchSendTimeoutMillis) {
+        Assert.isTrue(batchSendTimeoutMillis > 0, "Batch send timeout must be greater than 0");
+        this.batchSendTimeoutMillis = batchSendTimeoutMillis;
+    }
+
+    /**
+     * Publish a batch and wait for its records
+     * Waits only for the futures of this batch (not {@code producer.flush()}), so concurrent batches and live sends
+     * sharing the producer do not block each other. Records still pending at the deadline have an unknown outcome:
+     * they stay in waiting status without counting as a failed attempt and may be delivered twice, which
+     * at-least-once delivery allows
+     */
+    @Override
+    public TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels) {
+        final List<Long> successMsgIds = new ArrayList<>(txMsgModels.size());
+        final List<Long> failedMsgIds = new ArrayList<>();
+        final List<Long> timeoutMsgIds = new ArrayList<>();
+        final List<Future<RecordMetadata>> futures = new ArrayList<>(txMsgModels.size());
+        for (TxMsgModel model : txMsgModels) {
+            ProducerRecord<String, byte[]> record = new ProducerRecord<>(model.getTopic(), model.getMsgKey(), model.getContentBytes());
+            try {
+                futures.add(kafkaProducer.send(record));
+            } catch (Exception e) {
+                // Serialization error, buffer exhausted (max.block.ms) or producer closed
+                logger.error("Batch message sending failed [msgId: {}, topic: {}]", model.getId(), model.getTopic(), e);
+                futures.add(null);
+            }
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchSendTimeoutMillis);
+        for (int i = 0; i < txMsgModels.size(); i++) {
+            TxMsgModel model = txMsgModels.get(i);
+            Future<RecordMetadata> future = futures.get(i);
+            if (future == null) {
+                failedMsgIds.add(model.getId());
+                continue;
+            }
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                logger.debug("Batch message sent successfully [msgId: {}, topic: {}]", model.getId(), model.getTopic());
+                successMsgIds.add(model.getId());
+            } catch (TimeoutException e) {
+                timeoutMsgIds.add(model.getId());
+            } catch (ExecutionException e) {
+                logger.error("Batch message sending failed [msgId: {}, topic: {}]", model.getId(), model.getTopic(), e.getCause());
+                failedMsgIds.add(model.getId());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while waiting for batch message results, acknowledged so far: {}", successMsgIds.size());
+                break;
+            }
+        }
+
+        String topic = txMsgModels.get(0).getTopic();
+        if (ListUtils.isNotEmpty(failedMsgIds)) {
+            logger.error("Kafka topic:{}, batch message sending failed, failed message IDs: {}", topic, failedMsgIds);
+        }
+        if (ListUtils.isNotEmpty(timeoutMsgIds)) {
+            logger.warn("Kafka topic:{}, batch message not acknowledged within {}ms, left for compensation, message IDs: {}",
+                    topic, batchSendTimeoutMillis, timeoutMsgIds);
+        }
+        return new TxMsgPublishResult(successMsgIds, failedMsgIds);
+    }
+}
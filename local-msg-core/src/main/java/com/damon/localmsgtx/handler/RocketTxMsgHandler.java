@@ -1,21 +1,18 @@
 package com.damon.localmsgtx.handler;
 
-import com.damon.localmsgtx.exception.TxMsgException;
+import com.damon.localmsgtx.metrics.TxMsgMetrics;
 import com.damon.localmsgtx.model.TxMsgModel;
-import com.damon.localmsgtx.store.TxMsgSqlStore;
-import com.damon.localmsgtx.utils.ListUtils;
-import com.damon.localmsgtx.utils.StrUtil;
+import com.damon.localmsgtx.store.ITxMsgStore;
+import com.damon.localmsgtx.store.TxMsgSentStatusCoalescer;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.client.producer.SendCallback;
 import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.common.message.Message;
-import org.apache.rocketmq.common.message.MessageBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Transactional message handler based on RocketMQ
@@ -24,26 +21,50 @@ import java.util.stream.Collectors;
 public class RocketTxMsgHandler extends AbstractTxMsgHandler {
     private static final Logger logger = LoggerFactory.getLogger(RocketTxMsgHandler.class);
     private final DefaultMQProducer rocketProducer;
+    private final RocketTxMsgPublisher publisher;
 
     /**
      * Full parameter constructor (recommended, supports custom configuration)
      *
      * @param rocketProducer      RocketMQ producer instance
-     * @param txMsgSqlStore       Transactional message storage manager
+     * @param txMsgStore          Transactional message storage manager
      * @param fetchLimit          Number of pending messages to fetch in a single request
      * @param maxResendNumPerTask Maximum number of messages to resend in a single task
      * @param deleteBatchSize     Batch size for deletion
      */
     public RocketTxMsgHandler(DefaultMQProducer rocketProducer,
-                              TxMsgSqlStore txMsgSqlStore,
+                              ITxMsgStore txMsgStore,
                               int fetchLimit,
                               int maxResendNumPerTask,
                               int deleteBatchSize,
                               int exceptionSleep) {
-        super(deleteBatchSize, txMsgSqlStore, fetchLimit, maxResendNumPerTask, exceptionSleep);
+        this(rocketProducer, txMsgStore, fetchLimit, maxResendNumPerTask, deleteBatchSize, exceptionSleep,
+                new TxMsgSentStatusCoalescer(txMsgStore));
+    }
+
+    /**
+     * Full parameter constructor with a custom write-behind stage for "sent" status updates
+     *
+     * @param rocketProducer      RocketMQ producer instance
+     * @param txMsgStore          Transactional message storage manager
+     * @param fetchLimit          Number of pending messages to fetch in a single request
+     * @param maxResendNumPerTask Maximum number of messages to resend in a single task
+     * @param deleteBatchSize     Batch size for deletion
+     * @param exceptionSleep      Sleep time after an exception occurs
+     * @param sentStatusCoalescer Write-behind stage used by send callbacks
+     */
+    public RocketTxMsgHandler(DefaultMQProducer rocketProducer,
+                              ITxMsgStore txMsgStore,
+                              int fetchLimit,
+                              int maxResendNumPerTask,
+                              int deleteBatchSize,
+                              int exceptionSleep,
+                              TxMsgSentStatusCoalescer sentStatusCoalescer) {
+        super(deleteBatchSize, txMsgStore, fetchLimit, maxResendNumPerTask, exceptionSleep, sentStatusCoalescer);
         // Parameter validation
         Assert.notNull(rocketProducer, "RocketMQ producer cannot be null");
         this.rocketProducer = rocketProducer;
+        this.publisher = new RocketTxMsgPublisher(rocketProducer);
     }
 
     /**
@@ -55,8 +76,8 @@ public class RocketTxMsgHandler extends AbstractTxMsgHandler {
      * - Exception sleep time of 5 seconds
      */
     public RocketTxMsgHandler(DefaultMQProducer rocketProducer,
-                              TxMsgSqlStore txMsgSqlStore) {
-        this(rocketProducer, txMsgSqlStore, 50, 2000, 200, 5);
+                              ITxMsgStore txMsgStore) {
+        this(rocketProducer, txMsgStore, 50, 2000, 200, 5);
     }
 
     /**
@@ -68,23 +89,22 @@ public class RocketTxMsgHandler extends AbstractTxMsgHandler {
         Long msgId = txMsgModel.getId();
         try {
             // Build RocketMQ message
-            Message message = convertToRocketMessages(txMsgModel);
+            Message message = RocketTxMsgPublisher.convertToRocketMessages(txMsgModel);
             // Send message asynchronously
             rocketProducer.send(message, new SendCallback() {
                 @Override
                 public void onSuccess(SendResult sendResult) {
                     logger.debug("Message sent successfully [msgId: {}, topic: {}, messageId: {}, queueId: {}]",
                             msgId, topic, sendResult.getMsgId(), sendResult.getMessageQueue().getQueueId());
-
-                    int updateRows = txMsgSqlStore.updateSendMsg(txMsgModel);
-                    if (updateRows <= 0) {
-                        logger.warn("Message status update failed, corresponding record not found [msgId: {}]", msgId);
-                    }
+                    // Runs on the client callback executor: only enqueue, the status update is written behind
+                    sentStatusCoalescer.submit(msgId);
+                    metrics.recordDelivery(topic, System.currentTimeMillis() - txMsgModel.getCreateTime());
                 }
 
                 @Override
                 public void onException(Throwable e) {
                     logger.error("Message sending failed [msgId: {}, topic: {}]", msgId, topic, e);
+                    metrics.recordSendFailures(topic, TxMsgMetrics.LIVE_SHARD, 1);
                 }
             });
         } catch (Exception e) {
@@ -93,49 +113,28 @@ public class RocketTxMsgHandler extends AbstractTxMsgHandler {
     }
 
     /**
-     * Actually execute batch message sending logic
+     * Maximum encoded size of one batch request, defaults to the producer's max message size (4MB)
+     *
+     * @param maxBatchBytes Maximum batch size in bytes
      */
-    @Override
-    protected void batchSendMessages(List<TxMsgModel> txMsgModels) {
-        if (ListUtils.isEmpty(txMsgModels)) {
-            return;
-        }
-        // Group messages by topic (RocketMQ batch send requires same topic)
-        // Here we assume all messages in batch have same topic, if not, need to group them
-        String topic = txMsgModels.get(0).getTopic();
-        List<Message> messages = txMsgModels.stream().map(this::convertToRocketMessages).toList();
-        MessageBatch batch = MessageBatch.generateFromList(messages);
-        batch.setBody(batch.encode());
-        List<Long> msgIds = txMsgModels.stream().map(TxMsgModel::getId).collect(Collectors.toList());
-        try {
-            rocketProducer.send(batch);
-        } catch (Exception e) {
-            logger.error("RocketMQ topic:{}, batch message sending failed, failed message IDs: {}", topic, msgIds, e);
-            throw new TxMsgException(e);
-        }
-        // Update status for successfully sent messages
-        if (ListUtils.isNotEmpty(msgIds)) {
-            int updateRows = txMsgSqlStore.batchUpdateSendMsg(msgIds);
-            logger.info("Batch message status update completed, should update: {}, actually updated: {}",
-                    msgIds.size(), updateRows);
-
-            if (updateRows != msgIds.size()) {
-                logger.warn("Some message status updates failed, expected to update: {}, actually updated: {}",
-                        msgIds.size(), updateRows);
-            }
-        }
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        publisher.setMaxBatchBytes(maxBatchBytes);
     }
 
     /**
-     * Convert TxMsgModel list to RocketMQ Message list
+     * Maximum time a batch waits for the send callbacks, sub-batches not acknowledged in time are left for the next compensation run
+     *
+     * @param batchSendTimeoutMillis Batch send timeout in milliseconds (default 30000)
      */
-    private Message convertToRocketMessages(TxMsgModel model) {
-        Message message = new Message(model.getTopic(), model.getContent().getBytes());
-        message.setKeys(model.getMsgKey());
-        if (StrUtil.isNotEmpty(model.getMsgTag())) {
-            message.setTags(model.getMsgTag());
-        }
-        return message;
+    public void setBatchSendTimeoutMillis(long batchSendTimeoutMillis) {
+        publisher.setBatchSendTimeoutMillis(batchSendTimeoutMillis);
+    }
 
+    /**
+     * Actually execute batch message sending logic, see {@link RocketTxMsgPublisher#publishMessages(List)}
+     */
+    @Override
+    protected TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels) {
+        return publisher.publishMessages(txMsgModels);
     }
-}
\ No newline at end of file
+}
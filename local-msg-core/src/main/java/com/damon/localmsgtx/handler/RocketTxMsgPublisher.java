@@ -0,0 +1,210 @@
+package com.damon.localmsgtx.handler;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.utils.StrUtil;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes message batches to RocketMQ, used by {@link RocketTxMsgHandler} and as a {@link FanoutTxMsgHandler} destination
+ */
+public class RocketTxMsgPublisher implements TxMsgPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(RocketTxMsgPublisher.class);
+    /**
+     * Fixed header of a message encoded in a batch (total size, magic code, body crc, flag, body length, properties length)
+     */
+    private static final int ENCODED_MSG_OVERHEAD = 22;
+    /**
+     * UNIQ_KEY property the producer adds to every message of a batch before encoding it (key \u0001 id \u0002),
+     * the id length depends on the address family of this host
+     */
+    private static final int UNIQ_KEY_PROPERTY_BYTES = MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX.length()
+            + MessageClientIDSetter.createUniqID().length() + 2;
+    private final DefaultMQProducer rocketProducer;
+    /**
+     * Maximum encoded size of one batch request, 0 means the producer's max message size
+     */
+    private volatile int maxBatchBytes;
+    /**
+     * Maximum time a batch waits for its send callbacks
+     */
+    private volatile long batchSendTimeoutMillis = 30000;
+
+    /**
+     * @param rocketProducer RocketMQ producer instance
+     */
+    public RocketTxMsgPublisher(DefaultMQProducer rocketProducer) {
+        Assert.notNull(rocketProducer, "RocketMQ producer cannot be null");
+        this.rocketProducer = rocketProducer;
+    }
+
+    /**
+     * Maximum encoded size of one batch request, defaults to the producer's max message size (4MB)
+     *
+     * @param maxBatchBytes Maximum batch size in bytes
+     */
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        Assert.isTrue(maxBatchBytes > 0, "Maximum batch bytes must be greater than 0");
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Maximum time a batch waits for the send callbacks, sub-batches not acknowledged in time are left for the next compensation run
+     *
+     * @param batchSendTimeoutMillis Batch send timeout in milliseconds (default 30000)
+     */
+    public void setBatchSendTimeoutMillis(long batchSendTimeoutMillis) {
+        Assert.isTrue(batchSendTimeoutMillis > 0, "Batch send timeout must be greater than 0");
+        this.batchSendTimeoutMillis = batchSendTimeoutMillis;
+    }
+
+    /**
+     * Publish a batch and wait for its send callbacks
+     * Messages are grouped by topic (a RocketMQ batch must share one topic) and packed into sub-batches under the
+     * batch byte limit, all sub-batches are sent concurrently. Sub-batches still pending at the deadline have an
+     * unknown outcome and are neither acknowledged nor failed
+     */
+    @Override
+    public TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels) {
+        List<RocketBatch> batches = splitBatches(txMsgModels);
+        List<Long> successMsgIds = Collections.synchronizedList(new ArrayList<>(txMsgModels.size()));
+        List<Long> failedMsgIds = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(batches.size());
+        AtomicInteger failedBatches = new AtomicInteger();
+        for (RocketBatch batch : batches) {
+            try {
+                rocketProducer.send(batch.messages(), new SendCallback() {
+                    @Override
+                    public void onSuccess(SendResult sendResult) {
+                        logger.debug("Batch message sent successfully [topic: {}, count: {}, queueId: {}]",
+                                batch.topic(), batch.msgIds().size(), sendResult.getMessageQueue().getQueueId());
+                        successMsgIds.addAll(batch.msgIds());
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onException(Throwable e) {
+                        logger.error("RocketMQ topic:{}, batch message sending failed, failed message IDs: {}", batch.topic(), batch.msgIds(), e);
+                        failedMsgIds.addAll(batch.msgIds());
+                        failedBatches.incrementAndGet();
+                        latch.countDown();
+                    }
+                }, batchSendTimeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TxMsgException(e);
+            } catch (Exception e) {
+                logger.error("RocketMQ topic:{}, batch message sending failed, failed message IDs: {}", batch.topic(), batch.msgIds(), e);
+                failedMsgIds.addAll(batch.msgIds());
+                failedBatches.incrementAndGet();
+                latch.countDown();
+            }
+        }
+
+        try {
+            if (!latch.await(batchSendTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("RocketMQ batch not fully acknowledged within {}ms, pending sub-batches: {}, left for compensation",
+                        batchSendTimeoutMillis, latch.getCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failedBatches.get() == batches.size()) {
+            // Nothing went through, let the caller back off
+            throw new TxMsgException("RocketMQ batch message sending failed, failed sub-batches: " + failedBatches.get());
+        }
+        synchronized (successMsgIds) {
+            synchronized (failedMsgIds) {
+                return new TxMsgPublishResult(new ArrayList<>(successMsgIds), new ArrayList<>(failedMsgIds));
+            }
+        }
+    }
+
+    /**
+     * Group messages by topic and pack each group into sub-batches whose estimated encoded size stays under
+     * {@link #maxBatchBytes}, a message larger than the limit is sent alone
+     */
+    List<RocketBatch> splitBatches(List<TxMsgModel> txMsgModels) {
+        Map<String, List<TxMsgModel>> topicMessages = txMsgModels.stream()
+                .collect(Collectors.groupingBy(TxMsgModel::getTopic, LinkedHashMap::new, Collectors.toList()));
+        List<RocketBatch> batches = new ArrayList<>();
+        int limit = maxBatchBytes > 0 ? maxBatchBytes : rocketProducer.getMaxMessageSize();
+        topicMessages.forEach((topic, models) -> {
+            List<Message> messages = new ArrayList<>();
+            List<Long> msgIds = new ArrayList<>();
+            int batchBytes = 0;
+            for (TxMsgModel model : models) {
+                Message message = convertToRocketMessages(model);
+                int messageBytes = estimateEncodedSize(message);
+                if (!messages.isEmpty() && batchBytes + messageBytes > limit) {
+                    batches.add(new RocketBatch(topic, messages, msgIds));
+                    messages = new ArrayList<>();
+                    msgIds = new ArrayList<>();
+                    batchBytes = 0;
+                }
+                messages.add(message);
+                msgIds.add(model.getId());
+                batchBytes += messageBytes;
+            }
+            if (!messages.isEmpty()) {
+                batches.add(new RocketBatch(topic, messages, msgIds));
+            }
+        });
+        return batches;
+    }
+
+    /**
+     * Encoded size of a message inside a batch: body, properties (including the UNIQ_KEY added by the producer)
+     * and the fixed per-message header
+     */
+    static int estimateEncodedSize(Message message) {
+        int size = message.getBody().length + ENCODED_MSG_OVERHEAD;
+        if (message.getProperty(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX) == null) {
+            size += UNIQ_KEY_PROPERTY_BYTES;
+        }
+        if (message.getProperties() != null) {
+            for (Map.Entry<String, String> entry : message.getProperties().entrySet()) {
+                // key \u0001 value \u0002
+                size += entry.getKey().getBytes(StandardCharsets.UTF_8).length + entry.getValue().getBytes(StandardCharsets.UTF_8).length + 2;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Messages of one topic sent in a single batch request
+     */
+    record RocketBatch(String topic, List<Message> messages, List<Long> msgIds) {
+    }
+
+    /**
+     * Convert TxMsgModel list to RocketMQ Message list
+     */
+    static Message convertToRocketMessages(TxMsgModel model) {
+        Message message = new Message(model.getTopic(), model.getContentBytes());
+        message.setKeys(model.getMsgKey());
+        if (StrUtil.isNotEmpty(model.getMsgTag())) {
+            message.setTags(model.getMsgTag());
+        }
+        return message;
+    }
+}
@@ -0,0 +1,23 @@
+package com.damon.localmsgtx.handler;
+
+import com.damon.localmsgtx.model.TxMsgModel;
+
+import java.util.List;
+
+/**
+ * Outcome of publishing a batch of messages
+ * Messages in neither list (e.g. not acknowledged before the batch send timeout) have an unknown outcome: the broker
+ * may still accept them, so they stay waiting without using up their retry budget and compensation sends them again
+ *
+ * @param successMsgIds IDs of the messages acknowledged by the broker
+ * @param failedMsgIds  IDs of the messages rejected by the broker or never handed to it, recorded as failed send attempts
+ */
+public record TxMsgPublishResult(List<Long> successMsgIds, List<Long> failedMsgIds) {
+
+    /**
+     * Result of a batch that failed as a whole
+     */
+    public static TxMsgPublishResult failed(List<TxMsgModel> txMsgModels) {
+        return new TxMsgPublishResult(List.of(), txMsgModels.stream().map(TxMsgModel::getId).toList());
+    }
+}
@@ -0,0 +1,23 @@
+package com.damon.localmsgtx.handler;
+
+import com.damon.localmsgtx.model.TxMsgModel;
+
+import java.util.List;
+
+/**
+ * Publishes stored messages to one broker (or cluster) and waits for the result, without touching the store
+ * <p>
+ * Handlers acknowledge the published messages in their store, a {@link FanoutTxMsgHandler} uses one publisher per
+ * destination and records the acknowledgements per destination
+ */
+@FunctionalInterface
+public interface TxMsgPublisher {
+
+    /**
+     * Send a batch of messages to the broker and wait for the result
+     *
+     * @param txMsgModels Messages to send (not empty)
+     * @return Messages acknowledged and messages rejected by the broker, the others have an unknown outcome
+     */
+    TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels);
+}
@@ -0,0 +1,101 @@
+package com.damon.localmsgtx.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.util.Assert;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micrometer binding of {@link TxMsgMetrics} (micrometer-core is an optional dependency, add it to use this class)
+ * <ul>
+ *     <li>{@code txmsg.insert}, {@code txmsg.delivery}, {@code txmsg.status.update}: timers with percentile histograms, tagged by topic</li>
+ *     <li>{@code txmsg.inserted}, {@code txmsg.acked}: message counters, tagged by topic</li>
+ *     <li>{@code txmsg.resend.batches}, {@code txmsg.resend.messages}: counters tagged by topic and shard, their rate is the resend throughput</li>
+ *     <li>{@code txmsg.send.failures}: counter tagged by topic and shard</li>
+ *     <li>{@code txmsg.backlog.pending}, {@code txmsg.backlog.oldest.age}: gauges tagged by topic, reporting the last value
+ *     refreshed by {@link TxMsgBacklogMonitor} (scrapes never hit the database)</li>
+ * </ul>
+ */
+public class MicrometerTxMsgMetrics implements TxMsgMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicLong> pendingCounts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> oldestPendingAges = new ConcurrentHashMap<>();
+
+    public MicrometerTxMsgMetrics(MeterRegistry registry) {
+        Assert.notNull(registry, "Meter registry cannot be null");
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordInsert(String topic, int count, long elapsedNanos) {
+        timer("txmsg.insert", "Duration of message table inserts", topic).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        registry.counter("txmsg.inserted", "topic", topic).increment(count);
+    }
+
+    @Override
+    public void recordDelivery(String topic, long delayMillis) {
+        timer("txmsg.delivery", "Time from message creation to broker acknowledgement", topic)
+                .record(Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void recordStatusUpdate(String topic, int count, long elapsedNanos) {
+        timer("txmsg.status.update", "Duration of status updates of acknowledged messages", topic).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        registry.counter("txmsg.acked", "topic", topic).increment(count);
+    }
+
+    @Override
+    public void recordResendBatch(String topic, String shardTailNumber, int messageCount) {
+        Counter.builder("txmsg.resend.batches")
+                .description("Pages of waiting messages sent by compensation tasks")
+                .tags("topic", topic, "shard", shardTailNumber)
+                .register(registry)
+                .increment();
+        registry.counter("txmsg.resend.messages", "topic", topic, "shard", shardTailNumber).increment(messageCount);
+    }
+
+    @Override
+    public void recordSendFailures(String topic, String shardTailNumber, int count) {
+        Counter.builder("txmsg.send.failures")
+                .description("Messages not acknowledged by the broker")
+                .tags("topic", topic, "shard", shardTailNumber)
+                .register(registry)
+                .increment(count);
+    }
+
+    @Override
+    public void updateBacklog(String topic, long pendingCount, long oldestPendingAgeMillis) {
+        pendingCounts.computeIfAbsent(topic, key -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("txmsg.backlog.pending", value, AtomicLong::get)
+                    .description("Messages waiting to send")
+                    .tag("topic", key)
+                    .register(registry);
+            return value;
+        }).set(pendingCount);
+        oldestPendingAges.computeIfAbsent(topic, key -> {
+            AtomicLong value = new AtomicLong();
+            TimeGauge.builder("txmsg.backlog.oldest.age", value, TimeUnit.MILLISECONDS, AtomicLong::get)
+                    .description("Age of the oldest message waiting to send")
+                    .tag("topic", key)
+                    .register(registry);
+            return value;
+        }).set(oldestPendingAgeMillis);
+    }
+
+    private Timer timer(String name, String description, String topic) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("topic", topic)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
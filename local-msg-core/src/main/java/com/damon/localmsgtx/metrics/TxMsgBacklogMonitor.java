@@ -0,0 +1,99 @@
+package com.damon.localmsgtx.metrics;
+
+import com.damon.localmsgtx.model.TxMsgBacklog;
+import com.damon.localmsgtx.store.ITxMsgStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically reads the backlog of messages waiting to send and publishes it per topic through {@link TxMsgMetrics#updateBacklog}
+ * <p>
+ * The values come from the (status, topic, create_time) index: the oldest create time of every topic is one index
+ * lookup and each topic's count scans at most {@code maxCountedRows} index entries, so a large backlog is reported as
+ * {@code maxCountedRows}. A topic whose backlog drained is reported as 0. The database is queried once per refresh
+ * interval, not on every metrics scrape
+ */
+public class TxMsgBacklogMonitor implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TxMsgBacklogMonitor.class);
+
+    private final ITxMsgStore txMsgStore;
+    private final TxMsgMetrics metrics;
+    private final long refreshIntervalMillis;
+    private final int maxCountedRows;
+    private final ScheduledExecutorService refreshExecutor;
+    /**
+     * Topics reported so far, the default topic of the store is always reported
+     */
+    private final Set<String> reportedTopics = new HashSet<>();
+
+    /**
+     * Full parameter constructor
+     *
+     * @param txMsgStore            Transactional message storage manager
+     * @param metrics               Metrics receiving the backlog
+     * @param refreshIntervalMillis Refresh interval in milliseconds
+     * @param maxCountedRows        Maximum number of waiting messages counted per topic by one refresh
+     */
+    public TxMsgBacklogMonitor(ITxMsgStore txMsgStore, TxMsgMetrics metrics, long refreshIntervalMillis, int maxCountedRows) {
+        Assert.notNull(txMsgStore, "TxMsgStore cannot be null");
+        Assert.notNull(metrics, "Metrics cannot be null");
+        Assert.isTrue(refreshIntervalMillis >= 1000, "Refresh interval must be at least 1000 milliseconds");
+        Assert.isTrue(maxCountedRows > 0, "Maximum counted rows must be greater than 0");
+        this.txMsgStore = txMsgStore;
+        this.metrics = metrics;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.maxCountedRows = maxCountedRows;
+        this.reportedTopics.add(txMsgStore.getTopic());
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(
+                r -> Thread.ofPlatform().daemon().name("tx-msg-backlog-monitor").unstarted(r)
+        );
+    }
+
+    /**
+     * Simplified constructor (refresh every 15 seconds, count at most 1000000 waiting messages)
+     */
+    public TxMsgBacklogMonitor(ITxMsgStore txMsgStore, TxMsgMetrics metrics) {
+        this(txMsgStore, metrics, 15000, 1000000);
+    }
+
+    public void start() {
+        refreshExecutor.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Backlog monitor started, topic: {}, refresh interval: {}ms", txMsgStore.getTopic(), refreshIntervalMillis);
+    }
+
+    void refresh() {
+        try {
+            List<TxMsgBacklog> backlogs = txMsgStore.getBacklog(maxCountedRows);
+            long currentTime = System.currentTimeMillis();
+            Set<String> drainedTopics = new HashSet<>(reportedTopics);
+            for (TxMsgBacklog backlog : backlogs) {
+                metrics.updateBacklog(backlog.topic(), backlog.pendingCount(), Math.max(0, currentTime - backlog.oldestCreateTime()));
+                drainedTopics.remove(backlog.topic());
+                reportedTopics.add(backlog.topic());
+            }
+            for (String topic : drainedTopics) {
+                metrics.updateBacklog(topic, 0, 0);
+            }
+        } catch (Exception e) {
+            logger.error("Exception occurred while refreshing message backlog, topic: {}", txMsgStore.getTopic(), e);
+        }
+    }
+
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+        logger.info("Backlog monitor stopped, topic: {}", txMsgStore.getTopic());
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+}
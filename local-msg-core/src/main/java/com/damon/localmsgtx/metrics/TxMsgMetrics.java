@@ -0,0 +1,80 @@
+package com.damon.localmsgtx.metrics;
+
+/**
+ * Metrics SPI of the transactional message table
+ * Implementations are called on the send and resend hot paths and must not block, every method defaults to a no-op.
+ * See {@link MicrometerTxMsgMetrics} for a Micrometer binding
+ */
+public interface TxMsgMetrics {
+
+    /**
+     * Metrics disabled (default)
+     */
+    TxMsgMetrics NOOP = new TxMsgMetrics() {
+    };
+
+    /**
+     * Shard tag of failures on the send path after transaction commit (not bound to a compensation shard)
+     */
+    String LIVE_SHARD = "live";
+
+    /**
+     * Messages stored in the message table
+     *
+     * @param topic        Message topic
+     * @param count        Number of messages stored by the INSERT
+     * @param elapsedNanos Duration of the INSERT
+     */
+    default void recordInsert(String topic, int count, long elapsedNanos) {
+    }
+
+    /**
+     * Message acknowledged by the broker
+     *
+     * @param topic       Message topic
+     * @param delayMillis Time from the message create time (set when it is stored, inside the committing transaction)
+     *                    to the broker acknowledgement, includes the time spent waiting for compensation on resends
+     */
+    default void recordDelivery(String topic, long delayMillis) {
+    }
+
+    /**
+     * Status update of acknowledged messages (mark sent, archive or delete depending on the ack mode)
+     *
+     * @param topic        Default topic of the store (one update covers the acknowledged messages of every topic)
+     * @param count        Number of messages acknowledged
+     * @param elapsedNanos Duration of the update
+     */
+    default void recordStatusUpdate(String topic, int count, long elapsedNanos) {
+    }
+
+    /**
+     * One page of waiting messages sent by a compensation task
+     *
+     * @param topic           Message topic
+     * @param shardTailNumber Shard tail number of the task
+     * @param messageCount    Number of messages in the page
+     */
+    default void recordResendBatch(String topic, String shardTailNumber, int messageCount) {
+    }
+
+    /**
+     * Messages not acknowledged by the broker, they are retried by the compensation task
+     *
+     * @param topic           Message topic
+     * @param shardTailNumber Shard tail number of the compensation task, {@link #LIVE_SHARD} for sends after commit
+     * @param count           Number of failed messages
+     */
+    default void recordSendFailures(String topic, String shardTailNumber, int count) {
+    }
+
+    /**
+     * Backlog of messages of one topic waiting to send, refreshed periodically by {@link TxMsgBacklogMonitor}
+     *
+     * @param topic                  Message topic
+     * @param pendingCount           Number of messages waiting to send (capped, see {@link TxMsgBacklogMonitor})
+     * @param oldestPendingAgeMillis Age of the oldest message waiting to send, 0 when there is none
+     */
+    default void updateBacklog(String topic, long pendingCount, long oldestPendingAgeMillis) {
+    }
+}
@@ -0,0 +1,11 @@
+package com.damon.localmsgtx.model;
+
+/**
+ * Backlog of messages of one topic waiting to send
+ *
+ * @param topic            Message topic
+ * @param pendingCount     Number of messages waiting to send, capped by the caller
+ * @param oldestCreateTime Create time of the oldest message waiting to send
+ */
+public record TxMsgBacklog(String topic, long pendingCount, long oldestCreateTime) {
+}
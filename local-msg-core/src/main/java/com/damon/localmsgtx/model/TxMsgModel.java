@@ -1,5 +1,9 @@
 package com.damon.localmsgtx.model;
 
+import com.damon.localmsgtx.codec.TxMsgContentCodec;
+
+import java.nio.charset.StandardCharsets;
+
 public class TxMsgModel {
 
     /**
@@ -15,6 +19,10 @@ public class TxMsgModel {
      * 事务消息
      */
     private String content;
+    /**
+     * 事务消息（UTF-8编码，发送时直接使用）
+     */
+    private byte[] contentBytes;
 
     /**
      * 主题
@@ -26,7 +34,7 @@ public class TxMsgModel {
     private String msgTag;
 
     /**
-     * 状态：1-等待，2-发送
+     * 状态：0-等待，1-发送，2-失败（死信）
      */
     private int status;
 
@@ -40,6 +48,22 @@ public class TxMsgModel {
     private long createTime;
 
     private Long updateTime;
+    /**
+     * 压缩算法（读取压缩存储的消息时设置，发送时才解压）
+     */
+    private TxMsgContentCodec contentCodec;
+    /**
+     * 压缩后的消息内容
+     */
+    private byte[] encodedContent;
+    /**
+     * 投递目标位图（扇出消息，0-全部目标）
+     */
+    private int destMask;
+    /**
+     * 已确认的投递目标位图
+     */
+    private int ackedMask;
 
     public Long getId() {
         return id;
@@ -49,14 +73,48 @@ public class TxMsgModel {
         this.id = id;
     }
 
+    /**
+     * Message content, decoded from the UTF-8 bytes on first access when the message carries bytes only
+     */
     public String getContent() {
+        if (content == null) {
+            byte[] bytes = getContentBytes();
+            if (bytes != null) {
+                content = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
         return content;
     }
 
     public void setContent(String content) {
         this.content = content;
+        this.contentBytes = null;
+        this.encodedContent = null;
     }
 
+    /**
+     * Message content as UTF-8 bytes, used by the handlers to send the message
+     * Compressed content read from the store is decompressed on first access (at send time)
+     */
+    public byte[] getContentBytes() {
+        if (contentBytes == null) {
+            if (encodedContent != null) {
+                contentBytes = contentCodec.decode(encodedContent);
+                encodedContent = null;
+            } else if (content != null) {
+                contentBytes = content.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        return contentBytes;
+    }
+
+    public void setContentBytes(byte[] contentBytes) {
+        this.contentBytes = contentBytes;
+        this.content = null;
+        this.encodedContent = null;
+    }
+
+
     public String getTopic() {
         return topic;
     }
@@ -112,4 +170,30 @@ public class TxMsgModel {
     public void setMsgTag(String msgTag) {
         this.msgTag = msgTag;
     }
-}
\ No newline at end of file
+
+    public int getDestMask() {
+        return destMask;
+    }
+
+    public void setDestMask(int destMask) {
+        this.destMask = destMask;
+    }
+
+    public int getAckedMask() {
+        return ackedMask;
+    }
+
+    public void setAckedMask(int ackedMask) {
+        this.ackedMask = ackedMask;
+    }
+
+    /**
+     * Set the content in its stored (compressed) form, decoded lazily by {@link #getContentBytes()}
+     */
+    public void setEncodedContent(TxMsgContentCodec contentCodec, byte[] encodedContent) {
+        this.contentCodec = contentCodec;
+        this.encodedContent = encodedContent;
+        this.content = null;
+        this.contentBytes = null;
+    }
+}
@@ -0,0 +1,194 @@
+package com.damon.localmsgtx.model;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Transactional message to be stored, the content is given either as a String or as UTF-8 bytes
+ */
+public class TxMsgParam {
+
+    /**
+     * 消息主题（为空时使用存储配置的默认主题）
+     */
+    private String topic;
+    /**
+     * 消息key
+     */
+    private String msgKey;
+    /**
+     * 标签
+     */
+    private String msgTag;
+    /**
+     * 事务消息
+     */
+    private String content;
+    /**
+     * 事务消息（UTF-8编码）
+     */
+    private byte[] contentBytes;
+    /**
+     * 投递目标位图（扇出消息，第 i 位对应第 i 个投递目标，0-全部目标）
+     */
+    private int destMask;
+
+    public TxMsgParam() {
+    }
+
+    public TxMsgParam(String msgKey, String content) {
+        this(msgKey, null, content);
+    }
+
+    public TxMsgParam(String msgKey, String msgTag, String content) {
+        this.msgKey = msgKey;
+        this.msgTag = msgTag;
+        this.content = content;
+    }
+
+    /**
+     * @param content Message content, UTF-8 encoded, copied
+     * @throws IllegalArgumentException if the content is not valid UTF-8
+     */
+    public TxMsgParam(String msgKey, String msgTag, byte[] content) {
+        this.msgKey = msgKey;
+        this.msgTag = msgTag;
+        setContentBytes(content);
+    }
+
+    /**
+     * @param content Message content, UTF-8 encoded, from position to limit (copied once, the buffer position is not changed)
+     * @throws IllegalArgumentException if the content is not valid UTF-8
+     */
+    public TxMsgParam(String msgKey, String msgTag, ByteBuffer content) {
+        this.msgKey = msgKey;
+        this.msgTag = msgTag;
+        if (content != null) {
+            byte[] bytes = new byte[content.remaining()];
+            content.duplicate().get(bytes);
+            checkUtf8(bytes);
+            this.contentBytes = bytes;
+        }
+    }
+
+    /**
+     * Message for the given topic, the store's default topic is used when the topic is null or empty
+     */
+    public static TxMsgParam ofTopic(String topic, String msgKey, String msgTag, String content) {
+        TxMsgParam txMsgParam = new TxMsgParam(msgKey, msgTag, content);
+        txMsgParam.setTopic(topic);
+        return txMsgParam;
+    }
+
+    /**
+     * @param content Message content, UTF-8 encoded, copied
+     * @throws IllegalArgumentException if the content is not valid UTF-8
+     */
+    public static TxMsgParam ofTopic(String topic, String msgKey, String msgTag, byte[] content) {
+        TxMsgParam txMsgParam = new TxMsgParam(msgKey, msgTag, content);
+        txMsgParam.setTopic(topic);
+        return txMsgParam;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public int getDestMask() {
+        return destMask;
+    }
+
+    public void setDestMask(int destMask) {
+        this.destMask = destMask;
+    }
+
+    public String getMsgKey() {
+        return msgKey;
+    }
+
+    public void setMsgKey(String msgKey) {
+        this.msgKey = msgKey;
+    }
+
+    public String getMsgTag() {
+        return msgTag;
+    }
+
+    public void setMsgTag(String msgTag) {
+        this.msgTag = msgTag;
+    }
+
+    /**
+     * Message content, decoded from the UTF-8 bytes on first use when the message was given as bytes
+     */
+    public String getContent() {
+        if (content == null && contentBytes != null) {
+            // Validated when set, decoding cannot substitute replacement characters
+            content = new String(contentBytes, StandardCharsets.UTF_8);
+        }
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+        this.contentBytes = null;
+    }
+
+    /**
+     * Message content as UTF-8 bytes, encoded once and reused by the size check, the store and the handlers
+     */
+    public byte[] getContentBytes() {
+        if (contentBytes == null && content != null) {
+            contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        }
+        return contentBytes;
+    }
+
+    /**
+     * @param contentBytes Message content, UTF-8 encoded, copied so that later changes of the array do not alter the message
+     * @throws IllegalArgumentException if the content is not valid UTF-8
+     */
+    public void setContentBytes(byte[] contentBytes) {
+        this.content = null;
+        if (contentBytes == null) {
+            this.contentBytes = null;
+            return;
+        }
+        byte[] copy = contentBytes.clone();
+        checkUtf8(copy);
+        this.contentBytes = copy;
+    }
+
+    /**
+     * Validate UTF-8 bytes, rejecting malformed input instead of replacing it with U+FFFD like {@code new String(bytes, UTF_8)}
+     * The bytes are decoded through a small buffer, no String of the content is built
+     */
+    private static void checkUtf8(byte[] bytes) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        CharBuffer out = CharBuffer.allocate(Math.min(bytes.length + 1, 1024));
+        try {
+            CoderResult result;
+            do {
+                out.clear();
+                result = decoder.decode(in, out, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+            } while (result.isOverflow());
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("Message content is not valid UTF-8", e);
+        }
+    }
+}
@@ -6,7 +6,11 @@ package com.damon.localmsgtx.model;
 public enum TxMsgStatusEnum {
 
     WAITING(0, "Waiting to send"),
-    SENT(1, "Sent");
+    SENT(1, "Sent"),
+    /**
+     * Dead letter: the maximum retry count was reached, no longer resent by the compensation task
+     */
+    FAILED(2, "Failed");
 
     private final int status;
 
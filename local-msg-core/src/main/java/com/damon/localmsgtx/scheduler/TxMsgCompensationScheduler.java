@@ -0,0 +1,255 @@
+package com.damon.localmsgtx.scheduler;
+
+import com.damon.localmsgtx.handler.AbstractTxMsgHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compensation scheduler running the shard scans of a handler concurrently
+ * <p>
+ * Every shard has its own schedule (interval plus random jitter), scans run on virtual threads and at most
+ * {@code parallelism} of them run at the same time. A shard whose scan reached the per-task limit is rescheduled
+ * immediately, so a large backlog drains at full parallel speed.
+ */
+public class TxMsgCompensationScheduler implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TxMsgCompensationScheduler.class);
+
+    private final AbstractTxMsgHandler txMsgHandler;
+    private final TxMsgShardProvider shardProvider;
+    /**
+     * Default interval between two scans of the same shard
+     */
+    private final long intervalMillis;
+    /**
+     * Maximum random delay added to every interval, spreads the scans of different shards and nodes
+     */
+    private final long jitterMillis;
+    private final Semaphore scanPermits;
+    private final Map<String, Long> shardIntervals = new ConcurrentHashMap<>();
+    /**
+     * Pages buffered between the stages of a pipelined resend, 1 means sequential resend
+     */
+    private volatile int resendPipelineDepth = 1;
+    /**
+     * Shards currently scanned, each mapped to the token of its schedule chain
+     * (a shard dropped and owned again gets a new chain, the old one stops)
+     */
+    private final Map<String, Object> activeShards = new ConcurrentHashMap<>();
+    /**
+     * Number of scans running per shard
+     */
+    private final Map<String, Integer> runningScans = new ConcurrentHashMap<>();
+    /**
+     * Shards dropped by the provider whose last scan may still be running
+     */
+    private final Set<String> stoppingShards = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService scanExecutor;
+    private volatile boolean running;
+
+    /**
+     * Full parameter constructor
+     *
+     * @param txMsgHandler   Handler whose waiting messages are resent
+     * @param shardProvider  Shards owned by this node, re-read every interval
+     * @param parallelism    Maximum number of shard scans running concurrently
+     * @param intervalMillis Interval between two scans of the same shard
+     * @param jitterMillis   Maximum random delay added to every interval
+     */
+    public TxMsgCompensationScheduler(AbstractTxMsgHandler txMsgHandler,
+                                      TxMsgShardProvider shardProvider,
+                                      int parallelism,
+                                      long intervalMillis,
+                                      long jitterMillis) {
+        Assert.notNull(txMsgHandler, "TxMsgHandler cannot be null");
+        Assert.notNull(shardProvider, "Shard provider cannot be null");
+        Assert.isTrue(parallelism > 0, "Parallelism must be greater than 0");
+        Assert.isTrue(intervalMillis > 0, "Interval must be greater than 0");
+        Assert.isTrue(jitterMillis >= 0, "Jitter cannot be negative");
+        this.txMsgHandler = txMsgHandler;
+        this.shardProvider = shardProvider;
+        this.intervalMillis = intervalMillis;
+        this.jitterMillis = jitterMillis;
+        this.scanPermits = new Semaphore(parallelism);
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                r -> Thread.ofPlatform().daemon().name("tx-msg-compensation-timer").unstarted(r)
+        );
+        this.scanExecutor = Executors.newThreadPerTaskExecutor(
+                r -> {
+                    Thread thread = Thread.ofVirtual().unstarted(r);
+                    thread.setName("tx-msg-compensation-" + thread.threadId());
+                    return thread;
+                }
+        );
+    }
+
+    /**
+     * Simplified constructor (using default configuration)
+     * - At most 8 concurrent shard scans
+     * - Scan every shard every 10 seconds, with up to 2 seconds of jitter
+     */
+    public TxMsgCompensationScheduler(AbstractTxMsgHandler txMsgHandler, TxMsgShardProvider shardProvider) {
+        this(txMsgHandler, shardProvider, 8, 10000, 2000);
+    }
+
+    /**
+     * Override the scan interval of one shard
+     *
+     * @param shardTailNumber Shard tail number
+     * @param intervalMillis  Interval between two scans of this shard
+     */
+    public void setShardInterval(String shardTailNumber, long intervalMillis) {
+        Assert.isTrue(intervalMillis > 0, "Interval must be greater than 0");
+        shardIntervals.put(shardTailNumber, intervalMillis);
+    }
+
+    /**
+     * Use the pipelined resend with the given number of in-flight pages
+     *
+     * @param resendPipelineDepth Pages buffered between two stages, 1 (default) means sequential resend
+     */
+    public void setResendPipelineDepth(int resendPipelineDepth) {
+        Assert.isTrue(resendPipelineDepth > 0, "Resend pipeline depth must be greater than 0");
+        this.resendPipelineDepth = resendPipelineDepth;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        timer.scheduleWithFixedDelay(this::refreshShards, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Compensation scheduler started, interval: {}ms, jitter: {}ms", intervalMillis, jitterMillis);
+    }
+
+    /**
+     * Start scanning newly owned shards and stop scanning shards no longer owned, a dropped shard is reported
+     * stopped to the provider once its running scan has finished
+     */
+    void refreshShards() {
+        try {
+            List<String> currentShards = shardProvider.currentShards();
+            for (String shardTailNumber : activeShards.keySet()) {
+                if (!currentShards.contains(shardTailNumber)) {
+                    activeShards.remove(shardTailNumber);
+                    stoppingShards.add(shardTailNumber);
+                }
+            }
+            for (String shardTailNumber : currentShards) {
+                stoppingShards.remove(shardTailNumber);
+                Object token = new Object();
+                if (activeShards.putIfAbsent(shardTailNumber, token) == null) {
+                    // Spread the first scans over one interval
+                    schedule(shardTailNumber, token, ThreadLocalRandom.current().nextLong(intervalOf(shardTailNumber) + 1));
+                }
+            }
+            // A scan registers itself before checking that its shard is active, so none can start after this check
+            for (String shardTailNumber : stoppingShards) {
+                if (!runningScans.containsKey(shardTailNumber) && stoppingShards.remove(shardTailNumber)) {
+                    shardProvider.shardStopped(shardTailNumber);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Exception occurred while refreshing compensation shards", e);
+        }
+    }
+
+    private boolean isActive(String shardTailNumber, Object token) {
+        return running && activeShards.get(shardTailNumber) == token;
+    }
+
+    private void schedule(String shardTailNumber, Object token, long delayMillis) {
+        if (!isActive(shardTailNumber, token)) {
+            return;
+        }
+        try {
+            timer.schedule(() -> {
+                try {
+                    scanExecutor.execute(() -> scan(shardTailNumber, token));
+                } catch (RejectedExecutionException e) {
+                    stopChain(shardTailNumber, token);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            stopChain(shardTailNumber, token);
+        }
+    }
+
+    /**
+     * End the schedule chain of a shard whose next scan was rejected by an executor shut down concurrently,
+     * the next refresh starts a new chain if the scheduler is still running
+     */
+    private void stopChain(String shardTailNumber, Object token) {
+        activeShards.remove(shardTailNumber, token);
+        logger.debug("Compensation scan rejected, scheduler stopping, shardTailNumber: {}", shardTailNumber);
+    }
+
+    private void scan(String shardTailNumber, Object token) {
+        long nextDelay = intervalOf(shardTailNumber) + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        try {
+            scanPermits.acquire();
+            runningScans.merge(shardTailNumber, 1, Integer::sum);
+            try {
+                if (isActive(shardTailNumber, token)) {
+                    int pipelineDepth = resendPipelineDepth;
+                    int processed = pipelineDepth > 1
+                            ? txMsgHandler.resendWaitingMessagesPipelined(shardTailNumber, pipelineDepth)
+                            : txMsgHandler.resendWaitingMessages(shardTailNumber);
+                    if (processed >= txMsgHandler.getMaxResendNumPerTask()) {
+                        // More messages are waiting, keep draining this shard
+                        nextDelay = 0;
+                    }
+                }
+            } finally {
+                runningScans.computeIfPresent(shardTailNumber, (key, count) -> count > 1 ? count - 1 : null);
+                scanPermits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            logger.error("Exception occurred while resending waiting messages, shardTailNumber: {}", shardTailNumber, e);
+        }
+        schedule(shardTailNumber, token, nextDelay);
+    }
+
+    private long intervalOf(String shardTailNumber) {
+        return shardIntervals.getOrDefault(shardTailNumber, intervalMillis);
+    }
+
+    /**
+     * Stop scheduling and wait for running scans to finish
+     */
+    public synchronized void shutdown() {
+        running = false;
+        timer.shutdownNow();
+        scanExecutor.shutdown();
+        try {
+            if (!scanExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Compensation scans did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        activeShards.clear();
+        logger.info("Compensation scheduler stopped");
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+}
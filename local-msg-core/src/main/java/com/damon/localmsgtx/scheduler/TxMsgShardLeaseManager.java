@@ -0,0 +1,277 @@
+package com.damon.localmsgtx.scheduler;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Database lease based shard ownership, nodes split the compensation shards dynamically
+ * <p>
+ * Every node heartbeats into the node table and claims shard leases in the lease table until it owns its fair share
+ * (total shards / live nodes, rounded up). Leases are renewed with every heartbeat and expire when a node stops,
+ * nodes owning more than their share release the extra leases, so shards rebalance when nodes join or leave.
+ * An extra shard is first dropped from {@link #currentShards()} while its lease is still renewed, the lease is
+ * released only after the scheduler reported through {@link #shardStopped(String)} that no scan of it runs anymore,
+ * so two nodes never scan the same shard.
+ * Expiry is compared with each node's clock, the lease time must be much larger than the clock skew between nodes.
+ * <p>
+ * Use it as the {@link TxMsgShardProvider} of a {@link TxMsgCompensationScheduler}
+ */
+public class TxMsgShardLeaseManager implements TxMsgShardProvider, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TxMsgShardLeaseManager.class);
+
+    private final String CREATE_LEASE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS %s (
+              shard_tail varchar(16) NOT NULL COMMENT '分片尾号',
+              owner varchar(128) NULL COMMENT '持有租约的节点',
+              lease_until bigint NOT NULL DEFAULT 0 COMMENT '租约到期时间（毫秒时间戳）',
+              PRIMARY KEY (shard_tail)
+            ) COMMENT='事务消息补偿分片租约表'
+            """;
+    private final String CREATE_NODE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS %s (
+              node_id varchar(128) NOT NULL COMMENT '节点ID',
+              heartbeat_time bigint NOT NULL COMMENT '最近心跳时间（毫秒时间戳）',
+              PRIMARY KEY (node_id)
+            ) COMMENT='事务消息补偿节点心跳表'
+            """;
+    private final String SELECT_SHARDS_SQL = "SELECT shard_tail FROM %s";
+    private final String INSERT_SHARD_SQL = "INSERT INTO %s (shard_tail, owner, lease_until) VALUES (?, NULL, 0)";
+    private final String UPDATE_HEARTBEAT_SQL = "UPDATE %s SET heartbeat_time = ? WHERE node_id = ?";
+    private final String INSERT_HEARTBEAT_SQL = "INSERT INTO %s (node_id, heartbeat_time) VALUES (?, ?)";
+    private final String COUNT_LIVE_NODES_SQL = "SELECT COUNT(*) FROM %s WHERE heartbeat_time >= ?";
+    private final String DELETE_DEAD_NODES_SQL = "DELETE FROM %s WHERE heartbeat_time < ?";
+    private final String DELETE_NODE_SQL = "DELETE FROM %s WHERE node_id = ?";
+    private final String RENEW_LEASES_SQL = "UPDATE %s SET lease_until = ? WHERE owner = ? AND lease_until >= ?";
+    private final String SELECT_OWNED_SHARDS_SQL = "SELECT shard_tail FROM %s WHERE owner = ? AND lease_until = ?";
+    private final String SELECT_FREE_SHARDS_SQL = "SELECT shard_tail FROM %s WHERE owner IS NULL OR lease_until < ?";
+    private final String CLAIM_LEASE_SQL = "UPDATE %s SET owner = ?, lease_until = ? WHERE shard_tail = ? AND (owner IS NULL OR lease_until < ?)";
+    private final String RELEASE_LEASE_SQL = "UPDATE %s SET owner = NULL, lease_until = 0 WHERE shard_tail = ? AND owner = ?";
+    private final String RELEASE_ALL_LEASES_SQL = "UPDATE %s SET owner = NULL, lease_until = 0 WHERE owner = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String leaseTableName;
+    private final String nodeTableName;
+    private final List<String> allShards;
+    private final String nodeId;
+    /**
+     * Lease duration, leases are renewed every third of it
+     */
+    private final long leaseMillis;
+    private final ScheduledExecutorService heartbeatExecutor;
+    private volatile Set<String> ownedShards = Collections.emptySet();
+    private volatile long ownedUntil;
+    /**
+     * Shards returned by {@link #currentShards()} and not yet reported stopped, they may be scanned right now
+     */
+    private final Set<String> handedOutShards = new HashSet<>();
+    /**
+     * Shards over the fair share, no longer reported but still leased until they are not handed out anymore
+     */
+    private final Set<String> releasingShards = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Full parameter constructor
+     *
+     * @param dataSource     Data source
+     * @param leaseTableName Lease table name, the node table is named {@code leaseTableName + "_node"}
+     * @param allShards      All shard tail numbers to split between nodes, e.g. {@code new ShardTailNumber(1, 0, 2).generateTailNumbers()}
+     * @param nodeId         Unique id of this node
+     * @param leaseMillis    Lease duration in milliseconds
+     */
+    public TxMsgShardLeaseManager(DataSource dataSource, String leaseTableName, List<String> allShards, String nodeId, long leaseMillis) {
+        Assert.notNull(dataSource, "Data source cannot be null");
+        Assert.hasText(leaseTableName, "Lease table name cannot be empty");
+        Assert.notEmpty(allShards, "Shards cannot be empty");
+        Assert.hasText(nodeId, "Node id cannot be empty");
+        Assert.isTrue(leaseMillis >= 3000, "Lease duration must be at least 3000 milliseconds");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.leaseTableName = leaseTableName;
+        this.nodeTableName = leaseTableName + "_node";
+        this.allShards = List.copyOf(allShards);
+        this.nodeId = nodeId;
+        this.leaseMillis = leaseMillis;
+        this.heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(
+                r -> Thread.ofPlatform().daemon().name("tx-msg-shard-lease").unstarted(r)
+        );
+        initializeTables();
+    }
+
+    /**
+     * Simplified constructor (random node id, 30 seconds lease)
+     */
+    public TxMsgShardLeaseManager(DataSource dataSource, String leaseTableName, List<String> allShards) {
+        this(dataSource, leaseTableName, allShards,
+                ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8), 30000);
+    }
+
+    private void initializeTables() {
+        try {
+            jdbcTemplate.execute(String.format(CREATE_LEASE_TABLE_SQL, leaseTableName));
+            jdbcTemplate.execute(String.format(CREATE_NODE_TABLE_SQL, nodeTableName));
+            Set<String> existingShards = new HashSet<>(jdbcTemplate.queryForList(String.format(SELECT_SHARDS_SQL, leaseTableName), String.class));
+            for (String shardTailNumber : allShards) {
+                if (!existingShards.contains(shardTailNumber)) {
+                    try {
+                        jdbcTemplate.update(String.format(INSERT_SHARD_SQL, leaseTableName), shardTailNumber);
+                    } catch (DuplicateKeyException e) {
+                        // Inserted concurrently by another node
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Exception occurred during shard lease table initialization", e);
+            throw new TxMsgException("Exception occurred during shard lease table initialization", e);
+        }
+    }
+
+    public void start() {
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, 0, leaseMillis / 3, TimeUnit.MILLISECONDS);
+        logger.info("Shard lease manager started, nodeId: {}, lease: {}ms", nodeId, leaseMillis);
+    }
+
+    /**
+     * Shards whose lease is held by this node, empty once the leases may have expired (e.g. database unreachable)
+     */
+    @Override
+    public synchronized List<String> currentShards() {
+        if (System.currentTimeMillis() >= ownedUntil) {
+            return Collections.emptyList();
+        }
+        handedOutShards.addAll(ownedShards);
+        return new ArrayList<>(ownedShards);
+    }
+
+    @Override
+    public synchronized void shardStopped(String shardTailNumber) {
+        handedOutShards.remove(shardTailNumber);
+    }
+
+    /**
+     * Take the releasing shards nobody scans anymore, they are no longer reported so they cannot be handed out again
+     */
+    private synchronized List<String> takeStoppedReleasingShards() {
+        List<String> stopped = new ArrayList<>();
+        for (String shardTailNumber : releasingShards) {
+            if (!handedOutShards.contains(shardTailNumber)) {
+                stopped.add(shardTailNumber);
+            }
+        }
+        releasingShards.removeAll(stopped);
+        return stopped;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            long leaseUntil = now + leaseMillis;
+            if (jdbcTemplate.update(String.format(UPDATE_HEARTBEAT_SQL, nodeTableName), now, nodeId) == 0) {
+                jdbcTemplate.update(String.format(INSERT_HEARTBEAT_SQL, nodeTableName), nodeId, now);
+            }
+            jdbcTemplate.update(String.format(DELETE_DEAD_NODES_SQL, nodeTableName), now - 10 * leaseMillis);
+            Integer liveNodeCount = jdbcTemplate.queryForObject(String.format(COUNT_LIVE_NODES_SQL, nodeTableName), Integer.class, now - leaseMillis);
+            int liveNodes = liveNodeCount == null ? 1 : Math.max(1, liveNodeCount);
+            int fairShare = (allShards.size() + liveNodes - 1) / liveNodes;
+
+            // Renew the leases still held (releasing ones included), then read them back
+            jdbcTemplate.update(String.format(RENEW_LEASES_SQL, leaseTableName), leaseUntil, nodeId, now);
+            List<String> owned = new ArrayList<>(jdbcTemplate.queryForList(String.format(SELECT_OWNED_SHARDS_SQL, leaseTableName), String.class, nodeId, leaseUntil));
+            releasingShards.retainAll(owned);
+
+            // Hand back the shards whose scans have stopped since they were dropped
+            List<String> released = takeStoppedReleasingShards();
+            for (String shardTailNumber : released) {
+                jdbcTemplate.update(String.format(RELEASE_LEASE_SQL, leaseTableName), shardTailNumber, nodeId);
+            }
+            owned.removeAll(released);
+            if (!released.isEmpty()) {
+                logger.info("Released {} shard leases, nodeId: {}, live nodes: {}", released.size(), nodeId, liveNodes);
+            }
+
+            List<String> releasing = new ArrayList<>(releasingShards);
+            owned.removeAll(releasing);
+            if (owned.size() > fairShare) {
+                // Stop reporting the extra shards, their leases are released once their scans have stopped
+                Collections.shuffle(owned);
+                List<String> dropped = new ArrayList<>(owned.subList(fairShare, owned.size()));
+                releasingShards.addAll(dropped);
+                owned.removeAll(dropped);
+                logger.info("Releasing {} shard leases, nodeId: {}, live nodes: {}", dropped.size(), nodeId, liveNodes);
+            } else if (owned.size() < fairShare) {
+                // Keep the shards still leased first, then claim free ones
+                for (String shardTailNumber : releasing) {
+                    if (owned.size() >= fairShare) {
+                        break;
+                    }
+                    if (releasingShards.remove(shardTailNumber)) {
+                        owned.add(shardTailNumber);
+                    }
+                }
+                List<String> freeShards = owned.size() < fairShare
+                        ? new ArrayList<>(jdbcTemplate.queryForList(String.format(SELECT_FREE_SHARDS_SQL, leaseTableName), String.class, now))
+                        : new ArrayList<>();
+                Collections.shuffle(freeShards);
+                int claimed = 0;
+                for (String shardTailNumber : freeShards) {
+                    if (owned.size() >= fairShare) {
+                        break;
+                    }
+                    if (jdbcTemplate.update(String.format(CLAIM_LEASE_SQL, leaseTableName), nodeId, leaseUntil, shardTailNumber, now) == 1) {
+                        owned.add(shardTailNumber);
+                        claimed++;
+                    }
+                }
+                if (claimed > 0) {
+                    logger.info("Claimed {} shard leases, nodeId: {}, live nodes: {}", claimed, nodeId, liveNodes);
+                }
+            }
+            ownedShards = Set.copyOf(owned);
+            // Stop reporting the shards before the leases can be claimed by another node
+            ownedUntil = leaseUntil - leaseMillis / 3;
+        } catch (Exception e) {
+            logger.error("Exception occurred during shard lease heartbeat, nodeId: {}", nodeId, e);
+        }
+    }
+
+    /**
+     * Stop heartbeating and release all leases held by this node, shut the scheduler scanning its shards down first
+     */
+    public void shutdown() {
+        heartbeatExecutor.shutdownNow();
+        ownedShards = Collections.emptySet();
+        ownedUntil = 0;
+        releasingShards.clear();
+        try {
+            jdbcTemplate.update(String.format(RELEASE_ALL_LEASES_SQL, leaseTableName), nodeId);
+            jdbcTemplate.update(String.format(DELETE_NODE_SQL, nodeTableName), nodeId);
+        } catch (Exception e) {
+            logger.warn("Failed to release shard leases, they will expire, nodeId: {}", nodeId, e);
+        }
+        logger.info("Shard lease manager stopped, nodeId: {}", nodeId);
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+}
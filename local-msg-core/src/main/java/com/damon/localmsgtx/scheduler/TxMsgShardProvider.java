@@ -0,0 +1,25 @@
+package com.damon.localmsgtx.scheduler;
+
+import java.util.List;
+
+/**
+ * Supplies the shard tail numbers this node is responsible for
+ * A static assignment is simply {@code shardTailNumber::generateTailNumbers}
+ */
+@FunctionalInterface
+public interface TxMsgShardProvider {
+
+    /**
+     * @return Shard tail numbers currently owned by this node
+     */
+    List<String> currentShards();
+
+    /**
+     * Called by the scheduler once a shard dropped from {@link #currentShards()} has no scan running anymore,
+     * only then may its ownership move to another node
+     *
+     * @param shardTailNumber Shard tail number no longer scanned by this node
+     */
+    default void shardStopped(String shardTailNumber) {
+    }
+}
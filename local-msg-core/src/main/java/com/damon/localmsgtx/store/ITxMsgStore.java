@@ -0,0 +1,115 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.model.TxMsgBacklog;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+
+import java.util.List;
+
+/**
+ * Transactional message store used by the handlers
+ * Implementations: {@link TxMsgSqlStore} (MySQL) and {@link PostgresTxMsgStore} (PostgreSQL)
+ */
+public interface ITxMsgStore {
+
+    /**
+     * Insert transactional message (status is waiting to send)
+     *
+     * @param content Message content
+     * @param msgKey  Message unique identifier
+     * @param msgTag  Message tag (nullable)
+     * @return Inserted message model
+     */
+    TxMsgModel insertTxMsg(String content, String msgKey, String msgTag);
+
+    /**
+     * Insert transactional message (status is waiting to send)
+     *
+     * @param txMsgParam Message to insert
+     * @return Inserted message model
+     */
+    TxMsgModel insertTxMsg(TxMsgParam txMsgParam);
+
+    /**
+     * Batch insert transactional messages (status is waiting to send)
+     *
+     * @param txMsgParams Messages to insert
+     * @return Inserted message models, in the same order as the given messages
+     */
+    List<TxMsgModel> batchInsertTxMsg(List<TxMsgParam> txMsgParams);
+
+    /**
+     * Acknowledge a single sent message
+     *
+     * @param txMsgModel Message model
+     * @return Number of affected rows
+     */
+    int updateSendMsg(TxMsgModel txMsgModel);
+
+    /**
+     * Get a page of messages waiting to send, ordered by id
+     *
+     * @param pageSize        Page size
+     * @param maxId           Only messages with a greater id are returned (keyset pagination)
+     * @param shardTailNumber Shard tail number, empty for all shards
+     * @return Messages waiting to send
+     */
+    List<TxMsgModel> getWaitingMessages(int pageSize, Long maxId, String shardTailNumber);
+
+    /**
+     * Delete sent messages created before the expiration time, in batches
+     *
+     * @param expireTime Expiration time (millisecond timestamp)
+     * @param batchSize  Batch size for each deletion
+     * @param statusEnum Status of the messages to delete
+     */
+    void deleteExpiredSendedMsg(Long expireTime, int batchSize, TxMsgStatusEnum statusEnum);
+
+    /**
+     * Acknowledge messages sent to the broker, according to the configured ack mode
+     *
+     * @param successMsgIds IDs of messages acknowledged by the broker
+     * @return Number of messages acknowledged
+     */
+    int ackSentMsg(List<Long> successMsgIds);
+
+    /**
+     * Record a failed send attempt (retry backoff and dead letter)
+     *
+     * @param failedMsgIds IDs of messages not acknowledged by the broker
+     * @return Number of messages updated
+     */
+    int markSendFailed(List<Long> failedMsgIds);
+
+    /**
+     * Record that the given destinations acknowledged fanout messages, the messages stay waiting
+     *
+     * @param msgIds   IDs of messages acknowledged by the destinations
+     * @param destMask Bitmask of the acknowledging destinations
+     * @return Number of messages updated
+     */
+    int ackDestinations(List<Long> msgIds, int destMask);
+
+    /**
+     * Move dead-lettered messages back to waiting status
+     *
+     * @param failedMsgIds IDs of messages in {@link TxMsgStatusEnum#FAILED} status
+     * @return Number of messages reset
+     */
+    int resetFailedMsg(List<Long> failedMsgIds);
+
+    /**
+     * Read the backlog of messages waiting to send, per topic
+     *
+     * @param maxCountedRows Maximum number of waiting messages counted per topic
+     * @return Backlog of every topic having messages waiting to send
+     */
+    List<TxMsgBacklog> getBacklog(int maxCountedRows);
+
+    /**
+     * Default topic of the messages stored by this store (messages may carry their own topic), also the topic label
+     * of the table-level metrics
+     */
+    String getTopic();
+}
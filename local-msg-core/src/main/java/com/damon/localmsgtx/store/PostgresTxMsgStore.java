@@ -0,0 +1,209 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.exception.TxMsgStoreException;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.utils.StrUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Transactional message database storage manager (PostgreSQL, V2 table layout)
+ * <p>
+ * Waiting messages are claimed instead of just read: one statement locks a page of due rows with
+ * {@code FOR UPDATE SKIP LOCKED} and stamps them with this store's lease ({@code lease_owner}, {@code lease_until}).
+ * Rows locked or leased by another scanner are skipped, so any number of nodes can run the compensation task on the
+ * same shards (or on all shards with the empty tail number) without sending a message twice. A lease that expires
+ * before the message is acknowledged (node crash, send slower than the lease) makes the message claimable again.
+ * <p>
+ * The table name must not be schema qualified, it is part of the index names
+ */
+public class PostgresTxMsgStore extends TxMsgSqlStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresTxMsgStore.class);
+
+    private static final String CLAIM_WAITING_MSG_SQL = """
+            UPDATE %1$s SET lease_owner = ?, lease_until = ?
+            WHERE id IN (
+              SELECT id FROM %1$s
+              WHERE status = ? AND shard BETWEEN ? AND ? AND next_retry_time <= ? AND lease_until <= ? AND id > ?
+              ORDER BY id LIMIT ?
+              FOR UPDATE SKIP LOCKED
+            )
+            RETURNING id, msg_key, content, content_codec, content_bytes, topic, msg_tag, status, random_factor, create_time, update_time%2$s
+            """;
+    /**
+     * PostgreSQL computes every SET expression from the old row, the lease is released so the retry backoff applies
+     */
+    private static final String MARK_SEND_FAILED_SQL = "UPDATE %s SET status = CASE WHEN retry_count + 1 >= ? THEN ? ELSE status END, " +
+            "next_retry_time = ? + LEAST(? * POWER(2, LEAST(retry_count, 30)), ?), retry_count = retry_count + 1, update_time = ?, " +
+            "lease_owner = NULL, lease_until = 0 " +
+            "WHERE status = ? AND id IN (%s)";
+    private static final String DELETE_EXPIRED_SENDED_MSG_SQL = "DELETE FROM %1$s WHERE id IN (SELECT id FROM %1$s WHERE status = ? AND create_time <= ? LIMIT ?)";
+    private static final String CHECK_ID_SEQUENCE_SQL = "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = current_schema() " +
+            "AND table_name = ? AND column_name = 'id' AND (column_default LIKE 'nextval(%' OR is_identity = 'YES')";
+    private static final String CREATE_TABLE_SQL = """
+            CREATE TABLE %1$s (
+              id bigserial NOT NULL,
+              content text NOT NULL,
+              content_codec smallint NOT NULL DEFAULT 0,
+              content_bytes bytea NULL,
+              topic varchar(255) NOT NULL,
+              msg_key varchar(128) NOT NULL,
+              msg_tag varchar(128) NOT NULL,
+              status smallint NOT NULL,
+              random_factor varchar(10) NOT NULL,
+              shard int NOT NULL DEFAULT -1,
+              retry_count int NOT NULL DEFAULT 0,
+              next_retry_time bigint NOT NULL DEFAULT 0,
+              lease_owner varchar(128) NULL,
+              lease_until bigint NOT NULL DEFAULT 0,
+              dest_mask int NOT NULL DEFAULT 0,
+              acked_mask int NOT NULL DEFAULT 0,
+              create_time bigint NOT NULL,
+              update_time bigint NOT NULL,
+              PRIMARY KEY (id),
+              CONSTRAINT uk_%1$s_msgkey UNIQUE (msg_key)
+            );
+            CREATE INDEX idx_%1$s_status_shard_retry ON %1$s (status, shard, next_retry_time);
+            CREATE INDEX idx_%1$s_status_createtime ON %1$s (status, create_time);
+            CREATE INDEX idx_%1$s_status_topic_createtime ON %1$s (status, topic, create_time);
+            COMMENT ON TABLE %1$s IS '事务消息存储表（确保消息发送与本地事务一致性）';
+            COMMENT ON COLUMN %1$s.content IS '消息内容（JSON格式或字符串，压缩存储时为空）';
+            COMMENT ON COLUMN %1$s.content_codec IS '消息内容压缩算法：0-不压缩，1-LZ4，2-DEFLATE';
+            COMMENT ON COLUMN %1$s.status IS '消息状态：0-等待发送，1-已发送，2-发送失败（死信）';
+            COMMENT ON COLUMN %1$s.shard IS '分片号（随机因子的数值，插入时计算）';
+            COMMENT ON COLUMN %1$s.next_retry_time IS '下次重试时间（毫秒时间戳，指数退避）';
+            COMMENT ON COLUMN %1$s.lease_owner IS '认领消息的节点';
+            COMMENT ON COLUMN %1$s.lease_until IS '认领到期时间（毫秒时间戳），到期前其他节点不会发送该消息';
+            COMMENT ON COLUMN %1$s.dest_mask IS '投递目标位图（扇出消息，0-全部目标）';
+            COMMENT ON COLUMN %1$s.acked_mask IS '已确认的投递目标位图';
+            """;
+    private static final String CREATE_ARCHIVE_TABLE_SQL = """
+            CREATE TABLE %1$s (
+              id bigint NOT NULL,
+              content text NOT NULL,
+              content_codec smallint NOT NULL DEFAULT 0,
+              content_bytes bytea NULL,
+              topic varchar(255) NOT NULL,
+              msg_key varchar(128) NOT NULL,
+              msg_tag varchar(128) NOT NULL,
+              status smallint NOT NULL,
+              random_factor varchar(10) NOT NULL,
+              shard int NOT NULL DEFAULT -1,
+              create_time bigint NOT NULL,
+              update_time bigint NOT NULL,
+              PRIMARY KEY (id)
+            );
+            CREATE INDEX idx_%1$s_msgkey ON %1$s (msg_key);
+            CREATE INDEX idx_%1$s_status_createtime ON %1$s (status, create_time);
+            CREATE INDEX idx_%1$s_status_topic_createtime ON %1$s (status, topic, create_time);
+            COMMENT ON TABLE %1$s IS '事务消息归档表（已发送的消息）';
+            """;
+
+    private final String claimWaitingMsgSql;
+
+    /**
+     * Constructor (supports full store configuration, the table version must be V2)
+     *
+     * @param dataSource  Data source
+     * @param storeConfig Store configuration
+     */
+    public PostgresTxMsgStore(DataSource dataSource, TxMsgStoreConfig storeConfig) {
+        super(dataSource, checkStoreConfig(storeConfig));
+        this.claimWaitingMsgSql = String.format(CLAIM_WAITING_MSG_SQL, tableName, fanout ? FANOUT_COLUMNS : StrUtil.EMPTY);
+    }
+
+    /**
+     * Simplified constructor (V2 table layout, default configuration)
+     */
+    public PostgresTxMsgStore(DataSource dataSource, String tableName, String topic, int randomFactorLength) {
+        this(dataSource, v2StoreConfig(tableName, topic, randomFactorLength));
+    }
+
+    private static TxMsgStoreConfig checkStoreConfig(TxMsgStoreConfig storeConfig) {
+        Assert.notNull(storeConfig, "Store config cannot be null");
+        Assert.isTrue(storeConfig.getTableVersion() == TxMsgTableVersion.V2, "The PostgreSQL store requires the V2 table layout");
+        Assert.isNull(storeConfig.getPartitionInterval(), "The PostgreSQL store does not support partitioned tables");
+        return storeConfig;
+    }
+
+    private static TxMsgStoreConfig v2StoreConfig(String tableName, String topic, int randomFactorLength) {
+        TxMsgStoreConfig storeConfig = new TxMsgStoreConfig(tableName, topic, randomFactorLength);
+        storeConfig.setTableVersion(TxMsgTableVersion.V2);
+        return storeConfig;
+    }
+
+    @Override
+    protected String createTableSql() {
+        return CREATE_TABLE_SQL;
+    }
+
+    @Override
+    protected String withoutIdSequence(String createTableSql) {
+        return createTableSql.replace("bigserial", "bigint");
+    }
+
+    /**
+     * Counts a bigserial (or identity) id column, dropped with {@code ALTER TABLE ... ALTER COLUMN id DROP DEFAULT}
+     */
+    @Override
+    protected String checkIdSequenceSql() {
+        return CHECK_ID_SEQUENCE_SQL;
+    }
+
+    /**
+     * PostgreSQL has no implicit cast from bytea to text, the content is bound as a String
+     */
+    @Override
+    protected boolean bindContentBytes() {
+        return false;
+    }
+
+    @Override
+    protected String createArchiveTableSql() {
+        return CREATE_ARCHIVE_TABLE_SQL;
+    }
+
+    /**
+     * Claim a page of due messages waiting to send for this store's lease
+     * The returned messages are hidden from other scanners until they are acknowledged, their send fails or the lease expires
+     */
+    @Override
+    public List<TxMsgModel> getWaitingMessages(int pageSize, Long maxId, String shardTailNumber) {
+        Assert.isTrue(pageSize > 0, "Page size must be greater than 0");
+        try {
+            int[] shardRange = shardRange(shardTailNumber);
+            long currentTime = System.currentTimeMillis();
+            List<TxMsgModel> claimedMessages = jdbcTemplate.query(
+                    claimWaitingMsgSql,
+                    new TxMsgRowMapper(true, fanout),
+                    leaseOwner, currentTime + leaseMillis,
+                    TxMsgStatusEnum.WAITING.getStatus(), shardRange[0], shardRange[1], currentTime, currentTime, maxId, pageSize
+            );
+            // RETURNING does not keep the order of the sub-select, the caller pages by the last id
+            claimedMessages.sort(Comparator.comparing(TxMsgModel::getId));
+            logger.debug("Claimed messages waiting to send, count: {}, leaseOwner: {}", claimedMessages.size(), leaseOwner);
+            return claimedMessages;
+        } catch (Exception e) {
+            logger.error("Exception occurred while claiming messages waiting to send, pageSize: {}", pageSize, e);
+            throw new TxMsgStoreException("Exception occurred while claiming messages waiting to send", e);
+        }
+    }
+
+    @Override
+    protected String deleteExpiredSendedMsgSql() {
+        return DELETE_EXPIRED_SENDED_MSG_SQL;
+    }
+
+    @Override
+    protected String markSendFailedSql() {
+        return MARK_SEND_FAILED_SQL;
+    }
+}
@@ -0,0 +1,24 @@
+package com.damon.localmsgtx.store;
+
+/**
+ * What the store does with a message once the broker has acknowledged it
+ */
+public enum TxMsgAckMode {
+
+    /**
+     * Keep the row in the message table with status SENT until the cleanup task deletes it
+     */
+    MARK_SENT,
+    /**
+     * Move the row to the archive table (batched INSERT ... SELECT plus DELETE by id list), so the message table
+     * only holds the in-flight backlog and its indexes stay small. The cleanup task deletes from the archive table.
+     * Message key uniqueness is only enforced for rows still in the message table
+     */
+    ARCHIVE,
+    /**
+     * Delete the row by primary key as soon as it is acknowledged, without a status update or an audit trail.
+     * The cleanup task has nothing to do in this mode.
+     * Message key uniqueness is only enforced for rows still in the message table
+     */
+    DELETE
+}
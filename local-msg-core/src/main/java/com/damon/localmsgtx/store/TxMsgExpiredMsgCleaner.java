@@ -0,0 +1,383 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.exception.TxMsgStoreException;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background cleaner deleting expired sent messages by primary key range, for tables that are not partitioned
+ * <p>
+ * Each pass walks the id space from the persisted progress marker: it seeks the next row, deletes the expired sent
+ * messages of the id range starting there ({@code WHERE id BETWEEN ? AND ?}, the range spans a number of rows so that
+ * sparse ids, e.g. from {@link TxMsgIdGenerator}, are handled like dense ones), and stops at the first row created after
+ * the expiration time. The marker always moves past a visited range; a range still holding rows that may be cleaned
+ * later (waiting messages, sent messages not expired yet) is recorded as held instead, and every pass cleans the held
+ * ranges first until they are empty. Dead letters never hold a range, a dead letter reset to waiting after its range was
+ * passed is left to {@link ITxMsgStore#deleteExpiredSendedMsg}.
+ * <p>
+ * The range size adapts to the observed DELETE latency (halved above the target latency, grown by half below half
+ * of it), deleted rows are capped per second, and an optional {@link TxMsgReplicationLagProbe} pauses the cleaner while
+ * a replica is behind. Cleanup therefore runs continuously at a steady rate instead of in {@code DELETE ... LIMIT} bursts.
+ * Run it on one node per table (several cleaners are safe but do the same work), with {@link TxMsgAckMode#ARCHIVE}
+ * point it at the archive table
+ */
+public class TxMsgExpiredMsgCleaner implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TxMsgExpiredMsgCleaner.class);
+
+    private final String SELECT_NEXT_MSG_SQL = "SELECT id, create_time FROM %s WHERE id >= ? ORDER BY id ASC LIMIT 1";
+    private final String DELETE_EXPIRED_RANGE_SQL = "DELETE FROM %s WHERE id BETWEEN ? AND ? AND status = ? AND create_time <= ?";
+    private final String SELECT_RANGE_END_SQL = "SELECT id FROM %s WHERE id >= ? ORDER BY id ASC LIMIT 1 OFFSET ?";
+    private final String SELECT_MAX_ID_SQL = "SELECT MAX(id) FROM %s";
+    private final String SELECT_REMAINING_MSG_SQL = "SELECT id FROM %s WHERE id BETWEEN ? AND ? AND status IN (?, ?) LIMIT 1";
+    private final String CHECK_TABLE_EXISTS_SQL = "SELECT * FROM %s LIMIT 1";
+    /**
+     * Plain DDL shared by MySQL and PostgreSQL
+     */
+    private final String CREATE_PROGRESS_TABLE_SQL = "CREATE TABLE %s (table_name varchar(128) NOT NULL, next_id bigint NOT NULL, " +
+            "update_time bigint NOT NULL, PRIMARY KEY (table_name))";
+    private final String SELECT_PROGRESS_SQL = "SELECT next_id FROM %s WHERE table_name = ?";
+    private final String INSERT_PROGRESS_SQL = "INSERT INTO %s (table_name, next_id, update_time) VALUES (?, 0, ?)";
+    private final String UPDATE_PROGRESS_SQL = "UPDATE %s SET next_id = ?, update_time = ? WHERE table_name = ?";
+    private final String CREATE_HELD_RANGE_TABLE_SQL = "CREATE TABLE %s (table_name varchar(128) NOT NULL, start_id bigint NOT NULL, " +
+            "end_id bigint NOT NULL, update_time bigint NOT NULL, PRIMARY KEY (table_name, start_id))";
+    private final String SELECT_HELD_RANGES_SQL = "SELECT start_id, end_id FROM %s WHERE table_name = ? ORDER BY start_id ASC";
+    private final String INSERT_HELD_RANGE_SQL = "INSERT INTO %s (table_name, start_id, end_id, update_time) VALUES (?, ?, ?, ?)";
+    private final String DELETE_HELD_RANGE_SQL = "DELETE FROM %s WHERE table_name = ? AND start_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String tableName;
+    private final long retentionMillis;
+    private final long passIntervalMillis;
+    private final ScheduledExecutorService cleanExecutor;
+    private final String selectNextMsgSql;
+    private final String selectRangeEndSql;
+    private final String selectMaxIdSql;
+    private final String deleteExpiredRangeSql;
+    private final String selectRemainingMsgSql;
+
+    private volatile String progressTableName;
+    private volatile int minRangeSize = 100;
+    private volatile int maxRangeSize = 50000;
+    private volatile long targetLatencyMillis = 100;
+    private volatile int maxRowsPerSecond = 5000;
+    private volatile TxMsgReplicationLagProbe replicationLagProbe;
+    private volatile long maxReplicationLagMillis = 5000;
+    private volatile long lagPauseMillis = 1000;
+    /**
+     * Current number of rows per range, adapted after every DELETE
+     */
+    private volatile int rangeSize = 1000;
+    private volatile boolean progressTableReady;
+
+    /**
+     * Full parameter constructor
+     *
+     * @param dataSource         Data source
+     * @param tableName          Table to clean (the message table, or the archive table with {@link TxMsgAckMode#ARCHIVE})
+     * @param retentionMillis    Sent messages created longer ago than this are deleted
+     * @param passIntervalMillis Delay between two passes in milliseconds
+     */
+    public TxMsgExpiredMsgCleaner(DataSource dataSource, String tableName, long retentionMillis, long passIntervalMillis) {
+        Assert.notNull(dataSource, "Data source cannot be null");
+        Assert.hasText(tableName, "Table name cannot be empty");
+        Assert.isTrue(retentionMillis > 0, "Retention must be greater than 0");
+        Assert.isTrue(passIntervalMillis >= 1000, "Pass interval must be at least 1000 milliseconds");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.tableName = tableName;
+        this.retentionMillis = retentionMillis;
+        this.passIntervalMillis = passIntervalMillis;
+        this.progressTableName = tableName + "_clean_progress";
+        this.selectNextMsgSql = String.format(SELECT_NEXT_MSG_SQL, tableName);
+        this.selectRangeEndSql = String.format(SELECT_RANGE_END_SQL, tableName);
+        this.selectMaxIdSql = String.format(SELECT_MAX_ID_SQL, tableName);
+        this.deleteExpiredRangeSql = String.format(DELETE_EXPIRED_RANGE_SQL, tableName);
+        this.selectRemainingMsgSql = String.format(SELECT_REMAINING_MSG_SQL, tableName);
+        this.cleanExecutor = Executors.newSingleThreadScheduledExecutor(
+                r -> Thread.ofPlatform().daemon().name("tx-msg-expired-cleaner").unstarted(r)
+        );
+    }
+
+    /**
+     * Simplified constructor (a pass every 60 seconds)
+     */
+    public TxMsgExpiredMsgCleaner(DataSource dataSource, String tableName, long retentionMillis) {
+        this(dataSource, tableName, retentionMillis, 60000);
+    }
+
+    public void start() {
+        cleanExecutor.scheduleWithFixedDelay(this::scheduledPass, 0, passIntervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Expired message cleaner started, table: {}, retention: {}ms", tableName, retentionMillis);
+    }
+
+    private void scheduledPass() {
+        try {
+            runPass();
+        } catch (Exception e) {
+            logger.error("Exception occurred while cleaning expired messages, table: {}", tableName, e);
+        }
+    }
+
+    /**
+     * Run one pass up to the current expiration time, returns early when the thread is interrupted
+     *
+     * @return Number of messages deleted
+     */
+    public int runPass() {
+        ensureProgressTables();
+        long expireTime = System.currentTimeMillis() - retentionMillis;
+        int totalDeleted = 0;
+        try {
+            totalDeleted += cleanHeldRanges(expireTime);
+            long nextId = loadProgress();
+            while (!Thread.currentThread().isInterrupted()) {
+                waitForReplica();
+                List<Map<String, Object>> nextMsg = jdbcTemplate.queryForList(selectNextMsgSql, nextId);
+                if (nextMsg.isEmpty() || ((Number) nextMsg.get(0).get("create_time")).longValue() > expireTime) {
+                    break;
+                }
+                long startId = ((Number) nextMsg.get(0).get("id")).longValue();
+                long endId = rangeEndId(startId);
+
+                long startNanos = System.nanoTime();
+                int deleted = jdbcTemplate.update(deleteExpiredRangeSql, startId, endId, TxMsgStatusEnum.SENT.getStatus(), expireTime);
+                long elapsedNanos = System.nanoTime() - startNanos;
+                totalDeleted += deleted;
+
+                if (hasRemainingMsg(startId, endId)) {
+                    holdRange(startId, endId);
+                }
+                nextId = endId + 1;
+                saveProgress(nextId);
+                adaptRangeSize(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+                throttle(deleted, elapsedNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (totalDeleted > 0) {
+            logger.info("Expired message cleaner pass completed, table: {}, deleted: {}, range size: {}", tableName, totalDeleted, rangeSize);
+        }
+        return totalDeleted;
+    }
+
+    /**
+     * Clean the ranges held by earlier passes, a range is released once no row that may be cleaned is left in it
+     *
+     * @return Number of messages deleted
+     */
+    private int cleanHeldRanges(long expireTime) throws InterruptedException {
+        List<Map<String, Object>> heldRanges = jdbcTemplate.queryForList(String.format(SELECT_HELD_RANGES_SQL, heldRangeTableName()), tableName);
+        int totalDeleted = 0;
+        for (Map<String, Object> heldRange : heldRanges) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            waitForReplica();
+            long startId = ((Number) heldRange.get("start_id")).longValue();
+            long endId = ((Number) heldRange.get("end_id")).longValue();
+            long startNanos = System.nanoTime();
+            int deleted = jdbcTemplate.update(deleteExpiredRangeSql, startId, endId, TxMsgStatusEnum.SENT.getStatus(), expireTime);
+            long elapsedNanos = System.nanoTime() - startNanos;
+            totalDeleted += deleted;
+            if (!hasRemainingMsg(startId, endId)) {
+                jdbcTemplate.update(String.format(DELETE_HELD_RANGE_SQL, heldRangeTableName()), tableName, startId);
+            }
+            throttle(deleted, elapsedNanos);
+        }
+        return totalDeleted;
+    }
+
+    /**
+     * Whether the range still holds rows a later pass may delete (waiting messages, sent messages not expired yet)
+     */
+    private boolean hasRemainingMsg(long startId, long endId) {
+        return !jdbcTemplate.queryForList(selectRemainingMsgSql, Long.class, startId, endId,
+                TxMsgStatusEnum.WAITING.getStatus(), TxMsgStatusEnum.SENT.getStatus()).isEmpty();
+    }
+
+    private void holdRange(long startId, long endId) {
+        try {
+            jdbcTemplate.update(String.format(INSERT_HELD_RANGE_SQL, heldRangeTableName()), tableName, startId, endId, System.currentTimeMillis());
+        } catch (DuplicateKeyException e) {
+            logger.debug("Range starting at id {} of table {} is already held", startId, tableName);
+        }
+    }
+
+    /**
+     * Id of the last row of the range starting at the given id, the last id of the table when fewer rows are left
+     */
+    private long rangeEndId(long startId) {
+        List<Long> endIds = jdbcTemplate.queryForList(selectRangeEndSql, Long.class, startId, rangeSize - 1);
+        if (!endIds.isEmpty()) {
+            return endIds.get(0);
+        }
+        Long maxId = jdbcTemplate.queryForObject(selectMaxIdSql, Long.class);
+        return maxId == null ? startId : Math.max(startId, maxId);
+    }
+
+    void adaptRangeSize(long elapsedMillis) {
+        if (elapsedMillis > targetLatencyMillis) {
+            rangeSize = Math.max(minRangeSize, rangeSize / 2);
+        } else if (elapsedMillis < targetLatencyMillis / 2) {
+            rangeSize = Math.min(maxRangeSize, rangeSize + rangeSize / 2);
+        }
+    }
+
+    /**
+     * Sleep so that the deleted rows stay under the rate cap
+     */
+    private void throttle(int deleted, long elapsedNanos) throws InterruptedException {
+        long pauseNanos = throttleNanos(deleted, elapsedNanos);
+        if (pauseNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(pauseNanos);
+        }
+    }
+
+    /**
+     * Pause after a DELETE of the given rows that took the given time, 0 when it stayed under the rate cap
+     */
+    long throttleNanos(int deleted, long elapsedNanos) {
+        long minNanos = TimeUnit.SECONDS.toNanos(deleted) / maxRowsPerSecond;
+        return Math.max(0, minNanos - elapsedNanos);
+    }
+
+    private void waitForReplica() throws InterruptedException {
+        TxMsgReplicationLagProbe probe = replicationLagProbe;
+        if (probe == null) {
+            return;
+        }
+        long lagMillis;
+        while ((lagMillis = probe.lagMillis()) > maxReplicationLagMillis) {
+            rangeSize = Math.max(minRangeSize, rangeSize / 2);
+            logger.warn("Replication lag {}ms exceeds {}ms, expired message cleaner paused, table: {}", lagMillis, maxReplicationLagMillis, tableName);
+            TimeUnit.MILLISECONDS.sleep(lagPauseMillis);
+        }
+    }
+
+    private void ensureProgressTables() {
+        if (progressTableReady) {
+            return;
+        }
+        ensureTable(progressTableName, CREATE_PROGRESS_TABLE_SQL);
+        ensureTable(heldRangeTableName(), CREATE_HELD_RANGE_TABLE_SQL);
+        progressTableReady = true;
+    }
+
+    private void ensureTable(String table, String createTableSql) {
+        try {
+            jdbcTemplate.queryForList(String.format(CHECK_TABLE_EXISTS_SQL, table));
+        } catch (Exception e) {
+            try {
+                jdbcTemplate.execute(String.format(createTableSql, table));
+                logger.info("Successfully created table {}", table);
+            } catch (Exception createException) {
+                // Another node may have created it in the meantime
+                jdbcTemplate.queryForList(String.format(CHECK_TABLE_EXISTS_SQL, table));
+            }
+        }
+    }
+
+    private String heldRangeTableName() {
+        return progressTableName + "_held";
+    }
+
+    private long loadProgress() {
+        List<Long> nextIds = jdbcTemplate.queryForList(String.format(SELECT_PROGRESS_SQL, progressTableName), Long.class, tableName);
+        if (!nextIds.isEmpty()) {
+            return nextIds.get(0);
+        }
+        try {
+            jdbcTemplate.update(String.format(INSERT_PROGRESS_SQL, progressTableName), tableName, System.currentTimeMillis());
+        } catch (DuplicateKeyException e) {
+            logger.debug("Progress of table {} was initialized by another node", tableName);
+        }
+        return 0;
+    }
+
+    private void saveProgress(long nextId) {
+        int rows = jdbcTemplate.update(String.format(UPDATE_PROGRESS_SQL, progressTableName), nextId, System.currentTimeMillis(), tableName);
+        if (rows != 1) {
+            throw new TxMsgStoreException("Progress row of table " + tableName + " is missing in " + progressTableName);
+        }
+    }
+
+    /**
+     * @param progressTableName Table persisting the progress marker, created when missing (default: table name + "_clean_progress"),
+     *                          the held ranges are kept in the table of the same name + "_held"
+     */
+    public void setProgressTableName(String progressTableName) {
+        Assert.hasText(progressTableName, "Progress table name cannot be empty");
+        this.progressTableName = progressTableName;
+        this.progressTableReady = false;
+    }
+
+    /**
+     * @param minRangeSize     Fewest rows in the id range of one statement (default 100)
+     * @param initialRangeSize Rows in the id range of the first statement (default 1000)
+     * @param maxRangeSize     Most rows in the id range of one statement (default 50000)
+     */
+    public void setRangeSize(int minRangeSize, int initialRangeSize, int maxRangeSize) {
+        Assert.isTrue(minRangeSize > 0, "Minimum range size must be greater than 0");
+        Assert.isTrue(minRangeSize <= initialRangeSize && initialRangeSize <= maxRangeSize,
+                "Initial range size must be between the minimum and the maximum range size");
+        this.minRangeSize = minRangeSize;
+        this.maxRangeSize = maxRangeSize;
+        this.rangeSize = initialRangeSize;
+    }
+
+    /**
+     * @param targetLatencyMillis DELETE latency the range size is adapted to (default 100)
+     */
+    public void setTargetLatencyMillis(long targetLatencyMillis) {
+        Assert.isTrue(targetLatencyMillis > 0, "Target latency must be greater than 0");
+        this.targetLatencyMillis = targetLatencyMillis;
+    }
+
+    /**
+     * @param maxRowsPerSecond Maximum number of rows deleted per second (default 5000)
+     */
+    public void setMaxRowsPerSecond(int maxRowsPerSecond) {
+        Assert.isTrue(maxRowsPerSecond > 0, "Maximum rows per second must be greater than 0");
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    /**
+     * Pause the cleaner while the probed replication lag exceeds the maximum
+     *
+     * @param replicationLagProbe     Replication lag probe, null to disable
+     * @param maxReplicationLagMillis Maximum replication lag in milliseconds (default 5000)
+     * @param lagPauseMillis          Pause between two probes while lagging (default 1000)
+     */
+    public void setReplicationLagProbe(TxMsgReplicationLagProbe replicationLagProbe, long maxReplicationLagMillis, long lagPauseMillis) {
+        Assert.isTrue(maxReplicationLagMillis >= 0, "Maximum replication lag cannot be negative");
+        Assert.isTrue(lagPauseMillis > 0, "Lag pause must be greater than 0");
+        this.replicationLagProbe = replicationLagProbe;
+        this.maxReplicationLagMillis = maxReplicationLagMillis;
+        this.lagPauseMillis = lagPauseMillis;
+    }
+
+    public int getRangeSize() {
+        return rangeSize;
+    }
+
+    public void shutdown() {
+        cleanExecutor.shutdownNow();
+        logger.info("Expired message cleaner stopped, table: {}", tableName);
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+}
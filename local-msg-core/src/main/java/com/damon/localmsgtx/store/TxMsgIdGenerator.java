@@ -0,0 +1,138 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-ordered 64-bit message id generator (Snowflake layout), assigning ids before the insert
+ * <p>
+ * Layout: 1 sign bit (0), 41 bits of milliseconds since {@link #EPOCH_MILLIS}, 10 bits of worker id, 12 bits of
+ * sequence. Ids of one worker are strictly increasing, ids of different workers are unique and ordered by time to the
+ * clock skew between the nodes. Every node must use its own worker id, either fixed or leased with {@link TxMsgWorkerIdLease}.
+ * <p>
+ * When the clock moves backwards by at most the tolerated drift, ids keep being issued from the last timestamp
+ * (borrowing sequence numbers); a larger backward jump is refused with a {@link TxMsgException}
+ */
+public class TxMsgIdGenerator {
+
+    /**
+     * 2025-01-01T00:00:00Z, ids stay positive until 2094
+     */
+    public static final long EPOCH_MILLIS = 1735689600000L;
+    public static final int WORKER_ID_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_WORKER_ID = (1 << WORKER_ID_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final IntSupplier workerIdSupplier;
+    private final LongSupplier clock;
+    private final long maxBackwardDriftMillis;
+
+    private long lastMillis = -1;
+    private long sequence;
+
+    /**
+     * @param workerId Worker id of this node (0 to {@link #MAX_WORKER_ID}), unique among the nodes writing the table
+     */
+    public TxMsgIdGenerator(int workerId) {
+        this(workerId, 10);
+    }
+
+    /**
+     * @param workerId               Worker id of this node (0 to {@link #MAX_WORKER_ID})
+     * @param maxBackwardDriftMillis Largest backward clock jump absorbed without failing
+     */
+    public TxMsgIdGenerator(int workerId, long maxBackwardDriftMillis) {
+        this(() -> workerId, maxBackwardDriftMillis, System::currentTimeMillis);
+        checkWorkerId(workerId);
+    }
+
+    /**
+     * Generator using the worker id held by the lease, ids are refused while the lease is not held
+     *
+     * @param workerIdLease Started worker id lease
+     */
+    public TxMsgIdGenerator(TxMsgWorkerIdLease workerIdLease) {
+        this(() -> workerIdLease.getWorkerId(), 10, System::currentTimeMillis);
+        Assert.notNull(workerIdLease, "Worker id lease cannot be null");
+    }
+
+    TxMsgIdGenerator(IntSupplier workerIdSupplier, long maxBackwardDriftMillis, LongSupplier clock) {
+        Assert.isTrue(maxBackwardDriftMillis >= 0, "Maximum backward drift cannot be negative");
+        this.workerIdSupplier = workerIdSupplier;
+        this.maxBackwardDriftMillis = maxBackwardDriftMillis;
+        this.clock = clock;
+    }
+
+    private static void checkWorkerId(int workerId) {
+        Assert.isTrue(workerId >= 0 && workerId <= MAX_WORKER_ID, "Worker id must be between 0 and " + MAX_WORKER_ID);
+    }
+
+    /**
+     * Next id, waiting for the next millisecond when the 4096 ids of the current one are used up
+     */
+    public synchronized long nextId() {
+        int workerId = workerIdSupplier.getAsInt();
+        long currentMillis = clock.getAsLong();
+        if (currentMillis < lastMillis) {
+            if (lastMillis - currentMillis > maxBackwardDriftMillis) {
+                throw new TxMsgException("Clock moved backwards by " + (lastMillis - currentMillis) + "ms, refusing to generate ids");
+            }
+            // Keep issuing from the last timestamp until the clock catches up
+            currentMillis = lastMillis;
+        }
+        if (currentMillis == lastMillis) {
+            sequence = (sequence + 1) & MAX_SEQUENCE;
+            if (sequence == 0) {
+                currentMillis = waitNextMillis(lastMillis);
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMillis = currentMillis;
+        return ((currentMillis - EPOCH_MILLIS) << (WORKER_ID_BITS + SEQUENCE_BITS))
+                | ((long) workerId << SEQUENCE_BITS)
+                | sequence;
+    }
+
+    private long waitNextMillis(long lastMillis) {
+        long currentMillis = clock.getAsLong();
+        while (currentMillis <= lastMillis) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            currentMillis = clock.getAsLong();
+        }
+        return currentMillis;
+    }
+
+    /**
+     * Shard of the id (0 to 10^shardDigits - 1), replacing the random factor of the message.
+     * The id bits are mixed first, so ids issued in the same millisecond spread over all shards
+     *
+     * @param id          Message id
+     * @param shardDigits Random factor length of the store
+     */
+    public static int shardOf(long id, int shardDigits) {
+        long mixed = id * 0x9E3779B97F4A7C15L;
+        mixed ^= mixed >>> 32;
+        return (int) Math.floorMod(mixed, (long) Math.pow(10, shardDigits));
+    }
+
+    /**
+     * Creation time (millisecond timestamp) encoded in the id
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (WORKER_ID_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    /**
+     * Worker id encoded in the id
+     */
+    public static int workerIdOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_WORKER_ID);
+    }
+}
@@ -0,0 +1,92 @@
+package com.damon.localmsgtx.store;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Statement with an {@code id IN (...)} list, prepared for a fixed set of list sizes
+ * An id list is padded with its last id up to the next bucket size (duplicates in an IN list match the row once),
+ * lists longer than the largest bucket are split. Each statement therefore has at most {@link #BUCKET_SIZES} distinct
+ * SQL strings, and the client and server prepared statement caches hit whatever the batch size
+ */
+final class TxMsgInListSql {
+
+    static final int[] BUCKET_SIZES = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512};
+
+    private final String[] bucketSqls;
+
+    /**
+     * @param sqlTemplate SQL with one more {@code %s} than the format arguments, the last one is the IN list
+     * @param formatArgs  Format arguments before the IN list (e.g. the table name)
+     */
+    TxMsgInListSql(String sqlTemplate, Object... formatArgs) {
+        this.bucketSqls = new String[BUCKET_SIZES.length];
+        Object[] args = Arrays.copyOf(formatArgs, formatArgs.length + 1);
+        for (int i = 0; i < BUCKET_SIZES.length; i++) {
+            args[formatArgs.length] = String.join(",", Collections.nCopies(BUCKET_SIZES[i], "?"));
+            bucketSqls[i] = String.format(sqlTemplate, args);
+        }
+    }
+
+    /**
+     * Execute the statement for all ids
+     *
+     * @param leadingParams Parameters before the IN list
+     * @param ids           IDs of the IN list
+     * @return Total number of affected rows
+     */
+    int update(JdbcTemplate jdbcTemplate, Object[] leadingParams, List<Long> ids) {
+        int maxBucketSize = BUCKET_SIZES[BUCKET_SIZES.length - 1];
+        int affectedRows = 0;
+        for (int from = 0; from < ids.size(); from += maxBucketSize) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + maxBucketSize));
+            int bucket = bucketIndex(chunk.size());
+            affectedRows += jdbcTemplate.update(bucketSqls[bucket], params(leadingParams, chunk, BUCKET_SIZES[bucket]));
+        }
+        return affectedRows;
+    }
+
+    /**
+     * Execute the query for all ids
+     *
+     * @param leadingParams Parameters before the IN list
+     * @param ids           IDs of the IN list
+     * @return Ids selected by the query
+     */
+    List<Long> queryForIds(JdbcTemplate jdbcTemplate, Object[] leadingParams, List<Long> ids) {
+        int maxBucketSize = BUCKET_SIZES[BUCKET_SIZES.length - 1];
+        List<Long> selectedIds = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += maxBucketSize) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + maxBucketSize));
+            int bucket = bucketIndex(chunk.size());
+            selectedIds.addAll(jdbcTemplate.queryForList(bucketSqls[bucket], Long.class, params(leadingParams, chunk, BUCKET_SIZES[bucket])));
+        }
+        return selectedIds;
+    }
+
+    static int bucketIndex(int size) {
+        for (int i = 0; i < BUCKET_SIZES.length; i++) {
+            if (BUCKET_SIZES[i] >= size) {
+                return i;
+            }
+        }
+        return BUCKET_SIZES.length - 1;
+    }
+
+    static Object[] params(Object[] leadingParams, List<Long> ids, int bucketSize) {
+        Object[] params = Arrays.copyOf(leadingParams, leadingParams.length + bucketSize);
+        Long lastId = ids.get(ids.size() - 1);
+        for (int i = 0; i < bucketSize; i++) {
+            params[leadingParams.length + i] = i < ids.size() ? ids.get(i) : lastId;
+        }
+        return params;
+    }
+
+    String sql(int bucketSize) {
+        return bucketSqls[bucketIndex(bucketSize)];
+    }
+}
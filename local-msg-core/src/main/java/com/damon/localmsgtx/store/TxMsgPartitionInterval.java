@@ -0,0 +1,47 @@
+package com.damon.localmsgtx.store;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Width of the {@code create_time} range partitions of a partitioned message table
+ * Partition bounds are aligned on UTC, a partition is named after the start of the last interval it covers
+ */
+public enum TxMsgPartitionInterval {
+
+    /**
+     * One partition per UTC day, e.g. p20250101
+     */
+    DAY(24 * 3600 * 1000L, "yyyyMMdd"),
+    /**
+     * One partition per UTC hour, e.g. p2025010113
+     */
+    HOUR(3600 * 1000L, "yyyyMMddHH");
+
+    private final long millis;
+    private final DateTimeFormatter nameFormatter;
+
+    TxMsgPartitionInterval(long millis, String namePattern) {
+        this.millis = millis;
+        this.nameFormatter = DateTimeFormatter.ofPattern(namePattern).withZone(ZoneOffset.UTC);
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Start of the interval containing the given time
+     */
+    long floor(long timeMillis) {
+        return Math.floorDiv(timeMillis, millis) * millis;
+    }
+
+    /**
+     * Name of the partition holding the rows created before the given bound
+     */
+    String partitionName(long upperBound) {
+        return "p" + nameFormatter.format(Instant.ofEpochMilli(upperBound - millis));
+    }
+}
@@ -0,0 +1,170 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.exception.TxMsgStoreException;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the {@code create_time} range partitions of a partitioned message table (MySQL)
+ * <p>
+ * The table always ends with the {@code p_max} partition ({@code VALUES LESS THAN MAXVALUE}), new partitions are split
+ * off it ahead of time, so an insert never fails for lack of a partition. Expired partitions are dropped as a whole
+ * once every row in them has the expected status, which costs a metadata change instead of row-by-row deletes
+ */
+public class TxMsgPartitionManager {
+    private static final Logger logger = LoggerFactory.getLogger(TxMsgPartitionManager.class);
+
+    static final String MAX_PARTITION_NAME = "p_max";
+
+    private final String SELECT_PARTITIONS_SQL = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION";
+    private final String ADD_PARTITIONS_SQL = "ALTER TABLE %s REORGANIZE PARTITION " + MAX_PARTITION_NAME +
+            " INTO (%s, PARTITION " + MAX_PARTITION_NAME + " VALUES LESS THAN MAXVALUE)";
+    private final String PARTITION_DEFINITION_SQL = "PARTITION %s VALUES LESS THAN (%d)";
+    private final String SELECT_PARTITION_BLOCKING_ROW_SQL = "SELECT id FROM %s PARTITION (%s) WHERE status <> ? LIMIT 1";
+    private final String DROP_PARTITION_SQL = "ALTER TABLE %s DROP PARTITION %s";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String tableName;
+    private final TxMsgPartitionInterval partitionInterval;
+    private final int partitionsAhead;
+
+    /**
+     * @param dataSource        Data source
+     * @param tableName         Partitioned message table name
+     * @param partitionInterval Width of the partitions
+     * @param partitionsAhead   Number of partitions kept ahead of the current one
+     */
+    public TxMsgPartitionManager(DataSource dataSource, String tableName, TxMsgPartitionInterval partitionInterval, int partitionsAhead) {
+        Assert.notNull(dataSource, "Data source cannot be null");
+        Assert.hasText(tableName, "Table name cannot be empty");
+        Assert.notNull(partitionInterval, "Partition interval cannot be null");
+        Assert.isTrue(partitionsAhead > 0, "Partitions ahead must be greater than 0");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.tableName = tableName;
+        this.partitionInterval = partitionInterval;
+        this.partitionsAhead = partitionsAhead;
+    }
+
+    /**
+     * Whether the table is range partitioned with the {@code p_max} partition
+     */
+    public boolean isPartitioned() {
+        return listPartitions().stream().anyMatch(partition -> partition.upperBound() == null);
+    }
+
+    /**
+     * Split new partitions off {@code p_max} until the current partition and the configured number of partitions
+     * ahead exist. A table whose last partition lies in the past gets one partition covering the gap up to the end
+     * of the current interval. Safe to call concurrently from several nodes
+     *
+     * @return Number of partitions created
+     */
+    public int createPartitions() {
+        long targetBound = partitionInterval.floor(System.currentTimeMillis()) + (partitionsAhead + 1) * partitionInterval.getMillis();
+        List<Long> newBounds = newPartitionBounds(targetBound);
+        if (newBounds.isEmpty()) {
+            return 0;
+        }
+        String partitionDefinitions = newBounds.stream()
+                .map(bound -> String.format(PARTITION_DEFINITION_SQL, partitionInterval.partitionName(bound), bound))
+                .collect(Collectors.joining(", "));
+        try {
+            jdbcTemplate.execute(String.format(ADD_PARTITIONS_SQL, tableName, partitionDefinitions));
+            logger.info("Created {} partitions of table {}, last partition: {}", newBounds.size(), tableName,
+                    partitionInterval.partitionName(newBounds.get(newBounds.size() - 1)));
+            return newBounds.size();
+        } catch (Exception e) {
+            if (newPartitionBounds(targetBound).isEmpty()) {
+                logger.info("Partitions of table {} were created by another node", tableName);
+                return 0;
+            }
+            logger.error("Exception occurred while creating partitions of table {}", tableName, e);
+            throw new TxMsgStoreException("Exception occurred while creating partitions of table: " + tableName, e);
+        }
+    }
+
+    /**
+     * Drop the partitions whose rows were all created before the expiration time and all have the given status.
+     * A partition still holding another status (waiting messages, dead letters) is kept until a later run
+     *
+     * @param expireTime Expiration time (millisecond timestamp)
+     * @param statusEnum Status every row of a dropped partition must have
+     * @return Number of partitions dropped
+     */
+    public int dropExpiredPartitions(long expireTime, TxMsgStatusEnum statusEnum) {
+        Assert.notNull(statusEnum, "Status cannot be null");
+        int dropped = 0;
+        try {
+            for (TxMsgPartition partition : listPartitions()) {
+                // Rows of a partition are all created before its bound, p_max never expires
+                if (partition.upperBound() == null || partition.upperBound() - 1 > expireTime) {
+                    continue;
+                }
+                List<Long> blockingIds = jdbcTemplate.queryForList(
+                        String.format(SELECT_PARTITION_BLOCKING_ROW_SQL, tableName, partition.name()), Long.class, statusEnum.getStatus());
+                if (!blockingIds.isEmpty()) {
+                    logger.warn("Expired partition {} of table {} is kept, message {} is not in status {}",
+                            partition.name(), tableName, blockingIds.get(0), statusEnum);
+                    continue;
+                }
+                jdbcTemplate.execute(String.format(DROP_PARTITION_SQL, tableName, partition.name()));
+                dropped++;
+                logger.info("Dropped expired partition {} of table {}", partition.name(), tableName);
+            }
+            return dropped;
+        } catch (Exception e) {
+            logger.error("Exception occurred while dropping expired partitions of table {}, dropped: {}", tableName, dropped, e);
+            throw new TxMsgStoreException("Exception occurred while dropping expired partitions of table: " + tableName, e);
+        }
+    }
+
+    private List<Long> newPartitionBounds(long targetBound) {
+        long lastBound = listPartitions().stream()
+                .map(TxMsgPartition::upperBound)
+                .filter(bound -> bound != null)
+                .mapToLong(Long::longValue)
+                .max()
+                .orElse(Long.MIN_VALUE);
+        return newPartitionBounds(partitionInterval, lastBound, System.currentTimeMillis(), targetBound);
+    }
+
+    /**
+     * Bounds of the partitions to split off {@code p_max}: from the end of the current interval (or the interval after
+     * the last bound when it lies ahead) up to the target bound
+     *
+     * @param lastBound   Highest bound of the existing partitions, {@link Long#MIN_VALUE} when only p_max exists
+     * @param currentTime Current time (millisecond timestamp)
+     * @param targetBound Highest bound to create
+     */
+    static List<Long> newPartitionBounds(TxMsgPartitionInterval partitionInterval, long lastBound, long currentTime, long targetBound) {
+        long currentBound = partitionInterval.floor(currentTime) + partitionInterval.getMillis();
+        List<Long> newBounds = new ArrayList<>();
+        for (long bound = Math.max(currentBound, lastBound + partitionInterval.getMillis()); bound <= targetBound; bound += partitionInterval.getMillis()) {
+            newBounds.add(bound);
+        }
+        return newBounds;
+    }
+
+    private List<TxMsgPartition> listPartitions() {
+        return jdbcTemplate.query(SELECT_PARTITIONS_SQL, (rs, rowNum) -> {
+            String description = rs.getString("PARTITION_DESCRIPTION");
+            Long upperBound = description == null || "MAXVALUE".equalsIgnoreCase(description) ? null : Long.valueOf(description);
+            return new TxMsgPartition(rs.getString("PARTITION_NAME"), upperBound);
+        }, tableName);
+    }
+
+    /**
+     * Range partition, a null upper bound is {@code MAXVALUE}
+     */
+    private record TxMsgPartition(String name, Long upperBound) {
+    }
+}
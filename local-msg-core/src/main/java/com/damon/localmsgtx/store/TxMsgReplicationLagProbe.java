@@ -0,0 +1,41 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.exception.TxMsgStoreException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports how far a replica is behind the primary, used by {@link TxMsgExpiredMsgCleaner} to slow down
+ */
+@FunctionalInterface
+public interface TxMsgReplicationLagProbe {
+
+    /**
+     * @return Replication lag in milliseconds, {@link Long#MAX_VALUE} when unknown (e.g. replication stopped)
+     */
+    long lagMillis();
+
+    /**
+     * Probe reading {@code SHOW REPLICA STATUS} on a MySQL (8.0.22+) or MariaDB (10.5.1+) replica.
+     * The lag has a resolution of one second
+     *
+     * @param replicaDataSource Data source connected to the replica
+     */
+    static TxMsgReplicationLagProbe mysqlReplica(DataSource replicaDataSource) {
+        Assert.notNull(replicaDataSource, "Replica data source cannot be null");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(replicaDataSource);
+        return () -> {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList("SHOW REPLICA STATUS");
+            if (rows.isEmpty()) {
+                throw new TxMsgStoreException("SHOW REPLICA STATUS returned no row, the data source is not a replica");
+            }
+            Map<String, Object> status = rows.get(0);
+            Object seconds = status.containsKey("Seconds_Behind_Source") ? status.get("Seconds_Behind_Source") : status.get("Seconds_Behind_Master");
+            return seconds == null ? Long.MAX_VALUE : ((Number) seconds).longValue() * 1000;
+        };
+    }
+}
@@ -0,0 +1,157 @@
+package com.damon.localmsgtx.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind stage for "sent" status updates
+ * Producer callbacks only enqueue the acknowledged message ids (no I/O), a single flusher thread coalesces them
+ * and writes them through {@link ITxMsgStore#ackSentMsg(List)} every flush interval or every flush batch size ids.
+ * <p>
+ * The queue is bounded: when it is full the id is dropped with a warning, the message stays in "waiting to send"
+ * status and is picked up again by the compensation task (at-least-once delivery is preserved)
+ * <p>
+ * The flusher thread is started by the first {@link #submit(Long)}, a handler that only sends batches never starts it
+ */
+public class TxMsgSentStatusCoalescer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TxMsgSentStatusCoalescer.class);
+
+    private final ITxMsgStore txMsgStore;
+    private final BlockingQueue<Long> pendingMsgIds;
+    /**
+     * Maximum number of ids written by one batch update
+     */
+    private final int flushBatchSize;
+    /**
+     * Maximum time an acknowledged id waits in the queue before being flushed
+     */
+    private final long flushIntervalMillis;
+    private final Thread flusherThread;
+    private final AtomicBoolean flusherStarted = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    /**
+     * Full parameter constructor
+     *
+     * @param txMsgStore          Transactional message storage manager
+     * @param capacity            Maximum number of acknowledged ids kept in memory
+     * @param flushBatchSize      Maximum number of ids written by one batch update
+     * @param flushIntervalMillis Flush interval in milliseconds
+     */
+    public TxMsgSentStatusCoalescer(ITxMsgStore txMsgStore, int capacity, int flushBatchSize, long flushIntervalMillis) {
+        Assert.notNull(txMsgStore, "TxMsgStore cannot be null");
+        Assert.isTrue(capacity > 0, "Capacity must be greater than 0");
+        Assert.isTrue(flushBatchSize > 0, "Flush batch size must be greater than 0");
+        Assert.isTrue(flushIntervalMillis > 0, "Flush interval must be greater than 0");
+        this.txMsgStore = txMsgStore;
+        this.pendingMsgIds = new ArrayBlockingQueue<>(capacity);
+        this.flushBatchSize = flushBatchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flusherThread = Thread.ofPlatform().daemon().name("tx-msg-status-flusher").unstarted(this::flushLoop);
+    }
+
+    /**
+     * Simplified constructor (using default configuration)
+     * - Keep at most 100000 acknowledged ids in memory
+     * - Flush at most 200 ids per batch update
+     * - Flush every 10 milliseconds
+     */
+    public TxMsgSentStatusCoalescer(ITxMsgStore txMsgStore) {
+        this(txMsgStore, 100000, 200, 10);
+    }
+
+    /**
+     * Enqueue an acknowledged message id, never blocks
+     *
+     * @param msgId Message ID
+     * @return false if the queue is full or the coalescer is closed (the message will be resent by the compensation task)
+     */
+    public boolean submit(Long msgId) {
+        Assert.notNull(msgId, "Message ID cannot be null");
+        if (!running || !pendingMsgIds.offer(msgId)) {
+            logger.warn("Sent status queue is full or closed, status update skipped and left to the compensation task [msgId: {}]", msgId);
+            return false;
+        }
+        if (!flusherStarted.get() && flusherStarted.compareAndSet(false, true)) {
+            flusherThread.start();
+        }
+        return true;
+    }
+
+    boolean isFlusherStarted() {
+        return flusherStarted.get();
+    }
+
+    private void flushLoop() {
+        List<Long> batch = new ArrayList<>(flushBatchSize);
+        while (running) {
+            try {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < flushBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Long msgId = pendingMsgIds.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (msgId == null) {
+                        break;
+                    }
+                    batch.add(msgId);
+                    pendingMsgIds.drainTo(batch, flushBatchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            flush(batch);
+        }
+        flush(batch);
+    }
+
+    private void flush(List<Long> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            int updateRows = txMsgStore.ackSentMsg(batch);
+            if (updateRows != batch.size()) {
+                logger.warn("Some message status updates failed, expected to update: {}, actually updated: {}", batch.size(), updateRows);
+            }
+        } catch (Exception e) {
+            logger.error("Sent status flush failed, messages will be resent by the compensation task, count: {}", batch.size(), e);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stop accepting ids and flush everything still queued
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (flusherStarted.get()) {
+            try {
+                flusherThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<Long> batch = new ArrayList<>(flushBatchSize);
+        while (pendingMsgIds.drainTo(batch, flushBatchSize) > 0) {
+            flush(batch);
+        }
+        logger.info("Sent status coalescer closed");
+    }
+}
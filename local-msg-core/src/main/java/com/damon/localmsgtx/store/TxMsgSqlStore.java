@@ -1,42 +1,112 @@
 package com.damon.localmsgtx.store;
 
+import com.damon.localmsgtx.codec.TxMsgContentCodec;
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
 import com.damon.localmsgtx.exception.TxMsgDuplicateKeyException;
 import com.damon.localmsgtx.exception.TxMsgException;
 import com.damon.localmsgtx.exception.TxMsgStoreException;
+import com.damon.localmsgtx.model.TxMsgBacklog;
 import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
 import com.damon.localmsgtx.model.TxMsgStatusEnum;
 import com.damon.localmsgtx.utils.RandomNumber;
+import com.damon.localmsgtx.utils.StrUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
 import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 /**
- * Transactional message database storage manager
+ * Transactional message database storage manager (MySQL)
  * Responsible for persistence, status updates, queries, and cleanup of transactional messages
  */
-public class TxMsgSqlStore {
+public class TxMsgSqlStore implements ITxMsgStore {
 
     private final Logger logger = LoggerFactory.getLogger(TxMsgSqlStore.class);
+    /**
+     * Only the id is asked back, drivers returning every column for RETURN_GENERATED_KEYS (PostgreSQL) return just the key
+     */
+    private static final String[] GENERATED_KEY_COLUMNS = {"id"};
     // SQL语句常量
-    private final String INSERT_TX_MSG_SQL = "INSERT INTO %s (msg_key, content, topic, msg_tag, status, random_factor, create_time, update_time ) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    /**
+     * Formatted with the table name, the extra columns (see {@link #setInsertParams}) and their placeholders
+     */
+    private final String INSERT_TX_MSG_SQL = "INSERT INTO %s (msg_key, content, topic, msg_tag, status, random_factor, create_time, update_time%s ) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?%s)";
+    private final String V2_INSERT_COLUMNS = ", shard, content_codec, content_bytes";
+    private final String FANOUT_INSERT_COLUMNS = ", dest_mask";
+    private final String ID_INSERT_COLUMNS = ", id";
     private final String UPDATE_SEND_MSG_SQL = "UPDATE %s SET status = ?, update_time = ? WHERE id = ? AND status = ?";
+    private final String BATCH_UPDATE_SEND_MSG_SQL = "UPDATE %s SET status = ?, update_time = ? WHERE status = ? AND id IN (%s)";
     private final String SELECT_WAITING_MSG_SQL = "SELECT id, msg_key, content, topic, msg_tag, status, random_factor, create_time, update_time " +
             "FROM %s WHERE id > ? AND status = ? AND random_factor LIKE ? ORDER BY id ASC LIMIT ?";
+    /**
+     * Columns read in addition by a fanout store
+     */
+    protected static final String FANOUT_COLUMNS = ", dest_mask, acked_mask";
+    private final String SELECT_WAITING_MSG_V2_SQL = "SELECT id, msg_key, content, content_codec, content_bytes, topic, msg_tag, status, random_factor, create_time, update_time%s " +
+            "FROM %s WHERE status = ? AND shard BETWEEN ? AND ? AND next_retry_time <= ? AND id > ? ORDER BY id ASC LIMIT ?";
+    /**
+     * Claim step (inside a transaction): lock a page of due rows not leased by another scanner, then stamp the lease
+     */
+    private final String SELECT_CLAIMABLE_MSG_SQL = "SELECT id, msg_key, content, content_codec, content_bytes, topic, msg_tag, status, random_factor, create_time, update_time%s " +
+            "FROM %s WHERE status = ? AND shard BETWEEN ? AND ? AND next_retry_time <= ? AND lease_until <= ? AND id > ? ORDER BY id ASC LIMIT ? FOR UPDATE SKIP LOCKED";
+    private final String UPDATE_LEASE_SQL = "UPDATE %s SET lease_owner = ?, lease_until = ? WHERE id IN (%s)";
+    /**
+     * MySQL assigns SET columns left to right, status and next_retry_time are computed from the retry_count before the increment
+     */
+    private final String MARK_SEND_FAILED_SQL = "UPDATE %s SET status = CASE WHEN retry_count + 1 >= ? THEN ? ELSE status END, " +
+            "next_retry_time = ? + LEAST(? * POWER(2, LEAST(retry_count, 30)), ?), retry_count = retry_count + 1, update_time = ? " +
+            "WHERE status = ? AND id IN (%s)";
+    /**
+     * Same as {@link #MARK_SEND_FAILED_SQL}, also releasing the lease so that the retry backoff applies
+     */
+    private final String MARK_SEND_FAILED_RELEASE_LEASE_SQL = "UPDATE %s SET status = CASE WHEN retry_count + 1 >= ? THEN ? ELSE status END, " +
+            "next_retry_time = ? + LEAST(? * POWER(2, LEAST(retry_count, 30)), ?), retry_count = retry_count + 1, update_time = ?, " +
+            "lease_owner = NULL, lease_until = 0 " +
+            "WHERE status = ? AND id IN (%s)";
+    /**
+     * Record the destinations that acknowledged a fanout message, the row stays waiting until every destination did
+     */
+    private final String ACK_DESTINATIONS_SQL = "UPDATE %s SET acked_mask = acked_mask | ?, update_time = ? WHERE status = ? AND id IN (%s)";
+    private final String RESET_FAILED_MSG_SQL = "UPDATE %s SET status = ?, retry_count = 0, next_retry_time = 0, update_time = ? WHERE status = ? AND id IN (%s)";
+    private final String ARCHIVE_COLUMNS = "id, msg_key, content, topic, msg_tag, random_factor, create_time";
+    private final String LOCK_WAITING_MSG_SQL = "SELECT id FROM %s WHERE status = ? AND id IN (%s) FOR UPDATE";
+    private final String ARCHIVE_SENT_MSG_SQL = "INSERT INTO %s (%s, status, update_time) SELECT %s, ?, ? FROM %s WHERE status = ? AND id IN (%s)";
+    private final String DELETE_ACKED_MSG_SQL = "DELETE FROM %s WHERE status = ? AND id IN (%s)";
     private final String DELETE_EXPIRED_SENDED_MSG_SQL = "DELETE FROM %s WHERE status = ? AND create_time <= ? LIMIT ?";
+    /**
+     * One seek per topic on the (status, topic, create_time) index (loose index scan)
+     */
+    private final String SELECT_WAITING_TOPICS_SQL = "SELECT topic, MIN(create_time) AS oldest_create_time FROM %s WHERE status = ? GROUP BY topic";
+    private final String COUNT_WAITING_MSG_SQL = "SELECT COUNT(*) FROM (SELECT 1 FROM %s WHERE status = ? AND topic = ? LIMIT ?) t";
     private final String CHECK_TABLE_EXISTS_SQL = "SELECT * FROM %s LIMIT 1";
+    private final String CHECK_V2_COLUMNS_EXIST_SQL = "SELECT shard, retry_count, next_retry_time, content_codec, content_bytes FROM %s LIMIT 1";
+    private final String CHECK_CODEC_COLUMNS_EXIST_SQL = "SELECT content_codec, content_bytes FROM %s LIMIT 1";
+    private final String CHECK_LEASE_COLUMNS_EXIST_SQL = "SELECT lease_owner, lease_until FROM %s LIMIT 1";
+    private final String CHECK_FANOUT_COLUMNS_EXIST_SQL = "SELECT dest_mask, acked_mask FROM %s LIMIT 1";
+    private final String CHECK_ID_SEQUENCE_SQL = "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = ? AND column_name = 'id' AND extra LIKE '%auto_increment%'";
     private final String CREATE_TABLE_SQL = """
             CREATE TABLE `%s` (
               `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键ID',
@@ -51,16 +121,148 @@ public class TxMsgSqlStore {
               PRIMARY KEY (`id`),
               UNIQUE KEY `uk_msgkey` (`msg_key`) USING BTREE COMMENT '用于根据msgKey查询消息（可选，根据业务需求添加）',
               KEY `idx_randomfactor` (`random_factor`) USING BTREE COMMENT '用于分片任务消息查询',
-              KEY `idx_status_createtime` (`status`,`create_time`) USING BTREE COMMENT '用于查询等待发送的消息和清理过期消息'
+              KEY `idx_status_createtime` (`status`,`create_time`) USING BTREE COMMENT '用于查询等待发送的消息和清理过期消息',
+              KEY `idx_status_topic_createtime` (`status`,`topic`,`create_time`) USING BTREE COMMENT '用于按主题查询积压消息'
+            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='事务消息存储表（确保消息发送与本地事务一致性）';
+            """;
+    private final String CREATE_TABLE_V2_SQL = """
+            CREATE TABLE `%s` (
+              `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+              `content` mediumtext NOT NULL COMMENT '消息内容（JSON格式或字符串，压缩存储时为空）',
+              `content_codec` tinyint NOT NULL DEFAULT 0 COMMENT '消息内容压缩算法：0-不压缩，1-LZ4，2-DEFLATE',
+              `content_bytes` mediumblob NULL COMMENT '压缩后的消息内容',
+              `topic` varchar(255) NOT NULL COMMENT '消息主题',
+              `msg_key` varchar(128) NOT NULL COMMENT '消息唯一标识（用于幂等性处理）',
+              `msg_tag` varchar(128) NOT NULL COMMENT '消息标签（rocketmq）',
+              `status` tinyint NOT NULL COMMENT '消息状态：0-等待发送，1-已发送，2-发送失败（死信）',
+              `random_factor` varchar(10) NOT NULL COMMENT '随机因子(定时调度分片使用)',
+              `shard` int NOT NULL DEFAULT -1 COMMENT '分片号（随机因子的数值，插入时计算）',
+              `retry_count` int NOT NULL DEFAULT 0 COMMENT '发送失败次数',
+              `next_retry_time` bigint NOT NULL DEFAULT 0 COMMENT '下次重试时间（毫秒时间戳，指数退避）',
+              `lease_owner` varchar(128) NULL COMMENT '认领消息的节点',
+              `lease_until` bigint NOT NULL DEFAULT 0 COMMENT '认领到期时间（毫秒时间戳），到期前其他节点不会发送该消息',
+              `dest_mask` int NOT NULL DEFAULT 0 COMMENT '投递目标位图（扇出消息，0-全部目标）',
+              `acked_mask` int NOT NULL DEFAULT 0 COMMENT '已确认的投递目标位图',
+              `create_time` bigint NOT NULL COMMENT '创建时间（毫秒时间戳）',
+              `update_time` bigint NOT NULL COMMENT '更新时间（毫秒时间戳）',
+              PRIMARY KEY (`id`),
+              UNIQUE KEY `uk_msgkey` (`msg_key`) USING BTREE COMMENT '用于根据msgKey查询消息（可选，根据业务需求添加）',
+              KEY `idx_status_shard_retry` (`status`,`shard`,`next_retry_time`) USING BTREE COMMENT '用于分片任务查询到期待发送的消息',
+              KEY `idx_status_createtime` (`status`,`create_time`) USING BTREE COMMENT '用于清理过期消息',
+              KEY `idx_status_topic_createtime` (`status`,`topic`,`create_time`) USING BTREE COMMENT '用于按主题查询积压消息'
             ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='事务消息存储表（确保消息发送与本地事务一致性）';
             """;
+    /**
+     * Partitioned V2 layout: every unique key must contain the partition column, so the primary key is (id, create_time)
+     * and the message key index is not unique
+     */
+    private final String CREATE_PARTITIONED_TABLE_V2_SQL = """
+            CREATE TABLE `%s` (
+              `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+              `content` mediumtext NOT NULL COMMENT '消息内容（JSON格式或字符串，压缩存储时为空）',
+              `content_codec` tinyint NOT NULL DEFAULT 0 COMMENT '消息内容压缩算法：0-不压缩，1-LZ4，2-DEFLATE',
+              `content_bytes` mediumblob NULL COMMENT '压缩后的消息内容',
+              `topic` varchar(255) NOT NULL COMMENT '消息主题',
+              `msg_key` varchar(128) NOT NULL COMMENT '消息唯一标识（用于幂等性处理，分区表不保证唯一）',
+              `msg_tag` varchar(128) NOT NULL COMMENT '消息标签（rocketmq）',
+              `status` tinyint NOT NULL COMMENT '消息状态：0-等待发送，1-已发送，2-发送失败（死信）',
+              `random_factor` varchar(10) NOT NULL COMMENT '随机因子(定时调度分片使用)',
+              `shard` int NOT NULL DEFAULT -1 COMMENT '分片号（随机因子的数值，插入时计算）',
+              `retry_count` int NOT NULL DEFAULT 0 COMMENT '发送失败次数',
+              `next_retry_time` bigint NOT NULL DEFAULT 0 COMMENT '下次重试时间（毫秒时间戳，指数退避）',
+              `lease_owner` varchar(128) NULL COMMENT '认领消息的节点',
+              `lease_until` bigint NOT NULL DEFAULT 0 COMMENT '认领到期时间（毫秒时间戳），到期前其他节点不会发送该消息',
+              `dest_mask` int NOT NULL DEFAULT 0 COMMENT '投递目标位图（扇出消息，0-全部目标）',
+              `acked_mask` int NOT NULL DEFAULT 0 COMMENT '已确认的投递目标位图',
+              `create_time` bigint NOT NULL COMMENT '创建时间（毫秒时间戳，分区键）',
+              `update_time` bigint NOT NULL COMMENT '更新时间（毫秒时间戳）',
+              PRIMARY KEY (`id`,`create_time`),
+              KEY `idx_msgkey` (`msg_key`) USING BTREE COMMENT '用于根据msgKey查询消息',
+              KEY `idx_status_shard_retry` (`status`,`shard`,`next_retry_time`) USING BTREE COMMENT '用于分片任务查询到期待发送的消息',
+              KEY `idx_status_createtime` (`status`,`create_time`) USING BTREE COMMENT '用于清理过期消息',
+              KEY `idx_status_topic_createtime` (`status`,`topic`,`create_time`) USING BTREE COMMENT '用于按主题查询积压消息'
+            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='事务消息存储表（按创建时间分区，过期分区整体删除）'
+            PARTITION BY RANGE (`create_time`) (PARTITION p_max VALUES LESS THAN MAXVALUE);
+            """;
+    private final String CREATE_ARCHIVE_TABLE_SQL = """
+            CREATE TABLE `%s` (
+              `id` bigint NOT NULL COMMENT '主键ID（与消息表一致）',
+              `content` mediumtext NOT NULL COMMENT '消息内容（JSON格式或字符串，压缩存储时为空）',
+              `content_codec` tinyint NOT NULL DEFAULT 0 COMMENT '消息内容压缩算法：0-不压缩，1-LZ4，2-DEFLATE',
+              `content_bytes` mediumblob NULL COMMENT '压缩后的消息内容',
+              `topic` varchar(255) NOT NULL COMMENT '消息主题',
+              `msg_key` varchar(128) NOT NULL COMMENT '消息唯一标识（用于幂等性处理）',
+              `msg_tag` varchar(128) NOT NULL COMMENT '消息标签（rocketmq）',
+              `status` tinyint NOT NULL COMMENT '消息状态：1-已发送',
+              `random_factor` varchar(10) NOT NULL COMMENT '随机因子(定时调度分片使用)',
+              `shard` int NOT NULL DEFAULT -1 COMMENT '分片号（随机因子的数值，插入时计算）',
+              `create_time` bigint NOT NULL COMMENT '创建时间（毫秒时间戳）',
+              `update_time` bigint NOT NULL COMMENT '更新时间（毫秒时间戳）',
+              PRIMARY KEY (`id`),
+              KEY `idx_msgkey` (`msg_key`) USING BTREE COMMENT '用于根据msgKey查询消息',
+              KEY `idx_status_createtime` (`status`,`create_time`) USING BTREE COMMENT '用于清理过期消息'
+            ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='事务消息归档表（已发送的消息）';
+            """;
     /**
      * Database table name (default: mq_messages)
      */
-    private final String tableName;
-    private final JdbcTemplate jdbcTemplate;
+    protected final String tableName;
+    protected final JdbcTemplate jdbcTemplate;
     private final String topic;
     private final RandomNumber randomNumber;
+    private final int randomFactorLength;
+    protected final TxMsgTableVersion tableVersion;
+    private final TxMsgAckMode ackMode;
+    private final String archiveTableName;
+    private final TransactionTemplate transactionTemplate;
+    /**
+     * Claim transactions run in READ COMMITTED: under REPEATABLE READ (MySQL default) the range scan of the claim
+     * also takes gap locks, which block concurrent inserts into the shard and other scanners' claims
+     */
+    private final TransactionTemplate claimTransactionTemplate;
+    private final int maxRetryCount;
+    private final long retryBackoffMillis;
+    private final long maxRetryBackoffMillis;
+    private final TxMsgContentCodec contentCodec;
+    private final int contentCompressThreshold;
+    /**
+     * Whether compensation scans claim the messages they read (lease columns, V2 table layout)
+     */
+    protected final boolean claimWaitingMessages;
+    protected final long leaseMillis;
+    /**
+     * Lease owner written on claimed messages, unique per store instance
+     */
+    protected final String leaseOwner;
+    /**
+     * Whether messages carry a destination bitmask (dest_mask and acked_mask columns, V2 table layout)
+     */
+    protected final boolean fanout;
+    /**
+     * Maintains the create_time partitions, null when the table is not partitioned
+     */
+    private final TxMsgPartitionManager partitionManager;
+    /**
+     * Assigns ids before the insert, null when the table generates them (AUTO_INCREMENT)
+     */
+    private final TxMsgIdGenerator idGenerator;
+
+    // Statements formatted once for the configured tables, so every call reuses the same SQL string
+    private final String insertTxMsgSql;
+    private final String updateSendMsgSql;
+    private final String selectWaitingMsgSql;
+    private final String selectClaimableMsgSql;
+    private final String deleteExpiredSendedMsgSql;
+    private final String countWaitingMsgSql;
+    private final String selectWaitingTopicsSql;
+    private final TxMsgInListSql batchUpdateSendMsgSql;
+    private final TxMsgInListSql updateLeaseSql;
+    private final TxMsgInListSql lockWaitingMsgSql;
+    private final TxMsgInListSql archiveSentMsgSql;
+    private final TxMsgInListSql deleteAckedMsgSql;
+    private final TxMsgInListSql markSendFailedSql;
+    private final TxMsgInListSql resetFailedMsgSql;
+    private final TxMsgInListSql ackDestinationsSql;
 
     /**
      * Constructor (supports custom table name)
@@ -69,13 +271,88 @@ public class TxMsgSqlStore {
      * @param tableName  Message storage table name
      */
     public TxMsgSqlStore(DataSource dataSource, String tableName, String topic, int randomFactorLength) {
+        this(dataSource, new TxMsgStoreConfig(tableName, topic, randomFactorLength));
+    }
+
+    /**
+     * Constructor (supports full store configuration)
+     *
+     * @param dataSource  Data source
+     * @param storeConfig Store configuration
+     */
+    public TxMsgSqlStore(DataSource dataSource, TxMsgStoreConfig storeConfig) {
         Assert.notNull(dataSource, "Data source cannot be null");
-        Assert.hasText(topic, "topic cannot be empty");
-        Assert.hasText(tableName, "Table name cannot be empty");
+        Assert.notNull(storeConfig, "Store config cannot be null");
+        Assert.hasText(storeConfig.getTopic(), "topic cannot be empty");
+        Assert.hasText(storeConfig.getTableName(), "Table name cannot be empty");
+        Assert.notNull(storeConfig.getTableVersion(), "Table version cannot be null");
+        Assert.notNull(storeConfig.getAckMode(), "Ack mode cannot be null");
+        Assert.isTrue(storeConfig.getMaxRetryCount() > 0, "Maximum retry count must be greater than 0");
+        Assert.isTrue(storeConfig.getRetryBackoffMillis() > 0, "Retry backoff must be greater than 0");
+        Assert.isTrue(storeConfig.getMaxRetryBackoffMillis() >= storeConfig.getRetryBackoffMillis(), "Maximum retry backoff cannot be less than retry backoff");
+        Assert.notNull(storeConfig.getContentCodec(), "Content codec cannot be null");
+        Assert.isTrue(storeConfig.getContentCodec() == TxMsgContentCodec.NONE || storeConfig.getTableVersion() == TxMsgTableVersion.V2,
+                "Content compression requires the V2 table layout");
+        if (storeConfig.getTableVersion() == TxMsgTableVersion.V2) {
+            // The shard column is an int holding the numeric value of the random factor
+            Assert.isTrue(storeConfig.getRandomFactorLength() <= 9, "Random factor length cannot exceed 9 with the V2 table layout");
+        }
+        Assert.isTrue(!storeConfig.isClaimWaitingMessages() || storeConfig.getTableVersion() == TxMsgTableVersion.V2,
+                "Claiming waiting messages requires the V2 table layout");
+        Assert.isTrue(storeConfig.getLeaseMillis() > 0, "Lease duration must be greater than 0");
+        Assert.isTrue(!storeConfig.isFanout() || storeConfig.getTableVersion() == TxMsgTableVersion.V2,
+                "Fanout messages require the V2 table layout");
+        if (storeConfig.getPartitionInterval() != null) {
+            Assert.isTrue(storeConfig.getTableVersion() == TxMsgTableVersion.V2, "Partitioned tables require the V2 table layout");
+            Assert.isTrue(storeConfig.getAckMode() == TxMsgAckMode.MARK_SENT, "Partitioned tables require the MARK_SENT ack mode");
+            Assert.isTrue(!storeConfig.isUniqueMsgKey(), "Partitioned tables cannot enforce unique message keys, set uniqueMsgKey to false");
+        }
         this.jdbcTemplate = new JdbcTemplate(dataSource);
-        this.tableName = tableName;
-        this.topic = topic;
+        this.tableName = storeConfig.getTableName();
+        this.topic = storeConfig.getTopic();
+        this.randomFactorLength = storeConfig.getRandomFactorLength();
         this.randomNumber = new RandomNumber(randomFactorLength);
+        this.tableVersion = storeConfig.getTableVersion();
+        this.ackMode = storeConfig.getAckMode();
+        this.archiveTableName = storeConfig.getArchiveTableName();
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.claimTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.claimTransactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.maxRetryCount = storeConfig.getMaxRetryCount();
+        this.retryBackoffMillis = storeConfig.getRetryBackoffMillis();
+        this.maxRetryBackoffMillis = storeConfig.getMaxRetryBackoffMillis();
+        this.contentCodec = storeConfig.getContentCodec();
+        this.contentCompressThreshold = storeConfig.getContentCompressThreshold();
+        this.claimWaitingMessages = storeConfig.isClaimWaitingMessages();
+        this.leaseMillis = storeConfig.getLeaseMillis();
+        this.fanout = storeConfig.isFanout();
+        this.idGenerator = storeConfig.getIdGenerator();
+        this.leaseOwner = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.partitionManager = storeConfig.getPartitionInterval() == null ? null
+                : new TxMsgPartitionManager(dataSource, tableName, storeConfig.getPartitionInterval(), storeConfig.getPartitionsAhead());
+
+        boolean v2 = tableVersion == TxMsgTableVersion.V2;
+        String archiveColumns = v2 ? ARCHIVE_COLUMNS + ", shard, content_codec, content_bytes" : ARCHIVE_COLUMNS;
+        String fanoutColumns = fanout ? FANOUT_COLUMNS : StrUtil.EMPTY;
+        String insertColumns = (v2 ? V2_INSERT_COLUMNS : StrUtil.EMPTY) + (fanout ? FANOUT_INSERT_COLUMNS : StrUtil.EMPTY)
+                + (idGenerator != null ? ID_INSERT_COLUMNS : StrUtil.EMPTY);
+        this.insertTxMsgSql = String.format(INSERT_TX_MSG_SQL, tableName, insertColumns,
+                ", ?".repeat((int) insertColumns.chars().filter(c -> c == ',').count()));
+        this.updateSendMsgSql = String.format(UPDATE_SEND_MSG_SQL, tableName);
+        this.selectWaitingMsgSql = v2 ? String.format(SELECT_WAITING_MSG_V2_SQL, fanoutColumns, tableName) : String.format(SELECT_WAITING_MSG_SQL, tableName);
+        this.selectClaimableMsgSql = String.format(SELECT_CLAIMABLE_MSG_SQL, fanoutColumns, tableName);
+        this.deleteExpiredSendedMsgSql = String.format(deleteExpiredSendedMsgSql(), ackMode == TxMsgAckMode.ARCHIVE ? archiveTableName : tableName);
+        this.countWaitingMsgSql = String.format(COUNT_WAITING_MSG_SQL, tableName);
+        this.selectWaitingTopicsSql = String.format(SELECT_WAITING_TOPICS_SQL, tableName);
+        this.batchUpdateSendMsgSql = new TxMsgInListSql(BATCH_UPDATE_SEND_MSG_SQL, tableName);
+        this.updateLeaseSql = new TxMsgInListSql(UPDATE_LEASE_SQL, tableName);
+        this.lockWaitingMsgSql = new TxMsgInListSql(LOCK_WAITING_MSG_SQL, tableName);
+        this.archiveSentMsgSql = new TxMsgInListSql(ARCHIVE_SENT_MSG_SQL, archiveTableName, archiveColumns, archiveColumns, tableName);
+        this.deleteAckedMsgSql = new TxMsgInListSql(DELETE_ACKED_MSG_SQL, tableName);
+        this.markSendFailedSql = new TxMsgInListSql(markSendFailedSql(), tableName);
+        this.resetFailedMsgSql = new TxMsgInListSql(RESET_FAILED_MSG_SQL, tableName);
+        this.ackDestinationsSql = new TxMsgInListSql(ackDestinationsSql(), tableName);
         initializeTable();
     }
 
@@ -85,22 +362,132 @@ public class TxMsgSqlStore {
     private void initializeTable() {
         try {
             // Check if table exists
-            if (!isTableExists()) {
+            if (!isTableExists(tableName)) {
                 // Create table if it does not exist
-                createTable();
+                createTable(tableName, idGenerator == null ? createTableSql() : withoutIdSequence(createTableSql()));
+            } else if (tableVersion == TxMsgTableVersion.V2 && !isColumnsExist(CHECK_V2_COLUMNS_EXIST_SQL, tableName)) {
+                throw new TxMsgException("Table " + tableName + " is not in V2 layout, run TxMsgTableMigrator#migrateToV2 first");
+            } else if (claimWaitingMessages && !isColumnsExist(CHECK_LEASE_COLUMNS_EXIST_SQL, tableName)) {
+                throw new TxMsgException("Table " + tableName + " has no lease columns, run TxMsgTableMigrator#migrateToV2 first");
+            } else if (fanout && !isColumnsExist(CHECK_FANOUT_COLUMNS_EXIST_SQL, tableName)) {
+                throw new TxMsgException("Table " + tableName + " has no fanout columns, run TxMsgTableMigrator#migrateToV2 first");
+            } else if (idGenerator != null && hasIdSequence()) {
+                throw new TxMsgException("Table " + tableName + " still assigns ids itself, stop every writer and drop the id sequence "
+                        + "(TxMsgTableMigrator#dropIdSequence) before switching them to the id generator");
             }
+            if (partitionManager != null) {
+                if (!partitionManager.isPartitioned()) {
+                    throw new TxMsgException("Table " + tableName + " is not partitioned, the partitioned layout is only created for a new table");
+                }
+                partitionManager.createPartitions();
+            }
+            if (ackMode == TxMsgAckMode.ARCHIVE) {
+                if (!isTableExists(archiveTableName)) {
+                    createTable(archiveTableName, createArchiveTableSql());
+                } else if (tableVersion == TxMsgTableVersion.V2 && !isColumnsExist(CHECK_CODEC_COLUMNS_EXIST_SQL, archiveTableName)) {
+                    throw new TxMsgException("Archive table " + archiveTableName + " is not in V2 layout, run TxMsgTableMigrator#migrateArchiveTableToV2 first");
+                }
+            }
+        } catch (TxMsgException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Exception occurred during table initialization", e);
             throw new TxMsgException("Exception occurred during table initialization", e);
         }
     }
 
+    /**
+     * CREATE TABLE statement of the message table, formatted with the table name
+     * Called from the constructor, overrides must not depend on subclass instance fields
+     */
+    protected String createTableSql() {
+        if (partitionManager != null) {
+            return CREATE_PARTITIONED_TABLE_V2_SQL;
+        }
+        return tableVersion == TxMsgTableVersion.V2 ? CREATE_TABLE_V2_SQL : CREATE_TABLE_SQL;
+    }
+
+    /**
+     * CREATE TABLE statement of a table whose ids are assigned by the {@link TxMsgIdGenerator}
+     *
+     * @param createTableSql CREATE TABLE statement of the message table
+     */
+    protected String withoutIdSequence(String createTableSql) {
+        return createTableSql.replace(" AUTO_INCREMENT", StrUtil.EMPTY);
+    }
+
+    /**
+     * Query counting the id columns of the table (name as its only parameter) that are assigned by the database
+     * Called from the constructor, overrides must not depend on subclass instance fields
+     */
+    protected String checkIdSequenceSql() {
+        return CHECK_ID_SEQUENCE_SQL;
+    }
+
+    /**
+     * Whether the database still assigns the ids of the message table. A writer inserting without an id generator
+     * would then move the sequence past the generated ids and collide with the ids generated later
+     */
+    private boolean hasIdSequence() {
+        Integer columns = jdbcTemplate.queryForObject(checkIdSequenceSql(), Integer.class, tableName);
+        return columns != null && columns > 0;
+    }
+
+    /**
+     * Whether uncompressed content is bound to the text column as its UTF-8 bytes, so content given as bytes is
+     * never decoded to a String. MySQL stores bytes bound to a utf8mb4 column as they are
+     */
+    protected boolean bindContentBytes() {
+        return true;
+    }
+
+    /**
+     * Whether a duplicate key error was raised by the unique msg_key index rather than the primary key
+     * The default matches the index name (uk_msgkey, uk_{table}_msgkey) in the error message
+     *
+     * @param e Duplicate key error of an insert
+     */
+    protected boolean isMsgKeyDuplicate(DuplicateKeyException e) {
+        String message = e.getMessage();
+        return message != null && message.toLowerCase(Locale.ROOT).contains("msgkey");
+    }
+
+    /**
+     * Error of an insert rejected by a unique index: a duplicate msg_key, or an id assigned twice (a writer
+     * without the id generator or two generators sharing a worker id)
+     */
+    private TxMsgException duplicateKeyException(String operation, DuplicateKeyException e) {
+        if (idGenerator == null || isMsgKeyDuplicate(e)) {
+            return new TxMsgDuplicateKeyException("Duplicate key exception occurred while " + operation, e);
+        }
+        return new TxMsgStoreException("Duplicate message id occurred while " + operation
+                + ", check that every writer uses the id generator with a distinct worker id", e);
+    }
+
+    /**
+     * CREATE TABLE statement without the index comments, for databases accepting the MySQL table syntax except
+     * index comments (H2 in MySQL mode, used by the benchmarks and tests through a {@link #createTableSql()} override)
+     *
+     * @param createTableSql CREATE TABLE statement of the message or archive table
+     */
+    protected static String withoutIndexComments(String createTableSql) {
+        return createTableSql.replaceAll("USING BTREE COMMENT '[^']*'", "USING BTREE");
+    }
+
+    /**
+     * CREATE TABLE statement of the archive table, formatted with the archive table name
+     */
+    protected String createArchiveTableSql() {
+        return CREATE_ARCHIVE_TABLE_SQL;
+    }
+
     /**
      * Check if table exists
      *
+     * @param tableName Table name
      * @return Whether table exists
      */
-    private boolean isTableExists() {
+    private boolean isTableExists(String tableName) {
         try {
             // Use a simple query to detect if table exists
             String checkSql = String.format(CHECK_TABLE_EXISTS_SQL, tableName);
@@ -113,12 +500,26 @@ public class TxMsgSqlStore {
         }
     }
 
+    /**
+     * Check if the columns selected by the given query exist
+     *
+     * @return Whether the columns exist
+     */
+    private boolean isColumnsExist(String checkColumnsSql, String tableName) {
+        try {
+            jdbcTemplate.queryForList(String.format(checkColumnsSql, tableName));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     /**
      * Create table
      */
-    private void createTable() {
+    private void createTable(String tableName, String createTableSql) {
         try {
-            jdbcTemplate.execute(String.format(CREATE_TABLE_SQL, tableName));
+            jdbcTemplate.execute(String.format(createTableSql, tableName));
             logger.info("Successfully created table {}", tableName);
         } catch (Exception e) {
             logger.error("Failed to create table {}", tableName, e);
@@ -133,36 +534,64 @@ public class TxMsgSqlStore {
      * @param msgKey  Message unique identifier
      * @return Inserted message model
      */
+    @Override
     public TxMsgModel insertTxMsg(String content, String msgKey, String msgTag) {
         // Parameter validation
         Assert.hasText(content, "Message content cannot be empty");
-        Assert.hasText(msgKey, "Message key cannot be empty");
+        return insertTxMsg(new TxMsgParam(msgKey, msgTag, content));
+    }
+
+    /**
+     * Insert transactional message (status is waiting to send)
+     * The UTF-8 bytes of the content are reused for compression and by the returned model. With an id generator the
+     * id is assigned before the insert, otherwise it is read back from the generated keys
+     *
+     * @param txMsgParam Message to insert
+     * @return Inserted message model
+     */
+    @Override
+    public TxMsgModel insertTxMsg(TxMsgParam txMsgParam) {
+        Assert.notNull(txMsgParam, "Message cannot be null");
+        checkTxMsgParam(txMsgParam);
+        String msgKey = txMsgParam.getMsgKey();
+        String msgTag = Optional.ofNullable(txMsgParam.getMsgTag()).orElse(StrUtil.EMPTY);
+        String topic = topicOf(txMsgParam);
 
-        KeyHolder keyHolder = new GeneratedKeyHolder();
         long currentTime = System.currentTimeMillis();
-        String randomFactor = randomNumber.generate();
+        Long assignedId = idGenerator == null ? null : idGenerator.nextId();
+        String randomFactor = assignedId == null ? randomNumber.generate() : randomFactorOf(assignedId);
+        EncodedContent encodedContent = encodeContent(txMsgParam);
+        PreparedStatementSetter insertParams = ps -> {
+            ps.setString(1, msgKey);
+            ps.setString(3, topic);
+            ps.setString(4, msgTag);
+            ps.setInt(5, TxMsgStatusEnum.WAITING.getStatus());
+            ps.setString(6, randomFactor);
+            ps.setLong(7, currentTime);
+            ps.setLong(8, currentTime);
+            setInsertParams(ps, encodedContent, Integer.parseInt(randomFactor), txMsgParam.getDestMask(), assignedId);
+        };
         try {
-            jdbcTemplate.update(connection -> {
-                PreparedStatement ps = connection.prepareStatement(
-                        String.format(INSERT_TX_MSG_SQL, tableName),
-                        Statement.RETURN_GENERATED_KEYS
-                );
-                ps.setString(1, msgKey);
-                ps.setString(2, content);
-                ps.setString(3, topic);
-                ps.setString(4, msgTag);
-                ps.setInt(5, TxMsgStatusEnum.WAITING.getStatus());
-                ps.setString(6, randomFactor);
-                ps.setLong(7, currentTime);
-                ps.setLong(8, currentTime);
-                return ps;
-            }, keyHolder);
-            Long id = keyHolder.getKey().longValue();
+            Long id = assignedId;
+            if (id == null) {
+                KeyHolder keyHolder = new GeneratedKeyHolder();
+                jdbcTemplate.update(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(
+                            insertTxMsgSql,
+                            GENERATED_KEY_COLUMNS
+                    );
+                    insertParams.setValues(ps);
+                    return ps;
+                }, keyHolder);
+                id = keyHolder.getKey().longValue();
+            } else {
+                jdbcTemplate.update(insertTxMsgSql, insertParams);
+            }
             logger.debug("Transactional message inserted successfully, id: {}, topic: {}, msgKey: {}", id, topic, msgKey);
-            return buildTxMsgModel(id, content, topic, msgKey, msgTag, TxMsgStatusEnum.WAITING.getStatus(), randomFactor, currentTime);
+            return buildTxMsgModel(id, txMsgParam, TxMsgStatusEnum.WAITING.getStatus(), randomFactor, currentTime);
         } catch (DuplicateKeyException e) {
             logger.warn("Duplicate key exception occurred while inserting transactional message, topic: {}, msgKey: {}", topic, msgKey, e);
-            throw new TxMsgDuplicateKeyException("Duplicate key exception occurred while inserting transactional message", e);
+            throw duplicateKeyException("inserting transactional message", e);
         } catch (Exception e) {
             logger.error("Exception occurred while inserting transactional message, topic: {}, msgKey: {}", topic, msgKey, e);
             throw new TxMsgStoreException("Exception occurred while inserting transactional message", e);
@@ -170,18 +599,99 @@ public class TxMsgSqlStore {
     }
 
     /**
-     * Update message status to sent
+     * Batch insert transactional messages (status is waiting to send)
+     * All messages are written with one JDBC batch (a single multi-row INSERT when the MySQL
+     * driver is configured with rewriteBatchedStatements=true), and the ids (assigned by the id generator, or the
+     * generated keys) are returned in the same order as the given messages
+     *
+     * @param txMsgParams Messages to insert
+     * @return Inserted message models
+     */
+    @Override
+    public List<TxMsgModel> batchInsertTxMsg(List<TxMsgParam> txMsgParams) {
+        Assert.notEmpty(txMsgParams, "Message list cannot be empty");
+        txMsgParams.forEach(this::checkTxMsgParam);
+
+        long currentTime = System.currentTimeMillis();
+        List<Long> assignedIds = idGenerator == null ? null : txMsgParams.stream().map(param -> idGenerator.nextId()).toList();
+        List<String> randomFactors = assignedIds == null
+                ? txMsgParams.stream().map(param -> randomNumber.generate()).toList()
+                : assignedIds.stream().map(this::randomFactorOf).toList();
+        List<EncodedContent> encodedContents = txMsgParams.stream().map(this::encodeContent).toList();
+        BatchPreparedStatementSetter insertParams = new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                TxMsgParam param = txMsgParams.get(i);
+                ps.setString(1, param.getMsgKey());
+                ps.setString(3, topicOf(param));
+                ps.setString(4, Optional.ofNullable(param.getMsgTag()).orElse(StrUtil.EMPTY));
+                ps.setInt(5, TxMsgStatusEnum.WAITING.getStatus());
+                ps.setString(6, randomFactors.get(i));
+                ps.setLong(7, currentTime);
+                ps.setLong(8, currentTime);
+                setInsertParams(ps, encodedContents.get(i), Integer.parseInt(randomFactors.get(i)), param.getDestMask(),
+                        assignedIds == null ? null : assignedIds.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return txMsgParams.size();
+            }
+        };
+        try {
+            List<Long> ids = assignedIds;
+            if (ids == null) {
+                KeyHolder keyHolder = new GeneratedKeyHolder();
+                jdbcTemplate.batchUpdate(
+                        connection -> connection.prepareStatement(
+                                insertTxMsgSql,
+                                GENERATED_KEY_COLUMNS
+                        ),
+                        insertParams,
+                        keyHolder
+                );
+                List<Map<String, Object>> keyList = keyHolder.getKeyList();
+                if (keyList.size() != txMsgParams.size()) {
+                    throw new TxMsgStoreException("Generated key count " + keyList.size() + " does not match message count " + txMsgParams.size());
+                }
+                ids = keyList.stream().map(keys -> ((Number) keys.values().iterator().next()).longValue()).toList();
+            } else {
+                jdbcTemplate.batchUpdate(insertTxMsgSql, insertParams);
+            }
+            List<TxMsgModel> txMsgModels = new ArrayList<>(txMsgParams.size());
+            for (int i = 0; i < txMsgParams.size(); i++) {
+                txMsgModels.add(buildTxMsgModel(ids.get(i), txMsgParams.get(i), TxMsgStatusEnum.WAITING.getStatus(), randomFactors.get(i), currentTime));
+            }
+            logger.debug("Transactional messages batch inserted successfully, count: {}, default topic: {}", txMsgModels.size(), topic);
+            return txMsgModels;
+        } catch (DuplicateKeyException e) {
+            logger.warn("Duplicate key exception occurred while batch inserting transactional messages, default topic: {}", topic, e);
+            throw duplicateKeyException("batch inserting transactional messages", e);
+        } catch (TxMsgStoreException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Exception occurred while batch inserting transactional messages, default topic: {}", topic, e);
+            throw new TxMsgStoreException("Exception occurred while batch inserting transactional messages", e);
+        }
+    }
+
+    /**
+     * Update message status to sent (acknowledged according to the ack mode when it is not MARK_SENT)
      *
      * @param txMsgModel Message model
      * @return Number of affected rows
      */
+    @Override
     public int updateSendMsg(TxMsgModel txMsgModel) {
         Assert.notNull(txMsgModel, "Message model cannot be null");
         Assert.notNull(txMsgModel.getId(), "Message ID cannot be null");
+        if (ackMode != TxMsgAckMode.MARK_SENT) {
+            return ackSentMsg(List.of(txMsgModel.getId()));
+        }
 
         try {
             int rows = jdbcTemplate.update(
-                    String.format(UPDATE_SEND_MSG_SQL, tableName),
+                    updateSendMsgSql,
                     TxMsgStatusEnum.SENT.getStatus(),
                     System.currentTimeMillis(),
                     txMsgModel.getId(),
@@ -201,16 +711,31 @@ public class TxMsgSqlStore {
 
     /**
      * Get list of messages waiting to send
+     * With the V2 table layout only messages whose next retry time is due are returned. When claiming is enabled the
+     * returned messages are leased to this store and skipped by other scanners until they are acknowledged, their
+     * send fails or the lease expires
      *
      * @param pageSize Page size
      * @return List of messages waiting to send
      */
+    @Override
     public List<TxMsgModel> getWaitingMessages(int pageSize, Long maxId, String shardTailNumber) {
         Assert.isTrue(pageSize > 0, "Page size must be greater than 0");
+        if (claimWaitingMessages) {
+            return claimWaitingMessages(pageSize, maxId, shardTailNumber);
+        }
 
         try {
+            if (tableVersion == TxMsgTableVersion.V2) {
+                int[] shardRange = shardRange(shardTailNumber);
+                return jdbcTemplate.query(
+                        selectWaitingMsgSql,
+                        new TxMsgRowMapper(true, fanout),
+                        TxMsgStatusEnum.WAITING.getStatus(), shardRange[0], shardRange[1], System.currentTimeMillis(), maxId, pageSize
+                );
+            }
             return jdbcTemplate.query(
-                    String.format(SELECT_WAITING_MSG_SQL, tableName),
+                    selectWaitingMsgSql,
                     new Object[]{maxId, TxMsgStatusEnum.WAITING.getStatus(), shardTailNumber + "%", pageSize},
                     new TxMsgRowMapper()
             );
@@ -220,25 +745,64 @@ public class TxMsgSqlStore {
         }
     }
 
+    /**
+     * Claim a page of due messages in one short transaction: SELECT ... FOR UPDATE SKIP LOCKED (MySQL 8.0+) skips the
+     * rows being claimed by another scanner, the lease_until filter skips the rows already claimed and not expired.
+     * The transaction is READ COMMITTED so that only the returned rows are locked, without gap locks
+     */
+    private List<TxMsgModel> claimWaitingMessages(int pageSize, Long maxId, String shardTailNumber) {
+        try {
+            int[] shardRange = shardRange(shardTailNumber);
+            List<TxMsgModel> claimedMessages = claimTransactionTemplate.execute(status -> {
+                long currentTime = System.currentTimeMillis();
+                List<TxMsgModel> messages = jdbcTemplate.query(
+                        selectClaimableMsgSql,
+                        new TxMsgRowMapper(true, fanout),
+                        TxMsgStatusEnum.WAITING.getStatus(), shardRange[0], shardRange[1], currentTime, currentTime, maxId, pageSize
+                );
+                if (messages.isEmpty()) {
+                    return messages;
+                }
+                List<Long> msgIds = messages.stream().map(TxMsgModel::getId).toList();
+                updateLeaseSql.update(jdbcTemplate, new Object[]{leaseOwner, currentTime + leaseMillis}, msgIds);
+                return messages;
+            });
+            logger.debug("Claimed messages waiting to send, count: {}, leaseOwner: {}", claimedMessages == null ? 0 : claimedMessages.size(), leaseOwner);
+            return claimedMessages == null ? List.of() : claimedMessages;
+        } catch (Exception e) {
+            logger.error("Exception occurred while claiming messages waiting to send, pageSize: {}", pageSize, e);
+            throw new TxMsgStoreException("Exception occurred while claiming messages waiting to send", e);
+        }
+    }
+
     /**
      * Delete sent messages that exceed the specified time (batch deletion to avoid large transactions)
+     * With {@link TxMsgAckMode#ARCHIVE} the messages are deleted from the archive table,
+     * with {@link TxMsgAckMode#DELETE} there is nothing to delete.
+     * A partitioned table drops its expired partitions instead (and creates the partitions ahead), the batch size is not used
      *
      * @param expireTime Expiration time (millisecond timestamp, messages less than or equal to this time will be deleted)
      * @param batchSize  Batch size for each deletion
      */
+    @Override
     public void deleteExpiredSendedMsg(Long expireTime, int batchSize, TxMsgStatusEnum statusEnum) {
         Assert.notNull(expireTime, "Expiration time cannot be null");
         Assert.isTrue(batchSize > 0, "Batch size must be greater than 0");
+        if (ackMode == TxMsgAckMode.DELETE) {
+            logger.debug("Messages are deleted when acknowledged, no expired messages to clean up, table: {}", tableName);
+            return;
+        }
+        if (partitionManager != null) {
+            partitionManager.createPartitions();
+            int dropped = partitionManager.dropExpiredPartitions(expireTime, statusEnum);
+            logger.info("Expired partition cleanup completed, table: {}, partitions dropped: {}", tableName, dropped);
+            return;
+        }
 
         try {
             int totalDeleted = 0;
             while (true) {
-                int deleted = jdbcTemplate.update(
-                        String.format(DELETE_EXPIRED_SENDED_MSG_SQL, tableName),
-                        statusEnum.getStatus(),
-                        expireTime,
-                        batchSize
-                );
+                int deleted = jdbcTemplate.update(deleteExpiredSendedMsgSql, statusEnum.getStatus(), expireTime, batchSize);
                 if (deleted <= 0) {
                     break;
                 }
@@ -252,57 +816,335 @@ public class TxMsgSqlStore {
         }
     }
 
+    /**
+     * Statement deleting one batch of expired messages, formatted with the table name
+     * Called from the constructor, overrides must not depend on subclass instance fields
+     */
+    protected String deleteExpiredSendedMsgSql() {
+        return DELETE_EXPIRED_SENDED_MSG_SQL;
+    }
+
+    /**
+     * Acknowledge messages sent to the broker, according to the configured ack mode
+     *
+     * @param successMsgIds IDs of messages acknowledged by the broker
+     * @return Number of messages acknowledged
+     */
+    @Override
+    public int ackSentMsg(List<Long> successMsgIds) {
+        return switch (ackMode) {
+            case MARK_SENT -> batchUpdateSendMsg(successMsgIds);
+            case ARCHIVE -> archiveSentMsg(successMsgIds);
+            case DELETE -> deleteSentMsg(successMsgIds);
+        };
+    }
+
     public int batchUpdateSendMsg(List<Long> successMsgIds) {
         Assert.notNull(successMsgIds, "Message ID list cannot be null");
+        if (successMsgIds.isEmpty()) {
+            return 0;
+        }
+        try {
+            Object[] params = {TxMsgStatusEnum.SENT.getStatus(), System.currentTimeMillis(), TxMsgStatusEnum.WAITING.getStatus()};
+            int updatedRows = batchUpdateSendMsgSql.update(jdbcTemplate, params, successMsgIds);
+            logger.debug("Batch update of message status successful, updated records: {}, message ID list: {}", updatedRows, successMsgIds);
+            return updatedRows;
+        } catch (Exception e) {
+            logger.error("Exception occurred during batch update of message status, message ID list: {}", successMsgIds, e);
+            throw new TxMsgStoreException("Exception occurred during batch update of message status", e);
+        }
+    }
+
+    /**
+     * Move sent messages from the message table to the archive table in one transaction
+     * (lock the waiting rows, INSERT ... SELECT them into the archive table, then DELETE them by id list)
+     *
+     * @param successMsgIds IDs of messages acknowledged by the broker
+     * @return Number of messages moved
+     */
+    public int archiveSentMsg(List<Long> successMsgIds) {
+        Assert.notNull(successMsgIds, "Message ID list cannot be null");
+        if (successMsgIds.isEmpty()) {
+            return 0;
+        }
         try {
-            // Build batch update SQL, use IN clause to update status of multiple IDs
-            StringBuilder sqlBuilder = new StringBuilder();
-            sqlBuilder.append("UPDATE ").append(tableName)
-                    .append(" SET status = ?, update_time = ?")
-                    .append(" WHERE status = ? ")
-                    .append(" AND id IN (");
-
-            // Add placeholders for each ID
-            for (int i = 0; i < successMsgIds.size(); i++) {
-                sqlBuilder.append("?");
-                if (i < successMsgIds.size() - 1) {
-                    sqlBuilder.append(",");
+            Object[] archiveParams = {TxMsgStatusEnum.SENT.getStatus(), System.currentTimeMillis(), TxMsgStatusEnum.WAITING.getStatus()};
+            Object[] waitingParams = {TxMsgStatusEnum.WAITING.getStatus()};
+
+            Integer movedRows = transactionTemplate.execute(status -> {
+                // INSERT ... SELECT only locks the source rows under REPEATABLE READ with statement-based binlog locking,
+                // lock them first so that the DELETE removes exactly the archived rows at any isolation level
+                List<Long> lockedIds = lockWaitingMsgSql.queryForIds(jdbcTemplate, waitingParams, successMsgIds);
+                if (lockedIds.isEmpty()) {
+                    return 0;
                 }
-            }
-            sqlBuilder.append(")");
+                int archivedRows = archiveSentMsgSql.update(jdbcTemplate, archiveParams, lockedIds);
+                int deletedRows = deleteAckedMsgSql.update(jdbcTemplate, waitingParams, lockedIds);
+                if (archivedRows != deletedRows) {
+                    throw new TxMsgStoreException("Archived rows " + archivedRows + " do not match deleted rows " + deletedRows);
+                }
+                return deletedRows;
+            });
+            logger.debug("Sent messages moved to archive table, moved records: {}, message ID list: {}", movedRows, successMsgIds);
+            return movedRows == null ? 0 : movedRows;
+        } catch (Exception e) {
+            logger.error("Exception occurred while archiving sent messages, message ID list: {}", successMsgIds, e);
+            throw new TxMsgStoreException("Exception occurred while archiving sent messages", e);
+        }
+    }
 
-            String sql = sqlBuilder.toString();
+    /**
+     * Delete sent messages by primary key
+     *
+     * @param successMsgIds IDs of messages acknowledged by the broker
+     * @return Number of messages deleted
+     */
+    public int deleteSentMsg(List<Long> successMsgIds) {
+        Assert.notNull(successMsgIds, "Message ID list cannot be null");
+        if (successMsgIds.isEmpty()) {
+            return 0;
+        }
+        try {
+            int deletedRows = deleteAckedMsgSql.update(jdbcTemplate, new Object[]{TxMsgStatusEnum.WAITING.getStatus()}, successMsgIds);
+            logger.debug("Sent messages deleted, deleted records: {}, message ID list: {}", deletedRows, successMsgIds);
+            return deletedRows;
+        } catch (Exception e) {
+            logger.error("Exception occurred while deleting sent messages, message ID list: {}", successMsgIds, e);
+            throw new TxMsgStoreException("Exception occurred while deleting sent messages", e);
+        }
+    }
 
-            // Prepare parameter array
-            Object[] params = new Object[3 + successMsgIds.size()];
-            params[0] = TxMsgStatusEnum.SENT.getStatus();
-            params[1] = System.currentTimeMillis();
-            params[2] = TxMsgStatusEnum.WAITING.getStatus();
+    /**
+     * Record a failed send attempt: the next retry is delayed with exponential backoff
+     * (retry backoff * 2^retry count, capped by the maximum retry backoff), and messages reaching the maximum retry
+     * count are moved to {@link TxMsgStatusEnum#FAILED} so they no longer take part in compensation scans.
+     * Only supported by the V2 table layout, a no-op with V1
+     *
+     * @param failedMsgIds IDs of messages not acknowledged by the broker
+     * @return Number of messages updated
+     */
+    @Override
+    public int markSendFailed(List<Long> failedMsgIds) {
+        Assert.notNull(failedMsgIds, "Message ID list cannot be null");
+        if (failedMsgIds.isEmpty() || tableVersion != TxMsgTableVersion.V2) {
+            return 0;
+        }
+        try {
+            long currentTime = System.currentTimeMillis();
+            Object[] params = {maxRetryCount, TxMsgStatusEnum.FAILED.getStatus(), currentTime, retryBackoffMillis,
+                    maxRetryBackoffMillis, currentTime, TxMsgStatusEnum.WAITING.getStatus()};
+            int updatedRows = markSendFailedSql.update(jdbcTemplate, params, failedMsgIds);
+            logger.debug("Send failure recorded, updated records: {}, message ID list: {}", updatedRows, failedMsgIds);
+            return updatedRows;
+        } catch (Exception e) {
+            logger.error("Exception occurred while recording send failure, message ID list: {}", failedMsgIds, e);
+            throw new TxMsgStoreException("Exception occurred while recording send failure", e);
+        }
+    }
 
-            for (int i = 0; i < successMsgIds.size(); i++) {
-                params[3 + i] = successMsgIds.get(i);
-            }
+    /**
+     * Statement recording a failed send attempt, formatted with the table name and the id placeholders
+     * Called from the constructor, overrides must not depend on subclass instance fields
+     */
+    protected String markSendFailedSql() {
+        return claimWaitingMessages ? MARK_SEND_FAILED_RELEASE_LEASE_SQL : MARK_SEND_FAILED_SQL;
+    }
 
-            int updatedRows = jdbcTemplate.update(sql, params);
-            logger.debug("Batch update of message status successful, updated records: {}, message ID list: {}", updatedRows, successMsgIds);
+    /**
+     * Statement recording destination acknowledgements (bitwise OR into acked_mask), formatted with the table name and
+     * the id placeholders. Called from the constructor, overrides must not depend on subclass instance fields
+     */
+    protected String ackDestinationsSql() {
+        return ACK_DESTINATIONS_SQL;
+    }
+
+    /**
+     * Record that the given destinations acknowledged the messages (fanout store), the messages stay waiting until
+     * they are acknowledged with {@link #ackSentMsg(List)} once every destination did
+     *
+     * @param msgIds   IDs of messages acknowledged by the destinations
+     * @param destMask Bitmask of the acknowledging destinations
+     * @return Number of messages updated
+     */
+    @Override
+    public int ackDestinations(List<Long> msgIds, int destMask) {
+        Assert.notNull(msgIds, "Message ID list cannot be null");
+        Assert.state(fanout, "Destination acknowledgements require a fanout store");
+        if (msgIds.isEmpty()) {
+            return 0;
+        }
+        try {
+            Object[] params = {destMask, System.currentTimeMillis(), TxMsgStatusEnum.WAITING.getStatus()};
+            int updatedRows = ackDestinationsSql.update(jdbcTemplate, params, msgIds);
+            logger.debug("Destination acknowledgements recorded, destMask: {}, updated records: {}, message ID list: {}", destMask, updatedRows, msgIds);
             return updatedRows;
         } catch (Exception e) {
-            logger.error("Exception occurred during batch update of message status, message ID list: {}", successMsgIds, e);
-            throw new TxMsgStoreException("Exception occurred during batch update of message status", e);
+            logger.error("Exception occurred while recording destination acknowledgements, destMask: {}, message ID list: {}", destMask, msgIds, e);
+            throw new TxMsgStoreException("Exception occurred while recording destination acknowledgements", e);
+        }
+    }
+
+    /**
+     * Move dead-lettered messages back to waiting status with a fresh retry budget (e.g. after fixing the broker side)
+     *
+     * @param failedMsgIds IDs of messages in {@link TxMsgStatusEnum#FAILED} status
+     * @return Number of messages reset
+     */
+    @Override
+    public int resetFailedMsg(List<Long> failedMsgIds) {
+        Assert.notEmpty(failedMsgIds, "Message ID list cannot be empty");
+        Assert.isTrue(tableVersion == TxMsgTableVersion.V2, "Failed messages are only supported by the V2 table layout");
+        try {
+            Object[] params = {TxMsgStatusEnum.WAITING.getStatus(), System.currentTimeMillis(), TxMsgStatusEnum.FAILED.getStatus()};
+            int updatedRows = resetFailedMsgSql.update(jdbcTemplate, params, failedMsgIds);
+            logger.info("Failed messages reset to waiting, updated records: {}, message ID list: {}", updatedRows, failedMsgIds);
+            return updatedRows;
+        } catch (Exception e) {
+            logger.error("Exception occurred while resetting failed messages, message ID list: {}", failedMsgIds, e);
+            throw new TxMsgStoreException("Exception occurred while resetting failed messages", e);
+        }
+    }
+
+    /**
+     * Read the backlog of messages waiting to send (including the ones waiting for their retry backoff), per topic
+     * All queries only read the (status, topic, create_time) index: the topics and their oldest create time take one
+     * seek per topic, then each topic's count stops after {@code maxCountedRows} entries
+     *
+     * @param maxCountedRows Maximum number of waiting messages counted per topic
+     * @return Backlog of every topic having messages waiting to send
+     */
+    @Override
+    public List<TxMsgBacklog> getBacklog(int maxCountedRows) {
+        Assert.isTrue(maxCountedRows > 0, "Maximum counted rows must be greater than 0");
+        try {
+            int waiting = TxMsgStatusEnum.WAITING.getStatus();
+            List<Map<String, Object>> topics = jdbcTemplate.queryForList(selectWaitingTopicsSql, waiting);
+            List<TxMsgBacklog> backlogs = new ArrayList<>(topics.size());
+            for (Map<String, Object> row : topics) {
+                String topic = (String) row.get("topic");
+                Long pendingCount = jdbcTemplate.queryForObject(countWaitingMsgSql, Long.class, waiting, topic, maxCountedRows);
+                backlogs.add(new TxMsgBacklog(topic, pendingCount == null ? 0 : pendingCount, ((Number) row.get("oldest_create_time")).longValue()));
+            }
+            return backlogs;
+        } catch (Exception e) {
+            logger.error("Exception occurred while querying message backlog, table: {}", tableName, e);
+            throw new TxMsgStoreException("Exception occurred while querying message backlog", e);
+        }
+    }
+
+    @Override
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    /**
+     * Compress the content with the configured codec, content under the compress threshold or that does not shrink
+     * is kept as text (the codec is recorded per row)
+     */
+    private EncodedContent encodeContent(TxMsgParam txMsgParam) {
+        if (contentCodec == TxMsgContentCodec.NONE) {
+            return EncodedContent.ofText(txMsgParam);
+        }
+        // Compressed straight from the UTF-8 bytes, the content is only decoded to a String when stored as text
+        byte[] data = txMsgParam.getContentBytes();
+        if (data.length < contentCompressThreshold) {
+            return EncodedContent.ofText(txMsgParam);
+        }
+        byte[] encoded = contentCodec.encode(data);
+        if (encoded.length >= data.length) {
+            return EncodedContent.ofText(txMsgParam);
+        }
+        return new EncodedContent(null, contentCodec, encoded);
+    }
+
+    private void checkTxMsgParam(TxMsgParam txMsgParam) {
+        byte[] contentBytes = txMsgParam.getContentBytes();
+        Assert.isTrue(contentBytes != null && contentBytes.length > 0, "Message content cannot be empty");
+        Assert.hasText(txMsgParam.getMsgKey(), "Message key cannot be empty");
+        Assert.isTrue(topicOf(txMsgParam).length() <= 255, "Message topic length cannot exceed 255 characters");
+        Assert.isTrue(txMsgParam.getDestMask() == 0 || fanout, "Destination mask requires a fanout store");
+    }
+
+    /**
+     * Topic of the message, the default topic of the store when the message carries none
+     */
+    private String topicOf(TxMsgParam txMsgParam) {
+        return StrUtil.isNotEmpty(txMsgParam.getTopic()) ? txMsgParam.getTopic() : topic;
+    }
+
+    /**
+     * Set the content parameter (2) and the extra columns following the 8 common ones of the insert statement:
+     * shard and content codec columns (V2 table layout), destination mask (fanout store), id (id generator)
+     */
+    private void setInsertParams(PreparedStatement ps, EncodedContent encodedContent, int shard, int destMask, Long id) throws SQLException {
+        TxMsgParam text = encodedContent.text();
+        if (text == null) {
+            ps.setString(2, StrUtil.EMPTY);
+        } else if (bindContentBytes()) {
+            ps.setBytes(2, text.getContentBytes());
+        } else {
+            ps.setString(2, text.getContent());
+        }
+        int index = 9;
+        if (tableVersion == TxMsgTableVersion.V2) {
+            ps.setInt(index++, shard);
+            ps.setInt(index++, encodedContent.codec().getCode());
+            ps.setBytes(index++, encodedContent.bytes());
+        }
+        if (fanout) {
+            ps.setInt(index++, destMask);
+        }
+        if (id != null) {
+            ps.setLong(index, id);
+        }
+    }
+
+    /**
+     * Random factor derived from an id assigned by the id generator, zero padded to the random factor length
+     */
+    private String randomFactorOf(long id) {
+        return String.format("%0" + randomFactorLength + "d", TxMsgIdGenerator.shardOf(id, randomFactorLength));
+    }
+
+    /**
+     * Content as written to the table: the message stored as text, or the codec and the compressed bytes
+     */
+    private record EncodedContent(TxMsgParam text, TxMsgContentCodec codec, byte[] bytes) {
+
+        static EncodedContent ofText(TxMsgParam txMsgParam) {
+            return new EncodedContent(txMsgParam, TxMsgContentCodec.NONE, null);
         }
     }
 
+    /**
+     * Convert a shard tail number (random factor prefix) to the inclusive range of numeric shard values it covers,
+     * e.g. with random factor length 6, tail "03" covers shards 30000 to 39999
+     */
+    protected int[] shardRange(String shardTailNumber) {
+        String prefix = Optional.ofNullable(shardTailNumber).orElse(StrUtil.EMPTY);
+        Assert.isTrue(prefix.length() <= randomFactorLength, "Shard tail number cannot be longer than the random factor");
+        int span = (int) Math.pow(10, randomFactorLength - prefix.length());
+        int low = prefix.isEmpty() ? 0 : Integer.parseInt(prefix) * span;
+        return new int[]{low, low + span - 1};
+    }
+
     /**
      * Build message model
      */
-    private TxMsgModel buildTxMsgModel(Long id, String content, String topic, String msgKey, String msgTag, int status, String randomFactor, long createTime) {
+    private TxMsgModel buildTxMsgModel(Long id, TxMsgParam txMsgParam, int status, String randomFactor, long createTime) {
         TxMsgModel model = new TxMsgModel();
         model.setId(id);
-        model.setContent(content);
-        model.setTopic(topic);
-        model.setMsgTag(msgTag);
-        model.setMsgKey(msgKey);
+        // The handlers send the UTF-8 bytes, the String is only rebuilt if asked for
+        model.setContentBytes(txMsgParam.getContentBytes());
+        model.setTopic(topicOf(txMsgParam));
+        model.setMsgTag(Optional.ofNullable(txMsgParam.getMsgTag()).orElse(StrUtil.EMPTY));
+        model.setMsgKey(txMsgParam.getMsgKey());
         model.setStatus(status);
+        model.setDestMask(txMsgParam.getDestMask());
         model.setRandomFactor(randomFactor);
         model.setCreateTime(createTime);
         model.setUpdateTime(createTime);
@@ -311,18 +1153,50 @@ public class TxMsgSqlStore {
 
 
     public static class TxMsgRowMapper implements RowMapper<TxMsgModel> {
+        /**
+         * Whether the result set has the content_codec and content_bytes columns (V2 table layout)
+         */
+        private final boolean withContentCodec;
+        /**
+         * Whether the result set has the dest_mask and acked_mask columns (fanout store)
+         */
+        private final boolean withFanout;
+
+        public TxMsgRowMapper() {
+            this(false);
+        }
+
+        public TxMsgRowMapper(boolean withContentCodec) {
+            this(withContentCodec, false);
+        }
+
+        public TxMsgRowMapper(boolean withContentCodec, boolean withFanout) {
+            this.withContentCodec = withContentCodec;
+            this.withFanout = withFanout;
+        }
+
         @Override
         public TxMsgModel mapRow(ResultSet rs, int rowNum) throws SQLException {
             TxMsgModel model = new TxMsgModel();
             model.setId(rs.getLong("id"));
             model.setMsgKey(rs.getString("msg_key"));
-            model.setContent(rs.getString("content"));
+            int contentCodec = withContentCodec ? rs.getInt("content_codec") : TxMsgContentCodec.NONE.getCode();
+            if (contentCodec == TxMsgContentCodec.NONE.getCode()) {
+                model.setContent(rs.getString("content"));
+            } else {
+                // Decompressed at send time
+                model.setEncodedContent(TxMsgContentCodec.fromCode(contentCodec), rs.getBytes("content_bytes"));
+            }
             model.setTopic(rs.getString("topic"));
             model.setMsgTag(rs.getString("msg_tag"));
             model.setStatus(rs.getInt("status"));
             model.setRandomFactor(rs.getString("random_factor"));
             model.setCreateTime(rs.getLong("create_time"));
             model.setUpdateTime(rs.getLong("update_time"));
+            if (withFanout) {
+                model.setDestMask(rs.getInt("dest_mask"));
+                model.setAckedMask(rs.getInt("acked_mask"));
+            }
             return model;
         }
     }
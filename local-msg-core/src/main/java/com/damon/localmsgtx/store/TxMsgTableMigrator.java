@@ -0,0 +1,201 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.exception.TxMsgStoreException;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+
+/**
+ * Migrates an existing transactional message table between layout versions
+ * <p>
+ * Upgrade from V1 to V2 during a rolling deployment:
+ * <ol>
+ *     <li>run {@link #migrateToV2(int)} (adds the shard, retry, codec, lease and fanout columns and the indexes online, backfills existing rows)</li>
+ *     <li>switch all nodes to {@link TxMsgTableVersion#V2}</li>
+ *     <li>run {@link #migrateToV2(int)} again to backfill rows inserted by V1 nodes during the rollout (it is idempotent)</li>
+ *     <li>run {@link #dropV1ShardIndex()} once no V1 node is left</li>
+ * </ol>
+ * With {@link TxMsgAckMode#ARCHIVE}, also run {@link #migrateArchiveTableToV2(String)} before switching nodes to V2
+ */
+public class TxMsgTableMigrator {
+    private static final Logger logger = LoggerFactory.getLogger(TxMsgTableMigrator.class);
+
+    private final String CHECK_COLUMN_EXISTS_SQL = "SELECT %s FROM %s LIMIT 1";
+    private final String ADD_V2_COLUMNS_SQL = "ALTER TABLE %s " +
+            "ADD COLUMN shard int NOT NULL DEFAULT -1 COMMENT '分片号（随机因子的数值，插入时计算）' AFTER random_factor, " +
+            "ADD COLUMN retry_count int NOT NULL DEFAULT 0 COMMENT '发送失败次数' AFTER shard, " +
+            "ADD COLUMN next_retry_time bigint NOT NULL DEFAULT 0 COMMENT '下次重试时间（毫秒时间戳，指数退避）' AFTER retry_count, " +
+            "ADD KEY idx_status_shard_retry (status, shard, next_retry_time), ALGORITHM=INPLACE, LOCK=NONE";
+    /**
+     * For tables migrated before the retry columns existed (they already have the shard column and idx_status_shard_id)
+     */
+    private final String ADD_RETRY_COLUMNS_SQL = "ALTER TABLE %s " +
+            "ADD COLUMN retry_count int NOT NULL DEFAULT 0 COMMENT '发送失败次数' AFTER shard, " +
+            "ADD COLUMN next_retry_time bigint NOT NULL DEFAULT 0 COMMENT '下次重试时间（毫秒时间戳，指数退避）' AFTER retry_count, " +
+            "ADD KEY idx_status_shard_retry (status, shard, next_retry_time), " +
+            "DROP INDEX idx_status_shard_id, ALGORITHM=INPLACE, LOCK=NONE";
+    private final String ADD_CODEC_COLUMNS_SQL = "ALTER TABLE %s " +
+            "ADD COLUMN content_codec tinyint NOT NULL DEFAULT 0 COMMENT '消息内容压缩算法：0-不压缩，1-LZ4，2-DEFLATE' AFTER content, " +
+            "ADD COLUMN content_bytes mediumblob NULL COMMENT '压缩后的消息内容' AFTER content_codec, ALGORITHM=INPLACE, LOCK=NONE";
+    private final String ADD_LEASE_COLUMNS_SQL = "ALTER TABLE %s " +
+            "ADD COLUMN lease_owner varchar(128) NULL COMMENT '认领消息的节点' AFTER next_retry_time, " +
+            "ADD COLUMN lease_until bigint NOT NULL DEFAULT 0 COMMENT '认领到期时间（毫秒时间戳），到期前其他节点不会发送该消息' AFTER lease_owner, " +
+            "ALGORITHM=INPLACE, LOCK=NONE";
+    private final String ADD_FANOUT_COLUMNS_SQL = "ALTER TABLE %s " +
+            "ADD COLUMN dest_mask int NOT NULL DEFAULT 0 COMMENT '投递目标位图（扇出消息，0-全部目标）' AFTER lease_until, " +
+            "ADD COLUMN acked_mask int NOT NULL DEFAULT 0 COMMENT '已确认的投递目标位图' AFTER dest_mask, " +
+            "ALGORITHM=INPLACE, LOCK=NONE";
+    private final String CHECK_INDEX_EXISTS_SQL = "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?";
+    private final String ADD_BACKLOG_INDEX_SQL = "ALTER TABLE %s ADD KEY idx_status_topic_createtime (status, topic, create_time), ALGORITHM=INPLACE, LOCK=NONE";
+    private final String BACKFILL_SHARD_SQL = "UPDATE %s SET shard = CAST(random_factor AS SIGNED) WHERE status = ? AND shard = -1 LIMIT ?";
+    private final String DROP_V1_SHARD_INDEX_SQL = "ALTER TABLE %s DROP INDEX idx_randomfactor";
+    private final String DROP_ID_SEQUENCE_SQL = "ALTER TABLE %s MODIFY COLUMN id bigint NOT NULL COMMENT '主键ID'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String tableName;
+
+    public TxMsgTableMigrator(DataSource dataSource, String tableName) {
+        Assert.notNull(dataSource, "Data source cannot be null");
+        Assert.hasText(tableName, "Table name cannot be empty");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.tableName = tableName;
+    }
+
+    /**
+     * Upgrade a V1 table to the V2 layout
+     *
+     * @param batchSize Number of rows backfilled per statement
+     * @return Number of rows backfilled
+     */
+    public int migrateToV2(int batchSize) {
+        Assert.isTrue(batchSize > 0, "Batch size must be greater than 0");
+        try {
+            if (!isColumnExists("shard")) {
+                jdbcTemplate.execute(String.format(ADD_V2_COLUMNS_SQL, tableName));
+                logger.info("Added shard and retry columns and idx_status_shard_retry index to table {}", tableName);
+            } else if (!isColumnExists("retry_count")) {
+                jdbcTemplate.execute(String.format(ADD_RETRY_COLUMNS_SQL, tableName));
+                logger.info("Added retry columns and idx_status_shard_retry index to table {}", tableName);
+            }
+            addCodecColumns(tableName);
+            addLeaseColumns();
+            addFanoutColumns();
+            addBacklogIndex();
+            // Waiting rows first, they are the only ones compensation scans read
+            int totalBackfilled = backfillShard(TxMsgStatusEnum.WAITING, batchSize)
+                    + backfillShard(TxMsgStatusEnum.SENT, batchSize);
+            logger.info("Table {} migrated to V2 layout, rows backfilled: {}", tableName, totalBackfilled);
+            return totalBackfilled;
+        } catch (Exception e) {
+            logger.error("Exception occurred while migrating table {} to V2 layout", tableName, e);
+            throw new TxMsgStoreException("Exception occurred while migrating table to V2 layout: " + tableName, e);
+        }
+    }
+
+    /**
+     * Upgrade the archive table (used by {@link TxMsgAckMode#ARCHIVE}) to the V2 layout, i.e. add the content codec columns
+     *
+     * @param archiveTableName Archive table name
+     */
+    public void migrateArchiveTableToV2(String archiveTableName) {
+        Assert.hasText(archiveTableName, "Archive table name cannot be empty");
+        try {
+            addCodecColumns(archiveTableName);
+        } catch (Exception e) {
+            logger.error("Exception occurred while migrating archive table {} to V2 layout", archiveTableName, e);
+            throw new TxMsgStoreException("Exception occurred while migrating archive table to V2 layout: " + archiveTableName, e);
+        }
+    }
+
+    /**
+     * Drop the V1 random_factor index, only needed by V1 nodes
+     */
+    public void dropV1ShardIndex() {
+        try {
+            jdbcTemplate.execute(String.format(DROP_V1_SHARD_INDEX_SQL, tableName));
+            logger.info("Dropped idx_randomfactor index of table {}", tableName);
+        } catch (Exception e) {
+            logger.error("Exception occurred while dropping idx_randomfactor index of table {}", tableName, e);
+            throw new TxMsgStoreException("Exception occurred while dropping V1 shard index: " + tableName, e);
+        }
+    }
+
+    /**
+     * Drop AUTO_INCREMENT from the id column before switching to {@link com.damon.localmsgtx.config.TxMsgStoreConfig#setIdGenerator}
+     * <p>
+     * Run it while no node writes the table, then start every node with the id generator. A node left without the
+     * generator fails its inserts (the id has no default value) instead of moving the sequence past generated ids
+     * and colliding with them. Depending on the MySQL version the ALTER may copy the table
+     */
+    public void dropIdSequence() {
+        try {
+            jdbcTemplate.execute(String.format(DROP_ID_SEQUENCE_SQL, tableName));
+            logger.info("Dropped AUTO_INCREMENT of table {}", tableName);
+        } catch (Exception e) {
+            logger.error("Exception occurred while dropping AUTO_INCREMENT of table {}", tableName, e);
+            throw new TxMsgStoreException("Exception occurred while dropping id sequence: " + tableName, e);
+        }
+    }
+
+    private int backfillShard(TxMsgStatusEnum statusEnum, int batchSize) {
+        int totalBackfilled = 0;
+        while (true) {
+            int updated = jdbcTemplate.update(String.format(BACKFILL_SHARD_SQL, tableName), statusEnum.getStatus(), batchSize);
+            if (updated <= 0) {
+                break;
+            }
+            totalBackfilled += updated;
+            logger.info("Backfilled shard of {} messages with status {}, total: {}", updated, statusEnum, totalBackfilled);
+        }
+        return totalBackfilled;
+    }
+
+    private void addCodecColumns(String table) {
+        if (!isColumnExists(table, "content_codec")) {
+            jdbcTemplate.execute(String.format(ADD_CODEC_COLUMNS_SQL, table));
+            logger.info("Added content codec columns to table {}", table);
+        }
+    }
+
+    private void addLeaseColumns() {
+        if (!isColumnExists("lease_owner")) {
+            jdbcTemplate.execute(String.format(ADD_LEASE_COLUMNS_SQL, tableName));
+            logger.info("Added lease columns to table {}", tableName);
+        }
+    }
+
+    private void addFanoutColumns() {
+        if (!isColumnExists("dest_mask")) {
+            jdbcTemplate.execute(String.format(ADD_FANOUT_COLUMNS_SQL, tableName));
+            logger.info("Added fanout columns to table {}", tableName);
+        }
+    }
+
+    /**
+     * Per-topic backlog queries of {@link TxMsgSqlStore#getBacklog(int)}, tables created before it existed lack the index
+     */
+    private void addBacklogIndex() {
+        Integer indexes = jdbcTemplate.queryForObject(CHECK_INDEX_EXISTS_SQL, Integer.class, tableName, "idx_status_topic_createtime");
+        if (indexes == null || indexes == 0) {
+            jdbcTemplate.execute(String.format(ADD_BACKLOG_INDEX_SQL, tableName));
+            logger.info("Added idx_status_topic_createtime index to table {}", tableName);
+        }
+    }
+
+    private boolean isColumnExists(String columnName) {
+        return isColumnExists(tableName, columnName);
+    }
+
+    private boolean isColumnExists(String table, String columnName) {
+        try {
+            jdbcTemplate.queryForList(String.format(CHECK_COLUMN_EXISTS_SQL, columnName, table));
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
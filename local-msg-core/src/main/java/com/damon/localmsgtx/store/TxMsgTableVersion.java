@@ -0,0 +1,18 @@
+package com.damon.localmsgtx.store;
+
+/**
+ * Transactional message table layout versions
+ */
+public enum TxMsgTableVersion {
+
+    /**
+     * Original layout: shard scans filter with {@code random_factor LIKE 'x%'} on a single-column index
+     */
+    V1,
+    /**
+     * Numeric {@code shard} column computed at insert time with a composite
+     * {@code idx_status_shard_retry (status, shard, next_retry_time)} index,
+     * so compensation scans only read pending rows. Existing V1 tables are upgraded with {@link TxMsgTableMigrator}
+     */
+    V2
+}
@@ -0,0 +1,184 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import com.damon.localmsgtx.exception.TxMsgStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assigns a worker id of {@link TxMsgIdGenerator} to this node through a lease row in a shared table
+ * <p>
+ * {@link #start()} takes the lowest free worker id (or one whose lease expired) and a background thread renews the
+ * lease every third of its duration. While the lease is not renewed in time the worker id is refused, so two nodes
+ * never generate ids with the same worker id; a lease taken over by another node is replaced by a new worker id.
+ * The clock skew between the nodes must stay well below the lease duration
+ */
+public class TxMsgWorkerIdLease implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TxMsgWorkerIdLease.class);
+
+    private final String CHECK_TABLE_EXISTS_SQL = "SELECT * FROM %s LIMIT 1";
+    /**
+     * Plain DDL shared by MySQL and PostgreSQL
+     */
+    private final String CREATE_LEASE_TABLE_SQL = "CREATE TABLE %s (worker_id int NOT NULL, lease_owner varchar(128) NOT NULL, " +
+            "lease_until bigint NOT NULL, PRIMARY KEY (worker_id))";
+    private final String SELECT_WORKER_IDS_SQL = "SELECT worker_id FROM %s";
+    private final String SELECT_EXPIRED_WORKER_IDS_SQL = "SELECT worker_id FROM %s WHERE lease_until < ? ORDER BY worker_id ASC";
+    private final String INSERT_LEASE_SQL = "INSERT INTO %s (worker_id, lease_owner, lease_until) VALUES (?, ?, ?)";
+    private final String TAKE_OVER_LEASE_SQL = "UPDATE %s SET lease_owner = ?, lease_until = ? WHERE worker_id = ? AND lease_until < ?";
+    private final String RENEW_LEASE_SQL = "UPDATE %s SET lease_until = ? WHERE worker_id = ? AND lease_owner = ?";
+    private final String RELEASE_LEASE_SQL = "DELETE FROM %s WHERE worker_id = ? AND lease_owner = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String tableName;
+    private final long leaseMillis;
+    private final String leaseOwner;
+    private final ScheduledExecutorService renewExecutor;
+
+    private volatile int workerId = -1;
+    /**
+     * Local time until which the worker id may be used, 0 when no lease is held
+     */
+    private volatile long leaseUntil;
+
+    /**
+     * @param dataSource  Data source
+     * @param tableName   Lease table, shared by all nodes generating ids for the same message tables (created when missing)
+     * @param leaseMillis Lease duration, a node that stops renewing loses its worker id after this time
+     */
+    public TxMsgWorkerIdLease(DataSource dataSource, String tableName, long leaseMillis) {
+        Assert.notNull(dataSource, "Data source cannot be null");
+        Assert.hasText(tableName, "Table name cannot be empty");
+        Assert.isTrue(leaseMillis >= 3000, "Lease duration must be at least 3000 milliseconds");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.tableName = tableName;
+        this.leaseMillis = leaseMillis;
+        this.leaseOwner = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.renewExecutor = Executors.newSingleThreadScheduledExecutor(
+                r -> Thread.ofPlatform().daemon().name("tx-msg-worker-id-lease").unstarted(r)
+        );
+    }
+
+    /**
+     * Simplified constructor (table tx_msg_worker_id, 60 seconds lease)
+     */
+    public TxMsgWorkerIdLease(DataSource dataSource) {
+        this(dataSource, "tx_msg_worker_id", 60000);
+    }
+
+    /**
+     * Acquire a worker id and start renewing the lease
+     *
+     * @throws TxMsgStoreException When every worker id is leased by another node
+     */
+    public void start() {
+        ensureLeaseTable();
+        acquire();
+        long renewMillis = leaseMillis / 3;
+        renewExecutor.scheduleWithFixedDelay(this::renew, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Worker id held by this node
+     *
+     * @throws TxMsgException When the lease is not held (not started, renewal failing, or taken over)
+     */
+    public int getWorkerId() {
+        if (System.currentTimeMillis() >= leaseUntil) {
+            throw new TxMsgException("Worker id lease is not held, table: " + tableName);
+        }
+        return workerId;
+    }
+
+    private void ensureLeaseTable() {
+        try {
+            jdbcTemplate.queryForList(String.format(CHECK_TABLE_EXISTS_SQL, tableName));
+        } catch (Exception e) {
+            try {
+                jdbcTemplate.execute(String.format(CREATE_LEASE_TABLE_SQL, tableName));
+                logger.info("Successfully created table {}", tableName);
+            } catch (Exception createException) {
+                // Another node may have created it in the meantime
+                jdbcTemplate.queryForList(String.format(CHECK_TABLE_EXISTS_SQL, tableName));
+            }
+        }
+    }
+
+    private void acquire() {
+        long currentTime = System.currentTimeMillis();
+        // Expired leases first, then the lowest worker id never used
+        List<Integer> expiredWorkerIds = jdbcTemplate.queryForList(String.format(SELECT_EXPIRED_WORKER_IDS_SQL, tableName), Integer.class, currentTime);
+        for (Integer expiredWorkerId : expiredWorkerIds) {
+            if (jdbcTemplate.update(String.format(TAKE_OVER_LEASE_SQL, tableName), leaseOwner, currentTime + leaseMillis, expiredWorkerId, currentTime) == 1) {
+                leased(expiredWorkerId, currentTime);
+                return;
+            }
+        }
+        Set<Integer> usedWorkerIds = new HashSet<>(jdbcTemplate.queryForList(String.format(SELECT_WORKER_IDS_SQL, tableName), Integer.class));
+        for (int candidate = 0; candidate <= TxMsgIdGenerator.MAX_WORKER_ID; candidate++) {
+            if (usedWorkerIds.contains(candidate)) {
+                continue;
+            }
+            try {
+                jdbcTemplate.update(String.format(INSERT_LEASE_SQL, tableName), candidate, leaseOwner, currentTime + leaseMillis);
+                leased(candidate, currentTime);
+                return;
+            } catch (DuplicateKeyException e) {
+                logger.debug("Worker id {} was taken by another node", candidate);
+            }
+        }
+        throw new TxMsgStoreException("No free worker id in table " + tableName);
+    }
+
+    private void leased(int workerId, long leaseStartTime) {
+        this.workerId = workerId;
+        this.leaseUntil = leaseStartTime + leaseMillis;
+        logger.info("Worker id {} leased from table {}, lease owner: {}", workerId, tableName, leaseOwner);
+    }
+
+    void renew() {
+        try {
+            long currentTime = System.currentTimeMillis();
+            if (jdbcTemplate.update(String.format(RENEW_LEASE_SQL, tableName), currentTime + leaseMillis, workerId, leaseOwner) == 1) {
+                leaseUntil = currentTime + leaseMillis;
+                return;
+            }
+            logger.warn("Worker id {} lease was taken over, acquiring a new worker id, table: {}", workerId, tableName);
+            leaseUntil = 0;
+            acquire();
+        } catch (Exception e) {
+            logger.error("Exception occurred while renewing worker id {} lease, table: {}", workerId, tableName, e);
+        }
+    }
+
+    public void shutdown() {
+        renewExecutor.shutdownNow();
+        leaseUntil = 0;
+        if (workerId >= 0) {
+            try {
+                jdbcTemplate.update(String.format(RELEASE_LEASE_SQL, tableName), workerId, leaseOwner);
+                logger.info("Worker id {} released, table: {}", workerId, tableName);
+            } catch (Exception e) {
+                logger.warn("Exception occurred while releasing worker id {}, it expires after {}ms, table: {}", workerId, leaseMillis, tableName, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+}
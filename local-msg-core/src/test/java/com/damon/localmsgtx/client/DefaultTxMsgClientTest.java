@@ -0,0 +1,221 @@
+package com.damon.localmsgtx.client;
+
+import com.damon.localmsgtx.config.TxMsgConfig;
+import com.damon.localmsgtx.handler.RocketTxMsgHandler;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.store.ITxMsgStore;
+import com.damon.localmsgtx.store.TxMsgH2Database;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+public class DefaultTxMsgClientTest {
+
+    @Test
+    public void testCloseLeavesCallerExecutorRunning() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            RocketTxMsgHandler handler = new RocketTxMsgHandler(new DefaultMQProducer("tx-msg-client-test"), database.newV2Store("tx_msg_client"), 10, 100, 100, 1);
+            new DefaultTxMsgClient(new TxMsgConfig(executor, handler)).close();
+            Assert.assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCloseShutsDownHandedOverExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            RocketTxMsgHandler handler = new RocketTxMsgHandler(new DefaultMQProducer("tx-msg-client-test"), database.newV2Store("tx_msg_client"), 10, 100, 100, 1);
+            new DefaultTxMsgClient(new TxMsgConfig(executor, handler, true)).close();
+            Assert.assertTrue(executor.isTerminated());
+        }
+    }
+
+    @Test
+    public void testOneBatchPerTransaction() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            RecordingHandler handler = new RecordingHandler(database.newV2Store("tx_msg_client"));
+            DefaultTxMsgClient client = new DefaultTxMsgClient(new TxMsgConfig(Executors.newSingleThreadExecutor(), handler, true));
+            List<Long> msgIds = transactionTemplate(database).execute(status -> {
+                List<Long> ids = new ArrayList<>();
+                ids.add(client.sendTxMsg("key-1", "content 1"));
+                ids.addAll(client.sendTxMsgBatch(List.of(new TxMsgParam("key-2", "content 2"), new TxMsgParam("key-3", "content 3"))));
+                ids.add(client.sendTxMsg("key-4", "content 4"));
+                return ids;
+            });
+            // close() waits for the submitted sends
+            client.close();
+
+            Assert.assertEquals(List.of(msgIds), handler.batches);
+        }
+    }
+
+    @Test
+    public void testNothingSentOnRollback() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            RecordingHandler handler = new RecordingHandler(database.newV2Store("tx_msg_client"));
+            DefaultTxMsgClient client = new DefaultTxMsgClient(new TxMsgConfig(Executors.newSingleThreadExecutor(), handler, true));
+            transactionTemplate(database).executeWithoutResult(status -> {
+                client.sendTxMsg("key-1", "content 1");
+                client.sendTxMsgBatch(List.of(new TxMsgParam("key-2", "content 2")));
+                status.setRollbackOnly();
+            });
+            client.close();
+
+            Assert.assertTrue(handler.batches.isEmpty());
+            Assert.assertEquals(Integer.valueOf(0), database.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM tx_msg_client", Integer.class));
+        }
+    }
+
+    @Test
+    public void testRequiresNewGetsItsOwnBatch() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            RecordingHandler handler = new RecordingHandler(database.newV2Store("tx_msg_client"));
+            DefaultTxMsgClient client = new DefaultTxMsgClient(new TxMsgConfig(Executors.newSingleThreadExecutor(), handler, true));
+            TransactionTemplate requiresNew = transactionTemplate(database);
+            requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            List<Long> innerIds = new ArrayList<>();
+            List<Long> outerIds = transactionTemplate(database).execute(status -> {
+                List<Long> ids = new ArrayList<>();
+                ids.add(client.sendTxMsg("outer-1", "content 1"));
+                // The outer synchronization is suspended, the inner transaction collects and sends its own messages
+                innerIds.addAll(requiresNew.execute(innerStatus ->
+                        client.sendTxMsgBatch(List.of(new TxMsgParam("inner-1", "content 2"), new TxMsgParam("inner-2", "content 3")))));
+                ids.add(client.sendTxMsg("outer-2", "content 4"));
+                return ids;
+            });
+            client.close();
+
+            Assert.assertEquals(List.of(innerIds, outerIds), handler.batches);
+        }
+    }
+
+    @Test
+    public void testRejectedAtMessageCapStaysWaiting() throws Exception {
+        assertRejectedStaysWaiting(new TxMsgInFlightLimiter(2, 1024 * 1024));
+    }
+
+    @Test
+    public void testRejectedAtByteCapStaysWaiting() throws Exception {
+        // The first batch is 18 bytes
+        assertRejectedStaysWaiting(new TxMsgInFlightLimiter(100, 20));
+    }
+
+    /**
+     * A first batch of two messages is held in flight, a second transaction is then over the limit
+     */
+    private void assertRejectedStaysWaiting(TxMsgInFlightLimiter limiter) throws Exception {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            RecordingHandler handler = new RecordingHandler(database.newV2Store("tx_msg_client"));
+            handler.blocking = new CountDownLatch(1);
+            TxMsgConfig config = new TxMsgConfig(Executors.newSingleThreadExecutor(), handler, true);
+            config.setInFlightLimiter(limiter);
+            DefaultTxMsgClient client = new DefaultTxMsgClient(config);
+            TransactionTemplate transactionTemplate = transactionTemplate(database);
+            List<Long> admittedIds = transactionTemplate.execute(status ->
+                    client.sendTxMsgBatch(List.of(new TxMsgParam("key-1", "content 1"), new TxMsgParam("key-2", "content 2"))));
+            Assert.assertTrue(handler.sending.await(10, TimeUnit.SECONDS));
+            Long rejectedId = transactionTemplate.execute(status -> client.sendTxMsg("key-3", "content 3"));
+
+            Assert.assertEquals(2, limiter.getInFlightMessages());
+            handler.blocking.countDown();
+            client.close();
+
+            Assert.assertEquals(List.of(admittedIds), handler.batches);
+            Assert.assertEquals(0, limiter.getInFlightMessages());
+            Assert.assertEquals(0, limiter.getInFlightBytes());
+            // Left to the compensation task
+            Assert.assertEquals(Integer.valueOf(TxMsgStatusEnum.WAITING.getStatus()), database.getJdbcTemplate().queryForObject(
+                    "SELECT status FROM tx_msg_client WHERE id = ?", Integer.class, rejectedId));
+        }
+    }
+
+    @Test
+    public void testReleasedWhenExecutorRejects() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            RecordingHandler handler = new RecordingHandler(database.newV2Store("tx_msg_client"));
+            TxMsgInFlightLimiter limiter = new TxMsgInFlightLimiter();
+            TxMsgConfig config = new TxMsgConfig(executor, handler);
+            config.setInFlightLimiter(limiter);
+            DefaultTxMsgClient client = new DefaultTxMsgClient(config);
+            executor.shutdown();
+            transactionTemplate(database).executeWithoutResult(status -> client.sendTxMsg("key-1", "content 1"));
+
+            Assert.assertTrue(handler.batches.isEmpty());
+            Assert.assertEquals(0, limiter.getInFlightMessages());
+            Assert.assertEquals(0, limiter.getInFlightBytes());
+            client.close();
+        }
+    }
+
+    @Test
+    public void testReleasedWhenSendFails() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            RecordingHandler handler = new RecordingHandler(database.newV2Store("tx_msg_client"));
+            handler.failing = true;
+            TxMsgInFlightLimiter limiter = new TxMsgInFlightLimiter();
+            TxMsgConfig config = new TxMsgConfig(Executors.newSingleThreadExecutor(), handler, true);
+            config.setInFlightLimiter(limiter);
+            DefaultTxMsgClient client = new DefaultTxMsgClient(config);
+            transactionTemplate(database).executeWithoutResult(status -> client.sendTxMsg("key-1", "content 1"));
+            client.close();
+
+            Assert.assertEquals(1, handler.batches.size());
+            Assert.assertEquals(0, limiter.getInFlightMessages());
+            Assert.assertEquals(0, limiter.getInFlightBytes());
+        }
+    }
+
+    private static TransactionTemplate transactionTemplate(TxMsgH2Database database) {
+        return new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+    }
+
+    /**
+     * Handler recording the message ids of every batch sent after commit instead of publishing them
+     * The first batch can be held until {@code blocking} is released, every batch can fail after being recorded
+     */
+    private static class RecordingHandler extends RocketTxMsgHandler {
+
+        private final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private volatile CountDownLatch blocking;
+        private volatile boolean failing;
+
+        RecordingHandler(ITxMsgStore txMsgStore) {
+            super(new DefaultMQProducer("tx-msg-client-test"), txMsgStore, 10, 100, 100, 1);
+        }
+
+        @Override
+        public void sendMsgBatch(List<TxMsgModel> txMsgModels) {
+            batches.add(txMsgModels.stream().map(TxMsgModel::getId).toList());
+            sending.countDown();
+            if (blocking != null) {
+                try {
+                    blocking.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing) {
+                throw new IllegalStateException("Broker unavailable");
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.damon.localmsgtx.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TxMsgInFlightLimiterTest {
+
+    @Test
+    public void testAdmittedWhenNothingInFlight() {
+        TxMsgInFlightLimiter limiter = new TxMsgInFlightLimiter(2, 100);
+        // Larger than both caps, still admitted so a large transaction is not starved
+        Assert.assertTrue(limiter.tryAcquire(5, 1000));
+        Assert.assertEquals(5, limiter.getInFlightMessages());
+        Assert.assertEquals(1000, limiter.getInFlightBytes());
+        Assert.assertFalse(limiter.tryAcquire(1, 1));
+
+        limiter.release(5, 1000);
+        Assert.assertTrue(limiter.tryAcquire(5, 1000));
+    }
+
+    @Test
+    public void testRejectedAtMessageCap() {
+        TxMsgInFlightLimiter limiter = new TxMsgInFlightLimiter(3, 1000);
+        Assert.assertTrue(limiter.tryAcquire(2, 10));
+        Assert.assertTrue(limiter.tryAcquire(1, 10));
+        Assert.assertFalse(limiter.tryAcquire(1, 10));
+        Assert.assertEquals(3, limiter.getInFlightMessages());
+        Assert.assertEquals(20, limiter.getInFlightBytes());
+
+        limiter.release(1, 10);
+        Assert.assertTrue(limiter.tryAcquire(1, 10));
+    }
+
+    @Test
+    public void testRejectedAtByteCap() {
+        TxMsgInFlightLimiter limiter = new TxMsgInFlightLimiter(100, 50);
+        Assert.assertTrue(limiter.tryAcquire(1, 30));
+        Assert.assertTrue(limiter.tryAcquire(1, 20));
+        Assert.assertFalse(limiter.tryAcquire(1, 1));
+        Assert.assertEquals(2, limiter.getInFlightMessages());
+        Assert.assertEquals(50, limiter.getInFlightBytes());
+
+        limiter.release(1, 30);
+        Assert.assertTrue(limiter.tryAcquire(1, 30));
+    }
+}
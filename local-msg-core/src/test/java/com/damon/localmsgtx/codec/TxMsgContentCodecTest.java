@@ -0,0 +1,38 @@
+package com.damon.localmsgtx.codec;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+
+public class TxMsgContentCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        byte[] random = new byte[100000];
+        new Random(42).nextBytes(random);
+        byte[][] contents = {new byte[0], "x".getBytes(StandardCharsets.UTF_8),
+                "{\"order\":1,\"状态\":\"已支付\"}".repeat(1000).getBytes(StandardCharsets.UTF_8), random};
+        for (TxMsgContentCodec codec : TxMsgContentCodec.values()) {
+            for (byte[] content : contents) {
+                Assert.assertArrayEquals(codec + " of " + content.length + " bytes", content, codec.decode(codec.encode(content)));
+            }
+            Assert.assertSame(codec, TxMsgContentCodec.fromCode(codec.getCode()));
+        }
+    }
+
+    @Test
+    public void testCompressesRepetitiveContent() {
+        byte[] content = "{\"order\":1,\"status\":\"paid\"}".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        Assert.assertTrue(TxMsgContentCodec.LZ4.encode(content).length < content.length / 10);
+        Assert.assertTrue(TxMsgContentCodec.DEFLATE.encode(content).length < content.length / 10);
+    }
+
+    @Test
+    public void testUnknownCodeRejected() {
+        Assert.assertThrows(TxMsgException.class, () -> TxMsgContentCodec.fromCode(99));
+    }
+}
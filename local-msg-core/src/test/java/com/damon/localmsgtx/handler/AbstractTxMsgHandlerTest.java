@@ -0,0 +1,174 @@
+package com.damon.localmsgtx.handler;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.store.TxMsgH2Database;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+
+public class AbstractTxMsgHandlerTest {
+
+    @Test
+    public void testPipelinedResendSendsEveryPageInOrder() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newV2Store("tx_msg_pipeline");
+            List<String> msgKeys = insert(store, 25).stream().map(TxMsgModel::getMsgKey).toList();
+            RecordingHandler handler = new RecordingHandler(store, 10, 100);
+
+            Assert.assertEquals(25, handler.resendWaitingMessagesPipelined("", 1));
+            Assert.assertEquals(msgKeys, handler.sentMsgKeys);
+            Assert.assertEquals(25, database.queryForInt("SELECT COUNT(*) FROM tx_msg_pipeline WHERE status = ?", TxMsgStatusEnum.SENT.getStatus()));
+            Assert.assertEquals(0, handler.resendWaitingMessagesPipelined("", 1));
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    public void testPipelinedResendStopsAtTaskLimit() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newV2Store("tx_msg_pipeline");
+            insert(store, 25);
+            RecordingHandler handler = new RecordingHandler(store, 10, 20);
+
+            Assert.assertEquals(20, handler.resendWaitingMessagesPipelined("", 2));
+            Assert.assertEquals(5, database.queryForInt("SELECT COUNT(*) FROM tx_msg_pipeline WHERE status = ?", TxMsgStatusEnum.WAITING.getStatus()));
+            Assert.assertEquals(5, handler.resendWaitingMessagesPipelined("", 2));
+            Assert.assertEquals(25, handler.sentMsgKeys.size());
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    public void testPipelinedResendRecordsFailedPages() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newV2Store("tx_msg_pipeline");
+            insert(store, 15);
+            RecordingHandler handler = new RecordingHandler(store, 20, 100);
+            handler.failing = true;
+
+            Assert.assertEquals(15, handler.resendWaitingMessagesPipelined("", 1));
+            Assert.assertEquals(15, database.queryForInt("SELECT COUNT(*) FROM tx_msg_pipeline WHERE status = ? AND retry_count = 1",
+                    TxMsgStatusEnum.WAITING.getStatus()));
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnansweredMessagesKeepRetryBudget() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newV2Store("tx_msg_pipeline");
+            insert(store, 15);
+            RecordingHandler handler = new RecordingHandler(store, 20, 100);
+            handler.unanswered = true;
+
+            Assert.assertEquals(15, handler.resendWaitingMessagesPipelined("", 1));
+            Assert.assertEquals(15, database.queryForInt("SELECT COUNT(*) FROM tx_msg_pipeline WHERE status = ? AND retry_count = 0 AND next_retry_time = 0",
+                    TxMsgStatusEnum.WAITING.getStatus()));
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    public void testPageSplitByTopic() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newV2Store("tx_msg_topics");
+            List<TxMsgParam> params = new ArrayList<>();
+            for (int i = 0; i < 9; i++) {
+                String topic = List.of("orders", "payments", "broken").get(i % 3);
+                params.add(TxMsgParam.ofTopic(topic, "key-" + i, "", "content-" + i));
+            }
+            params.add(new TxMsgParam("key-default", "", "content"));
+            List<TxMsgModel> models = store.batchInsertTxMsg(params);
+            TopicRecordingHandler handler = new TopicRecordingHandler(store);
+
+            Assert.assertEquals(10, handler.resendWaitingMessages(""));
+            // One publish call per topic, the default topic applies to the message without one
+            Assert.assertEquals(Map.of("orders", 1, "payments", 1, "broken", 1, "topic", 1), handler.calls);
+            for (TxMsgModel model : models) {
+                boolean broken = "broken".equals(model.getTopic());
+                Assert.assertEquals(model.getMsgKey(), broken ? TxMsgStatusEnum.WAITING.getStatus() : TxMsgStatusEnum.SENT.getStatus(),
+                        database.queryForInt("SELECT status FROM tx_msg_topics WHERE id = ?", model.getId()));
+                Assert.assertEquals(model.getMsgKey(), broken ? 1 : 0,
+                        database.queryForInt("SELECT retry_count FROM tx_msg_topics WHERE id = ?", model.getId()));
+            }
+            handler.shutdown();
+        }
+    }
+
+    private static List<TxMsgModel> insert(TxMsgSqlStore store, int count) {
+        List<TxMsgParam> params = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            params.add(new TxMsgParam("key-" + i, "", "content-" + i));
+        }
+        return store.batchInsertTxMsg(params);
+    }
+
+    /**
+     * Records the keys of the published messages, fails every publish when {@link #failing} is set and leaves the
+     * outcome unknown (as after a send timeout) when {@link #unanswered} is set
+     */
+    private static class RecordingHandler extends AbstractTxMsgHandler {
+        private final List<String> sentMsgKeys = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean failing;
+        private volatile boolean unanswered;
+
+        RecordingHandler(TxMsgSqlStore store, int fetchLimit, int maxResendNumPerTask) {
+            super(100, store, fetchLimit, maxResendNumPerTask, 1);
+        }
+
+        @Override
+        protected void sendMessage(TxMsgModel txMsgModel) {
+        }
+
+        @Override
+        protected TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels) {
+            if (failing) {
+                throw new TxMsgException("broker unavailable");
+            }
+            txMsgModels.forEach(model -> sentMsgKeys.add(model.getMsgKey()));
+            if (unanswered) {
+                return new TxMsgPublishResult(List.of(), List.of());
+            }
+            return new TxMsgPublishResult(txMsgModels.stream().map(TxMsgModel::getId).toList(), List.of());
+        }
+    }
+
+    /**
+     * Records the publish calls per topic, every call must target a single topic, the "broken" topic fails
+     */
+    private static class TopicRecordingHandler extends AbstractTxMsgHandler {
+        private final Map<String, Integer> calls = new ConcurrentHashMap<>();
+
+        TopicRecordingHandler(TxMsgSqlStore store) {
+            super(100, store, 50, 100, 1);
+        }
+
+        @Override
+        protected void sendMessage(TxMsgModel txMsgModel) {
+        }
+
+        @Override
+        protected TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels) {
+            Set<String> topics = txMsgModels.stream().map(TxMsgModel::getTopic).collect(Collectors.toSet());
+            Assert.assertEquals(1, topics.size());
+            String topic = topics.iterator().next();
+            calls.merge(topic, 1, Integer::sum);
+            if ("broken".equals(topic)) {
+                throw new TxMsgException("topic " + topic + " is unavailable");
+            }
+            return new TxMsgPublishResult(txMsgModels.stream().map(TxMsgModel::getId).toList(), List.of());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.damon.localmsgtx.handler;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.store.TxMsgH2Database;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+public class FanoutTxMsgHandlerTest {
+
+    @Test
+    public void testRetryOnlyGoesToUnackedDestination() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = fanoutStore(database);
+            RecordingPublisher kafka = new RecordingPublisher(true);
+            RecordingPublisher rocket = new RecordingPublisher(false);
+            FanoutTxMsgHandler handler = new FanoutTxMsgHandler(List.of(kafka, rocket), store, 50, 100, 100, 1);
+            List<TxMsgModel> models = handler.saveMsgBatch(List.of(new TxMsgParam("k1", "c1"), new TxMsgParam("k2", "c2")));
+
+            // Destination 0 acknowledges, destination 1 rejects: the acknowledgement is kept, the attempt is failed
+            Assert.assertEquals(2, handler.resendWaitingMessages(""));
+            for (TxMsgModel model : models) {
+                assertRow(database, model, TxMsgStatusEnum.WAITING, 0b01, 1);
+            }
+            Assert.assertEquals(ids(models), kafka.published);
+            Assert.assertEquals(ids(models), rocket.published);
+
+            // The retry only goes to destination 1
+            kafka.published.clear();
+            rocket.published.clear();
+            rocket.accept = true;
+            database.getJdbcTemplate().update("UPDATE tx_msg_fanout SET next_retry_time = 0");
+            Assert.assertEquals(2, handler.resendWaitingMessages(""));
+            Assert.assertTrue(kafka.published.isEmpty());
+            Assert.assertEquals(ids(models), rocket.published);
+            for (TxMsgModel model : models) {
+                assertRow(database, model, TxMsgStatusEnum.SENT, 0b11, 1);
+            }
+            handler.shutdown();
+        }
+    }
+
+    @Test
+    public void testDestMaskSubsets() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = fanoutStore(database);
+            RecordingPublisher first = new RecordingPublisher(true);
+            RecordingPublisher second = new RecordingPublisher(true);
+            RecordingPublisher third = new RecordingPublisher(true);
+            FanoutTxMsgHandler handler = new FanoutTxMsgHandler(List.of(first, second, third), store, 50, 100, 100, 1);
+
+            TxMsgParam all = new TxMsgParam("all", "c");
+            TxMsgParam secondOnly = new TxMsgParam("second", "c");
+            secondOnly.setDestMask(FanoutTxMsgHandler.destMask(1));
+            TxMsgParam firstAndThird = new TxMsgParam("first-third", "c");
+            firstAndThird.setDestMask(FanoutTxMsgHandler.destMask(0, 2));
+            List<TxMsgModel> models = handler.saveMsgBatch(List.of(all, secondOnly, firstAndThird));
+
+            Assert.assertEquals(3, handler.resendWaitingMessages(""));
+            Assert.assertEquals(Set.of(models.get(0).getId(), models.get(2).getId()), first.published);
+            Assert.assertEquals(Set.of(models.get(0).getId(), models.get(1).getId()), second.published);
+            Assert.assertEquals(Set.of(models.get(0).getId(), models.get(2).getId()), third.published);
+            for (TxMsgModel model : models) {
+                Assert.assertEquals(TxMsgStatusEnum.SENT.getStatus(), database.queryForInt("SELECT status FROM tx_msg_fanout WHERE id = ?", model.getId()));
+            }
+
+            TxMsgParam unknownDestination = new TxMsgParam("unknown", "c");
+            unknownDestination.setDestMask(FanoutTxMsgHandler.destMask(3));
+            Assert.assertThrows(IllegalArgumentException.class, () -> handler.saveMsg(unknownDestination));
+            handler.shutdown();
+        }
+    }
+
+    private static TxMsgSqlStore fanoutStore(TxMsgH2Database database) {
+        TxMsgStoreConfig storeConfig = TxMsgH2Database.v2Config("tx_msg_fanout");
+        storeConfig.setFanout(true);
+        return database.newStore(storeConfig);
+    }
+
+    private static Set<Long> ids(List<TxMsgModel> models) {
+        Set<Long> ids = new HashSet<>();
+        models.forEach(model -> ids.add(model.getId()));
+        return ids;
+    }
+
+    private static void assertRow(TxMsgH2Database database, TxMsgModel model, TxMsgStatusEnum status, int ackedMask, int retryCount) {
+        Map<String, Object> row = database.getJdbcTemplate().queryForMap("SELECT status, acked_mask, retry_count FROM tx_msg_fanout WHERE id = ?", model.getId());
+        Assert.assertEquals(status.getStatus(), ((Number) row.get("status")).intValue());
+        Assert.assertEquals(ackedMask, ((Number) row.get("acked_mask")).intValue());
+        Assert.assertEquals(retryCount, ((Number) row.get("retry_count")).intValue());
+    }
+
+    /**
+     * Destination accepting or rejecting every message, remembers the published ids
+     */
+    private static class RecordingPublisher implements TxMsgPublisher {
+        private final Set<Long> published = ConcurrentHashMap.newKeySet();
+        private volatile boolean accept;
+
+        RecordingPublisher(boolean accept) {
+            this.accept = accept;
+        }
+
+        @Override
+        public TxMsgPublishResult publishMessages(List<TxMsgModel> txMsgModels) {
+            List<Long> msgIds = new ArrayList<>();
+            txMsgModels.forEach(model -> msgIds.add(model.getId()));
+            published.addAll(msgIds);
+            return accept ? new TxMsgPublishResult(msgIds, List.of()) : new TxMsgPublishResult(List.of(), msgIds);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.damon.localmsgtx.handler;
+
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import com.damon.localmsgtx.store.TxMsgH2Database;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+
+public class KafkaTxMsgHandlerTest {
+
+    @Test
+    public void testTimedOutRecordKeepsRetryBudget() throws Exception {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newV2Store("tx_msg_kafka");
+            List<TxMsgModel> models = store.batchInsertTxMsg(List.of(
+                    new TxMsgParam("acked", "", "c1"), new TxMsgParam("rejected", "", "c2"), new TxMsgParam("pending", "", "c3")));
+            MockProducer<String, byte[]> producer = new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+            KafkaTxMsgHandler handler = new KafkaTxMsgHandler(producer, store, 50, 100, 100, 1);
+            handler.setBatchSendTimeoutMillis(300);
+
+            // Records complete in send order: the first is acknowledged, the second rejected, the third never answered
+            Thread broker = new Thread(() -> {
+                while (producer.history().size() < 3) {
+                    Thread.onSpinWait();
+                }
+                producer.completeNext();
+                producer.errorNext(new RuntimeException("rejected by broker"));
+            });
+            broker.start();
+            Assert.assertEquals(3, handler.resendWaitingMessages(""));
+            broker.join();
+            handler.shutdown();
+
+            assertRow(database, models.get(0), TxMsgStatusEnum.SENT, 0);
+            assertRow(database, models.get(1), TxMsgStatusEnum.WAITING, 1);
+            assertRow(database, models.get(2), TxMsgStatusEnum.WAITING, 0);
+            Assert.assertEquals(0, database.queryForInt("SELECT next_retry_time FROM tx_msg_kafka WHERE id = ?", models.get(2).getId()));
+        }
+    }
+
+    private static void assertRow(TxMsgH2Database database, TxMsgModel model, TxMsgStatusEnum status, int retryCount) {
+        Map<String, Object> row = database.getJdbcTemplate().queryForMap("SELECT status, retry_count FROM tx_msg_kafka WHERE id = ?", model.getId());
+        Assert.assertEquals(model.getMsgKey(), status.getStatus(), ((Number) row.get("status")).intValue());
+        Assert.assertEquals(model.getMsgKey(), retryCount, ((Number) row.get("retry_count")).intValue());
+    }
+}
@@ -0,0 +1,62 @@
+package com.damon.localmsgtx.handler;
+
+import com.damon.localmsgtx.model.TxMsgModel;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class RocketTxMsgPublisherTest {
+
+    @Test
+    public void testEstimateMatchesProducerEncoding() {
+        List<Message> messages = new ArrayList<>();
+        int estimated = 0;
+        for (int i = 0; i < 3; i++) {
+            Message message = RocketTxMsgPublisher.convertToRocketMessages(model(i, "topic", "content-" + i));
+            estimated += RocketTxMsgPublisher.estimateEncodedSize(message);
+            messages.add(message);
+        }
+        // The producer stamps every message with a UNIQ_KEY before encoding the batch
+        messages.forEach(MessageClientIDSetter::setUniqID);
+        Assert.assertEquals(MessageBatch.generateFromList(messages).encode().length, estimated);
+    }
+
+    @Test
+    public void testSplitAtBatchByteLimit() {
+        List<TxMsgModel> models = List.of(model(1, "topic", "aaaa"), model(2, "topic", "bbbb"), model(3, "topic", "cccc"),
+                model(4, "other", "dddd"));
+        int messageBytes = RocketTxMsgPublisher.estimateEncodedSize(RocketTxMsgPublisher.convertToRocketMessages(models.get(0)));
+        RocketTxMsgPublisher publisher = new RocketTxMsgPublisher(new DefaultMQProducer("group"));
+
+        publisher.setMaxBatchBytes(2 * messageBytes);
+        Assert.assertEquals(List.of(List.of(1L, 2L), List.of(3L), List.of(4L)), msgIds(publisher.splitBatches(models)));
+
+        publisher.setMaxBatchBytes(2 * messageBytes - 1);
+        Assert.assertEquals(List.of(List.of(1L), List.of(2L), List.of(3L), List.of(4L)), msgIds(publisher.splitBatches(models)));
+
+        // A message above the limit is still sent, alone
+        publisher.setMaxBatchBytes(1);
+        Assert.assertEquals(4, publisher.splitBatches(models).size());
+    }
+
+    private static List<List<Long>> msgIds(List<RocketTxMsgPublisher.RocketBatch> batches) {
+        return batches.stream().map(RocketTxMsgPublisher.RocketBatch::msgIds).toList();
+    }
+
+    private static TxMsgModel model(long id, String topic, String content) {
+        TxMsgModel model = new TxMsgModel();
+        model.setId(id);
+        model.setTopic(topic);
+        model.setMsgKey("key-" + id);
+        model.setMsgTag("tag");
+        model.setContent(content);
+        return model;
+    }
+}
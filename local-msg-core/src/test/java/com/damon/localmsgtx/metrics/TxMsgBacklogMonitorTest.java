@@ -0,0 +1,66 @@
+package com.damon.localmsgtx.metrics;
+
+import com.damon.localmsgtx.model.TxMsgBacklog;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.store.TxMsgH2Database;
+import com.damon.localmsgtx.store.TxMsgSqlStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class TxMsgBacklogMonitorTest {
+
+    @Test
+    public void testBacklogGroupedByTopic() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newV2Store("tx_msg_backlog");
+            store.batchInsertTxMsg(List.of(
+                    new TxMsgParam("k1", "c"), new TxMsgParam("k2", "c"), new TxMsgParam("k3", "c"),
+                    TxMsgParam.ofTopic("orders", "k4", null, "c"), TxMsgParam.ofTopic("orders", "k5", null, "c")));
+            database.getJdbcTemplate().update("UPDATE tx_msg_backlog SET create_time = 1000 WHERE msg_key = 'k2'");
+            database.getJdbcTemplate().update("UPDATE tx_msg_backlog SET create_time = 2000 WHERE msg_key = 'k5'");
+
+            Map<String, TxMsgBacklog> backlogs = new HashMap<>();
+            store.getBacklog(2).forEach(backlog -> backlogs.put(backlog.topic(), backlog));
+            Assert.assertEquals(2, backlogs.size());
+            // Counts are capped per topic
+            Assert.assertEquals(2, backlogs.get("topic").pendingCount());
+            Assert.assertEquals(1000, backlogs.get("topic").oldestCreateTime());
+            Assert.assertEquals(2, backlogs.get("orders").pendingCount());
+            Assert.assertEquals(2000, backlogs.get("orders").oldestCreateTime());
+        }
+    }
+
+    @Test
+    public void testMonitorReportsEveryTopicAndDrainedTopics() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newV2Store("tx_msg_backlog");
+            Map<String, Long> pendingCounts = new HashMap<>();
+            TxMsgMetrics metrics = new TxMsgMetrics() {
+                @Override
+                public void updateBacklog(String topic, long pendingCount, long oldestPendingAgeMillis) {
+                    pendingCounts.put(topic, pendingCount);
+                }
+            };
+            TxMsgBacklogMonitor monitor = new TxMsgBacklogMonitor(store, metrics, 1000, 100);
+
+            // The default topic is reported even without waiting messages
+            monitor.refresh();
+            Assert.assertEquals(Map.of("topic", 0L), pendingCounts);
+
+            store.batchInsertTxMsg(List.of(new TxMsgParam("k1", "c"),
+                    TxMsgParam.ofTopic("orders", "k2", null, "c"), TxMsgParam.ofTopic("orders", "k3", null, "c")));
+            monitor.refresh();
+            Assert.assertEquals(Map.of("topic", 1L, "orders", 2L), pendingCounts);
+
+            database.getJdbcTemplate().update("UPDATE tx_msg_backlog SET status = 1 WHERE topic = 'orders'");
+            monitor.refresh();
+            Assert.assertEquals(Map.of("topic", 1L, "orders", 0L), pendingCounts);
+            monitor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.damon.localmsgtx.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+public class TxMsgParamTest {
+
+    @Test
+    public void testUtf8BytesDecoded() {
+        byte[] content = "订单-order-✓".getBytes(StandardCharsets.UTF_8);
+        TxMsgParam txMsgParam = new TxMsgParam("key", null, content);
+        Assert.assertEquals("订单-order-✓", txMsgParam.getContent());
+        Assert.assertArrayEquals(content, txMsgParam.getContentBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedUtf8Rejected() {
+        new TxMsgParam("key", null, new byte[]{'a', (byte) 0xC3, (byte) 0x28});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedUtf8Rejected() {
+        byte[] content = "✓".getBytes(StandardCharsets.UTF_8);
+        new TxMsgParam("key", null, new byte[]{content[0], content[1]});
+    }
+
+    @Test
+    public void testContentBytesCopied() {
+        byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+        TxMsgParam txMsgParam = new TxMsgParam("key", null, content);
+        content[0] = 'j';
+        Assert.assertEquals("hello", txMsgParam.getContent());
+        Assert.assertEquals("hello", new String(txMsgParam.getContentBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testByteBufferCopiedOnce() {
+        ByteBuffer content = ByteBuffer.wrap("[订单-order-✓]".getBytes(StandardCharsets.UTF_8));
+        content.position(1).limit(content.limit() - 1);
+        TxMsgParam txMsgParam = new TxMsgParam("key", null, content);
+        Assert.assertEquals(1, content.position());
+        Assert.assertEquals("订单-order-✓", txMsgParam.getContent());
+        content.put(1, (byte) 'x');
+        Assert.assertEquals("订单-order-✓", new String(txMsgParam.getContentBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedByteBufferRejected() {
+        new TxMsgParam("key", null, ByteBuffer.wrap(new byte[]{'a', (byte) 0xFF}));
+    }
+
+    @Test
+    public void testLongUtf8Validated() {
+        // Longer than the validation buffer, with a surrogate pair across its boundary
+        String text = "a".repeat(1023) + "😀" + "订单".repeat(1000);
+        TxMsgParam txMsgParam = new TxMsgParam("key", null, text.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(text, txMsgParam.getContent());
+    }
+
+    @Test
+    public void testSetContentReplacesBytes() {
+        TxMsgParam txMsgParam = new TxMsgParam("key", null, "bytes".getBytes(StandardCharsets.UTF_8));
+        txMsgParam.setContent("text");
+        Assert.assertEquals("text", new String(txMsgParam.getContentBytes(), StandardCharsets.UTF_8));
+        txMsgParam.setContentBytes("bytes".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("bytes", txMsgParam.getContent());
+    }
+}
@@ -0,0 +1,126 @@
+package com.damon.localmsgtx.scheduler;
+
+import com.damon.localmsgtx.handler.RocketTxMsgHandler;
+import com.damon.localmsgtx.store.ITxMsgStore;
+import com.damon.localmsgtx.store.TxMsgH2Database;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+
+public class TxMsgCompensationSchedulerTest {
+
+    private static final List<String> SHARDS = List.of("0", "1", "2", "3", "4", "5");
+
+    @Test
+    public void testParallelismCap() throws Exception {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            ScanRecordingHandler handler = new ScanRecordingHandler(database.newV2Store("tx_msg_scheduler"), 30);
+            TxMsgCompensationScheduler scheduler = new TxMsgCompensationScheduler(handler, () -> SHARDS, 2, 20, 0);
+            scheduler.start();
+            waitFor(() -> handler.totalScans() >= 20);
+            scheduler.shutdown();
+
+            Assert.assertEquals(2, handler.maxConcurrentScans.get());
+            for (String shardTailNumber : SHARDS) {
+                Assert.assertTrue("Shard not scanned: " + shardTailNumber, handler.scans(shardTailNumber) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testShardInterval() throws Exception {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            ScanRecordingHandler handler = new ScanRecordingHandler(database.newV2Store("tx_msg_scheduler"), 0);
+            // Shard "0" every 20ms, shard "1" on the 60s default interval
+            TxMsgCompensationScheduler scheduler = new TxMsgCompensationScheduler(handler, () -> List.of("0", "1"), 4, 60000, 0);
+            scheduler.setShardInterval("0", 20);
+            scheduler.start();
+            waitFor(() -> handler.scans("0") >= 10);
+            scheduler.shutdown();
+
+            Assert.assertTrue(handler.scans("1") <= 1);
+        }
+    }
+
+    @Test
+    public void testShutdownWhileDraining() throws Exception {
+        List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<>());
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> uncaught.add(e));
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            // Every scan reaches the per-task limit, shards are rescheduled without delay up to the shutdown
+            ScanRecordingHandler handler = new ScanRecordingHandler(database.newV2Store("tx_msg_scheduler"), 0);
+            handler.processed = handler.getMaxResendNumPerTask();
+            TxMsgCompensationScheduler scheduler = new TxMsgCompensationScheduler(handler, () -> SHARDS, 4, 20, 0);
+            scheduler.start();
+            waitFor(() -> handler.totalScans() >= 200);
+            scheduler.shutdown();
+            int scansAtShutdown = handler.totalScans();
+            Thread.sleep(100);
+
+            Assert.assertEquals(scansAtShutdown, handler.totalScans());
+            Assert.assertTrue("Uncaught: " + uncaught, uncaught.isEmpty());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Condition not reached in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Handler counting the scans of every shard and the scans running at the same time instead of resending
+     */
+    private static class ScanRecordingHandler extends RocketTxMsgHandler {
+
+        private final Map<String, AtomicInteger> scansByShard = new ConcurrentHashMap<>();
+        private final AtomicInteger concurrentScans = new AtomicInteger();
+        private final AtomicInteger maxConcurrentScans = new AtomicInteger();
+        private final long scanMillis;
+        private volatile int processed;
+
+        ScanRecordingHandler(ITxMsgStore txMsgStore, long scanMillis) {
+            super(new DefaultMQProducer("tx-msg-scheduler-test"), txMsgStore, 10, 100, 100, 1);
+            this.scanMillis = scanMillis;
+        }
+
+        @Override
+        public int resendWaitingMessages(String shardTailNumber) {
+            maxConcurrentScans.accumulateAndGet(concurrentScans.incrementAndGet(), Math::max);
+            try {
+                if (scanMillis > 0) {
+                    Thread.sleep(scanMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrentScans.decrementAndGet();
+            }
+            scansByShard.computeIfAbsent(shardTailNumber, key -> new AtomicInteger()).incrementAndGet();
+            return processed;
+        }
+
+        int scans(String shardTailNumber) {
+            AtomicInteger scans = scansByShard.get(shardTailNumber);
+            return scans == null ? 0 : scans.get();
+        }
+
+        int totalScans() {
+            return scansByShard.values().stream().mapToInt(AtomicInteger::get).sum();
+        }
+    }
+}
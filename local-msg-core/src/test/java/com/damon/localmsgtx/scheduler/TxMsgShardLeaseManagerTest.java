@@ -0,0 +1,109 @@
+package com.damon.localmsgtx.scheduler;
+
+import com.damon.localmsgtx.handler.RocketTxMsgHandler;
+import com.damon.localmsgtx.store.TxMsgH2Database;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+public class TxMsgShardLeaseManagerTest {
+
+    private static final List<String> SHARDS = List.of("0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+
+    @Test
+    public void testLeaseReleasedOnlyAfterScansStopped() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgShardLeaseManager first = new TxMsgShardLeaseManager(database.getDataSource(), "tx_msg_lease", SHARDS, "first", 3000);
+            TxMsgShardLeaseManager second = new TxMsgShardLeaseManager(database.getDataSource(), "tx_msg_lease", SHARDS, "second", 3000);
+
+            first.heartbeat();
+            List<String> scanned = first.currentShards();
+            Assert.assertEquals(10, scanned.size());
+
+            // The second node joins, the first drops its extra shards but keeps their leases while they are scanned
+            second.heartbeat();
+            first.heartbeat();
+            List<String> kept = first.currentShards();
+            Assert.assertEquals(5, kept.size());
+            second.heartbeat();
+            Assert.assertTrue(second.currentShards().isEmpty());
+            Assert.assertEquals(10, database.queryForInt("SELECT COUNT(*) FROM tx_msg_lease WHERE owner = 'first'"));
+
+            // Scans of the dropped shards stopped, the leases move on the next heartbeats
+            List<String> dropped = new ArrayList<>(scanned);
+            dropped.removeAll(kept);
+            dropped.forEach(first::shardStopped);
+            first.heartbeat();
+            second.heartbeat();
+            assertSplit(first.currentShards(), second.currentShards());
+            Assert.assertEquals(new HashSet<>(kept), new HashSet<>(first.currentShards()));
+
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    @Test
+    public void testReleasingShardKeptWhenNodeLeaves() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgShardLeaseManager first = new TxMsgShardLeaseManager(database.getDataSource(), "tx_msg_lease", SHARDS, "first", 3000);
+            TxMsgShardLeaseManager second = new TxMsgShardLeaseManager(database.getDataSource(), "tx_msg_lease", SHARDS, "second", 3000);
+
+            first.heartbeat();
+            first.currentShards();
+            second.heartbeat();
+            first.heartbeat();
+            Assert.assertEquals(5, first.currentShards().size());
+
+            // The second node leaves before the first could hand its shards over, the first takes them back
+            second.shutdown();
+            first.heartbeat();
+            Assert.assertEquals(new HashSet<>(SHARDS), new HashSet<>(first.currentShards()));
+            Assert.assertEquals(10, database.queryForInt("SELECT COUNT(*) FROM tx_msg_lease WHERE owner = 'first'"));
+            first.shutdown();
+        }
+    }
+
+    @Test
+    public void testSchedulerReportsDroppedShards() {
+        List<String> owned = new ArrayList<>(List.of("0", "1"));
+        Set<String> stopped = new HashSet<>();
+        TxMsgShardProvider provider = new TxMsgShardProvider() {
+            @Override
+            public List<String> currentShards() {
+                return new ArrayList<>(owned);
+            }
+
+            @Override
+            public void shardStopped(String shardTailNumber) {
+                stopped.add(shardTailNumber);
+            }
+        };
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            RocketTxMsgHandler handler = new RocketTxMsgHandler(new DefaultMQProducer("tx-msg-scheduler-test"), database.newV2Store("tx_msg_scheduler"), 10, 100, 100, 1);
+            TxMsgCompensationScheduler scheduler = new TxMsgCompensationScheduler(handler, provider);
+            scheduler.refreshShards();
+            Assert.assertTrue(stopped.isEmpty());
+
+            owned.remove("1");
+            scheduler.refreshShards();
+            Assert.assertEquals(Set.of("1"), stopped);
+            scheduler.shutdown();
+            handler.shutdown();
+        }
+    }
+
+    private static void assertSplit(List<String> firstShards, List<String> secondShards) {
+        Assert.assertEquals(5, firstShards.size());
+        Assert.assertEquals(5, secondShards.size());
+        Set<String> all = new HashSet<>(firstShards);
+        all.addAll(secondShards);
+        Assert.assertEquals(new HashSet<>(SHARDS), all);
+    }
+}
@@ -0,0 +1,189 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.exception.TxMsgException;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs against a PostgreSQL server given by the tx.msg.postgres.url, tx.msg.postgres.user and
+ * tx.msg.postgres.password system properties (default: postgres/postgres on localhost), skipped when none is reachable
+ */
+public class PostgresTxMsgStoreTest {
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private final List<String> tableNames = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        dataSource = new DriverManagerDataSource(
+                System.getProperty("tx.msg.postgres.url", "jdbc:postgresql://localhost:5432/postgres?connectTimeout=2"),
+                System.getProperty("tx.msg.postgres.user", "postgres"),
+                System.getProperty("tx.msg.postgres.password", "postgres"));
+        try (Connection ignored = dataSource.getConnection()) {
+            jdbcTemplate = new JdbcTemplate(dataSource);
+        } catch (SQLException e) {
+            Assume.assumeNoException("No PostgreSQL server available", e);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (String tableName : tableNames) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + tableName);
+        }
+    }
+
+    @Test
+    public void testCreateTable() {
+        String tableName = newTableName();
+        PostgresTxMsgStore store = new PostgresTxMsgStore(dataSource, storeConfig(tableName));
+
+        Assert.assertEquals(1, queryForInt("SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = current_schema() " +
+                "AND table_name = ? AND column_name = 'id' AND column_default LIKE 'nextval(%'", tableName));
+        Assert.assertEquals(3, queryForInt("SELECT COUNT(*) FROM pg_indexes WHERE schemaname = current_schema() " +
+                "AND tablename = ? AND indexname LIKE 'idx_%'", tableName));
+        TxMsgModel model = store.insertTxMsg(new TxMsgParam("key", "", "订单-order-✓"));
+        Assert.assertEquals("订单-order-✓", jdbcTemplate.queryForObject(
+                "SELECT content FROM " + tableName + " WHERE id = ?", String.class, model.getId()));
+
+        // The table still assigns ids itself: refused for the id generator
+        TxMsgStoreConfig generatorConfig = storeConfig(tableName);
+        generatorConfig.setIdGenerator(new TxMsgIdGenerator(1));
+        Assert.assertThrows(TxMsgException.class, () -> new PostgresTxMsgStore(dataSource, generatorConfig));
+    }
+
+    @Test
+    public void testCreateTableWithoutIdSequence() {
+        String tableName = newTableName();
+        TxMsgStoreConfig storeConfig = storeConfig(tableName);
+        storeConfig.setIdGenerator(new TxMsgIdGenerator(1));
+        PostgresTxMsgStore store = new PostgresTxMsgStore(dataSource, storeConfig);
+
+        Assert.assertEquals(0, queryForInt("SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = current_schema() " +
+                "AND table_name = ? AND column_name = 'id' AND column_default IS NOT NULL", tableName));
+        List<TxMsgModel> models = store.batchInsertTxMsg(List.of(new TxMsgParam("key-1", "content 1"), new TxMsgParam("key-2", "content 2")));
+        for (TxMsgModel model : models) {
+            Assert.assertEquals(1, TxMsgIdGenerator.workerIdOf(model.getId()));
+        }
+        Assert.assertEquals(ids(models), ids(store.getWaitingMessages(10, 0L, "")));
+    }
+
+    @Test
+    public void testConcurrentScannersClaimDisjointPages() throws Exception {
+        String tableName = newTableName();
+        PostgresTxMsgStore first = new PostgresTxMsgStore(dataSource, storeConfig(tableName));
+        PostgresTxMsgStore second = new PostgresTxMsgStore(dataSource, storeConfig(tableName));
+        Set<Long> insertedIds = insert(first, 300);
+
+        Set<Long> claimedIds = ConcurrentHashMap.newKeySet();
+        List<Long> duplicates = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            PostgresTxMsgStore store = i % 2 == 0 ? first : second;
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<TxMsgModel> page;
+                while (!(page = store.getWaitingMessages(7, 0L, "")).isEmpty()) {
+                    for (TxMsgModel model : page) {
+                        if (!claimedIds.add(model.getId())) {
+                            synchronized (duplicates) {
+                                duplicates.add(model.getId());
+                            }
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Assert.assertTrue("Claimed twice: " + duplicates, duplicates.isEmpty());
+        Assert.assertEquals(insertedIds, claimedIds);
+        Assert.assertEquals(300, queryForInt("SELECT COUNT(*) FROM " + tableName + " WHERE lease_owner IN (?, ?)",
+                first.getLeaseOwner(), second.getLeaseOwner()));
+    }
+
+    @Test
+    public void testSendFailureReleasesLeaseUntilDeadLetter() {
+        String tableName = newTableName();
+        PostgresTxMsgStore first = new PostgresTxMsgStore(dataSource, storeConfig(tableName));
+        PostgresTxMsgStore second = new PostgresTxMsgStore(dataSource, storeConfig(tableName));
+        List<Long> claimedIds = new ArrayList<>(insert(first, 3));
+        Assert.assertEquals(new HashSet<>(claimedIds), ids(first.getWaitingMessages(10, 0L, "")));
+
+        Assert.assertEquals(3, first.markSendFailed(claimedIds));
+        Assert.assertEquals(3, queryForInt("SELECT COUNT(*) FROM " + tableName + " WHERE status = ? AND lease_owner IS NULL " +
+                "AND lease_until = 0 AND retry_count = 1 AND next_retry_time > ?", TxMsgStatusEnum.WAITING.getStatus(), System.currentTimeMillis()));
+        // The retry backoff applies instead of the lease
+        Assert.assertTrue(second.getWaitingMessages(10, 0L, "").isEmpty());
+
+        jdbcTemplate.update("UPDATE " + tableName + " SET next_retry_time = 0");
+        Assert.assertEquals(new HashSet<>(claimedIds), ids(second.getWaitingMessages(10, 0L, "")));
+        // The second failure reaches the maximum retry count
+        Assert.assertEquals(3, second.markSendFailed(claimedIds));
+        Assert.assertEquals(3, queryForInt("SELECT COUNT(*) FROM " + tableName + " WHERE status = ? AND retry_count = 2",
+                TxMsgStatusEnum.FAILED.getStatus()));
+    }
+
+    private String newTableName() {
+        String tableName = "tx_msg_pg_" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        tableNames.add(tableName);
+        return tableName;
+    }
+
+    private static TxMsgStoreConfig storeConfig(String tableName) {
+        TxMsgStoreConfig storeConfig = new TxMsgStoreConfig(tableName, "topic", 1);
+        storeConfig.setTableVersion(TxMsgTableVersion.V2);
+        storeConfig.setLeaseMillis(60000);
+        storeConfig.setMaxRetryCount(2);
+        return storeConfig;
+    }
+
+    private int queryForInt(String sql, Object... args) {
+        Integer value = jdbcTemplate.queryForObject(sql, Integer.class, args);
+        return value == null ? 0 : value;
+    }
+
+    private static Set<Long> insert(TxMsgSqlStore store, int count) {
+        List<TxMsgParam> params = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            params.add(new TxMsgParam("key-" + i, "", "content-" + i));
+        }
+        return ids(store.batchInsertTxMsg(params));
+    }
+
+    private static Set<Long> ids(List<TxMsgModel> models) {
+        Set<Long> ids = new HashSet<>();
+        models.forEach(model -> ids.add(model.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,90 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+public class TxMsgExpiredMsgCleanerTest {
+
+    @Test
+    public void testHeldRangeDoesNotPinMarker() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newV2Store("tx_msg_clean");
+            List<TxMsgParam> params = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                params.add(new TxMsgParam("key-" + i, "", "content-" + i));
+            }
+            List<TxMsgModel> models = store.batchInsertTxMsg(params);
+            long deadLetterId = models.get(2).getId();
+            long waitingId = models.get(14).getId();
+            long lastId = models.get(29).getId();
+            database.getJdbcTemplate().update("UPDATE tx_msg_clean SET status = ?, create_time = ?",
+                    TxMsgStatusEnum.SENT.getStatus(), System.currentTimeMillis() - 3600000);
+            database.getJdbcTemplate().update("UPDATE tx_msg_clean SET status = ? WHERE id = ?", TxMsgStatusEnum.FAILED.getStatus(), deadLetterId);
+            database.getJdbcTemplate().update("UPDATE tx_msg_clean SET status = ? WHERE id = ?", TxMsgStatusEnum.WAITING.getStatus(), waitingId);
+
+            TxMsgExpiredMsgCleaner cleaner = new TxMsgExpiredMsgCleaner(database.getDataSource(), "tx_msg_clean", 60000, 1000);
+            cleaner.setRangeSize(10, 10, 10);
+            Assert.assertEquals(28, cleaner.runPass());
+            // The marker moved past the dead letter and the waiting message, only the waiting message's range is held
+            Assert.assertEquals(lastId + 1, database.queryForInt("SELECT next_id FROM tx_msg_clean_clean_progress"));
+            Assert.assertEquals(1, database.queryForInt("SELECT COUNT(*) FROM tx_msg_clean_clean_progress_held WHERE start_id <= ? AND end_id >= ?",
+                    waitingId, waitingId));
+            Assert.assertEquals(1, database.queryForInt("SELECT COUNT(*) FROM tx_msg_clean_clean_progress_held"));
+
+            // A newer message stops the walk, the held range is cleaned and released once its message is sent
+            store.insertTxMsg(new TxMsgParam("key-new", "", "content"));
+            database.getJdbcTemplate().update("UPDATE tx_msg_clean SET status = ? WHERE id = ?", TxMsgStatusEnum.SENT.getStatus(), waitingId);
+            Assert.assertEquals(1, cleaner.runPass());
+            Assert.assertEquals(0, database.queryForInt("SELECT COUNT(*) FROM tx_msg_clean_clean_progress_held"));
+            Assert.assertEquals(lastId + 1, database.queryForInt("SELECT next_id FROM tx_msg_clean_clean_progress"));
+            Assert.assertEquals(2, database.queryForInt("SELECT COUNT(*) FROM tx_msg_clean"));
+            Assert.assertEquals(0, cleaner.runPass());
+            cleaner.shutdown();
+        }
+    }
+
+    @Test
+    public void testRangeSizeAdaptsToLatency() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgExpiredMsgCleaner cleaner = new TxMsgExpiredMsgCleaner(database.getDataSource(), "tx_msg_clean", 60000);
+            cleaner.setRangeSize(100, 1000, 4000);
+            cleaner.setTargetLatencyMillis(100);
+
+            cleaner.adaptRangeSize(150);
+            Assert.assertEquals(500, cleaner.getRangeSize());
+            cleaner.adaptRangeSize(60);
+            Assert.assertEquals(500, cleaner.getRangeSize());
+            cleaner.adaptRangeSize(10);
+            Assert.assertEquals(750, cleaner.getRangeSize());
+            for (int i = 0; i < 10; i++) {
+                cleaner.adaptRangeSize(10);
+            }
+            Assert.assertEquals(4000, cleaner.getRangeSize());
+            for (int i = 0; i < 10; i++) {
+                cleaner.adaptRangeSize(1000);
+            }
+            Assert.assertEquals(100, cleaner.getRangeSize());
+            cleaner.shutdown();
+        }
+    }
+
+    @Test
+    public void testThrottleKeepsRowRate() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgExpiredMsgCleaner cleaner = new TxMsgExpiredMsgCleaner(database.getDataSource(), "tx_msg_clean", 60000);
+            cleaner.setMaxRowsPerSecond(1000);
+            Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(400), cleaner.throttleNanos(500, TimeUnit.MILLISECONDS.toNanos(100)));
+            Assert.assertEquals(0, cleaner.throttleNanos(50, TimeUnit.MILLISECONDS.toNanos(100)));
+            Assert.assertEquals(0, cleaner.throttleNanos(0, 0));
+            cleaner.shutdown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+/**
+ * Embedded H2 database (MySQL mode) for the tests, the tables are created by the stores from their own DDL
+ */
+public class TxMsgH2Database implements AutoCloseable {
+
+    private final JdbcConnectionPool dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    public TxMsgH2Database() {
+        this.dataSource = JdbcConnectionPool.create("jdbc:h2:mem:tx-msg-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public TxMsgSqlStore newStore(TxMsgStoreConfig storeConfig) {
+        return new TxMsgSqlStore(dataSource, storeConfig) {
+            @Override
+            protected String createTableSql() {
+                return withoutIndexComments(super.createTableSql());
+            }
+
+            @Override
+            protected String createArchiveTableSql() {
+                // H2 index names are unique per schema, not per table
+                return withoutIndexComments(super.createArchiveTableSql()).replace("KEY `idx_", "KEY `archive_idx_");
+            }
+
+            @Override
+            protected String ackDestinationsSql() {
+                // H2 has no | operator
+                return "UPDATE %s SET acked_mask = BITOR(acked_mask, CAST(? AS INT)), update_time = ? WHERE status = ? AND id IN (%s)";
+            }
+
+            @Override
+            protected String checkIdSequenceSql() {
+                // H2 stores unquoted names in upper case and reports AUTO_INCREMENT as an identity column
+                return "SELECT COUNT(*) FROM information_schema.columns WHERE table_name = UPPER(?) AND column_name = 'ID' AND is_identity = 'YES'";
+            }
+        };
+    }
+
+    /**
+     * V2 layout store of the given table, default topic "topic" and one digit random factor (shards 0 to 9)
+     */
+    public TxMsgSqlStore newV2Store(String tableName) {
+        return newStore(v2Config(tableName));
+    }
+
+    public static TxMsgStoreConfig v2Config(String tableName) {
+        TxMsgStoreConfig storeConfig = new TxMsgStoreConfig(tableName, "topic", 1);
+        storeConfig.setTableVersion(TxMsgTableVersion.V2);
+        return storeConfig;
+    }
+
+    public int queryForInt(String sql, Object... args) {
+        Integer value = jdbcTemplate.queryForObject(sql, Integer.class, args);
+        return value == null ? 0 : value;
+    }
+
+    @Override
+    public void close() {
+        jdbcTemplate.execute("SHUTDOWN");
+        dataSource.dispose();
+    }
+}
@@ -0,0 +1,57 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class TxMsgIdGeneratorTest {
+
+    private static final long NOW = TxMsgIdGenerator.EPOCH_MILLIS + 86400000L;
+
+    @Test
+    public void testIncreasingAcrossSequenceOverflow() {
+        AtomicLong calls = new AtomicLong();
+        // 5000 clock reads per millisecond, more than the 4096 ids of a millisecond
+        TxMsgIdGenerator generator = new TxMsgIdGenerator(() -> 5, 10, () -> NOW + calls.getAndIncrement() / 5000);
+        Set<Long> ids = new HashSet<>();
+        long lastId = -1;
+        for (int i = 0; i < 10000; i++) {
+            long id = generator.nextId();
+            Assert.assertTrue(id > lastId);
+            Assert.assertEquals(5, TxMsgIdGenerator.workerIdOf(id));
+            ids.add(id);
+            lastId = id;
+        }
+        Assert.assertEquals(10000, ids.size());
+    }
+
+    @Test
+    public void testLayout() {
+        TxMsgIdGenerator generator = new TxMsgIdGenerator(() -> 1023, 10, () -> NOW);
+        long id = generator.nextId();
+        Assert.assertEquals(NOW, TxMsgIdGenerator.timestampOf(id));
+        Assert.assertEquals(1023, TxMsgIdGenerator.workerIdOf(id));
+        for (long i = 0; i < 1000; i++) {
+            int shard = TxMsgIdGenerator.shardOf(id + i, 2);
+            Assert.assertTrue(shard >= 0 && shard < 100);
+        }
+    }
+
+    @Test
+    public void testClockMovedBackwards() {
+        AtomicLong clock = new AtomicLong(NOW);
+        TxMsgIdGenerator generator = new TxMsgIdGenerator(() -> 1, 10, clock::get);
+        long id = generator.nextId();
+        clock.set(NOW - 10);
+        long nextId = generator.nextId();
+        Assert.assertTrue(nextId > id);
+        Assert.assertEquals(NOW, TxMsgIdGenerator.timestampOf(nextId));
+        clock.set(NOW - 11);
+        Assert.assertThrows(TxMsgException.class, generator::nextId);
+    }
+}
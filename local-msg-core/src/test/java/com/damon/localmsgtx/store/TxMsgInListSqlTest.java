@@ -0,0 +1,31 @@
+package com.damon.localmsgtx.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+
+public class TxMsgInListSqlTest {
+
+    @Test
+    public void testBucketIndex() {
+        Assert.assertEquals(1, TxMsgInListSql.BUCKET_SIZES[TxMsgInListSql.bucketIndex(1)]);
+        Assert.assertEquals(4, TxMsgInListSql.BUCKET_SIZES[TxMsgInListSql.bucketIndex(3)]);
+        Assert.assertEquals(64, TxMsgInListSql.BUCKET_SIZES[TxMsgInListSql.bucketIndex(50)]);
+        Assert.assertEquals(512, TxMsgInListSql.BUCKET_SIZES[TxMsgInListSql.bucketIndex(512)]);
+    }
+
+    @Test
+    public void testPaddedParams() {
+        Object[] params = TxMsgInListSql.params(new Object[]{0}, List.of(7L, 8L, 9L), 4);
+        Assert.assertArrayEquals(new Object[]{0, 7L, 8L, 9L, 9L}, params);
+    }
+
+    @Test
+    public void testSql() {
+        TxMsgInListSql inListSql = new TxMsgInListSql("DELETE FROM %s WHERE status = ? AND id IN (%s)", "mq_messages");
+        Assert.assertEquals("DELETE FROM mq_messages WHERE status = ? AND id IN (?,?,?,?)", inListSql.sql(3));
+    }
+
+}
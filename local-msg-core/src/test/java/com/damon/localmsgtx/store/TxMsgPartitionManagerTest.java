@@ -0,0 +1,52 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+
+public class TxMsgPartitionManagerTest {
+
+    private static final long DAY = TxMsgPartitionInterval.DAY.getMillis();
+    private static final long JAN_1 = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+    private static final long NOW = Instant.parse("2025-01-01T10:30:00Z").toEpochMilli();
+
+    @Test
+    public void testNewPartitionBounds() {
+        long targetBound = JAN_1 + 4 * DAY;
+        // Only p_max: the current day and the days ahead
+        Assert.assertEquals(List.of(JAN_1 + DAY, JAN_1 + 2 * DAY, JAN_1 + 3 * DAY, JAN_1 + 4 * DAY),
+                TxMsgPartitionManager.newPartitionBounds(TxMsgPartitionInterval.DAY, Long.MIN_VALUE, NOW, targetBound));
+        // Partitions ahead exist: continue after the last one
+        Assert.assertEquals(List.of(JAN_1 + 3 * DAY, JAN_1 + 4 * DAY),
+                TxMsgPartitionManager.newPartitionBounds(TxMsgPartitionInterval.DAY, JAN_1 + 2 * DAY, NOW, targetBound));
+        // Last partition in the past: the first new one covers the gap up to the end of today
+        Assert.assertEquals(JAN_1 + DAY,
+                (long) TxMsgPartitionManager.newPartitionBounds(TxMsgPartitionInterval.DAY, JAN_1 - 5 * DAY, NOW, targetBound).get(0));
+        Assert.assertTrue(TxMsgPartitionManager.newPartitionBounds(TxMsgPartitionInterval.DAY, targetBound, NOW, targetBound).isEmpty());
+
+        Assert.assertEquals(List.of(JAN_1 + 11 * 3600000L, JAN_1 + 12 * 3600000L),
+                TxMsgPartitionManager.newPartitionBounds(TxMsgPartitionInterval.HOUR, Long.MIN_VALUE, NOW, JAN_1 + 12 * 3600000L));
+    }
+
+    @Test
+    public void testPartitionNameIsStartOfLastInterval() {
+        Assert.assertEquals("p20250101", TxMsgPartitionInterval.DAY.partitionName(JAN_1 + DAY));
+        Assert.assertEquals("p20241231", TxMsgPartitionInterval.DAY.partitionName(JAN_1));
+        Assert.assertEquals("p2025010110", TxMsgPartitionInterval.HOUR.partitionName(JAN_1 + 11 * 3600000L));
+        Assert.assertEquals(JAN_1, TxMsgPartitionInterval.DAY.floor(NOW));
+    }
+
+    @Test
+    public void testPartitioningRequiresNonUniqueMsgKey() {
+        TxMsgStoreConfig storeConfig = TxMsgH2Database.v2Config("tx_msg_partitioned");
+        storeConfig.setPartitionInterval(TxMsgPartitionInterval.DAY);
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            IllegalArgumentException e = Assert.assertThrows(IllegalArgumentException.class, () -> database.newStore(storeConfig));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("uniqueMsgKey"));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.damon.localmsgtx.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+public class TxMsgSentStatusCoalescerTest {
+
+    @Test
+    public void testFlusherStartedByFirstSubmit() {
+        List<Long> ackedIds = Collections.synchronizedList(new ArrayList<>());
+        TxMsgSentStatusCoalescer coalescer = new TxMsgSentStatusCoalescer(recordingStore(ackedIds, null, null));
+        Assert.assertFalse(coalescer.isFlusherStarted());
+
+        Assert.assertTrue(coalescer.submit(1L));
+        Assert.assertTrue(coalescer.isFlusherStarted());
+        coalescer.close();
+        Assert.assertEquals(Collections.singletonList(1L), ackedIds);
+    }
+
+    @Test
+    public void testCloseWithoutSubmit() {
+        List<Long> ackedIds = Collections.synchronizedList(new ArrayList<>());
+        TxMsgSentStatusCoalescer coalescer = new TxMsgSentStatusCoalescer(recordingStore(ackedIds, null, null));
+        coalescer.close();
+        Assert.assertFalse(coalescer.isFlusherStarted());
+        Assert.assertFalse(coalescer.submit(1L));
+        Assert.assertTrue(ackedIds.isEmpty());
+    }
+
+    @Test
+    public void testOverflowDropsId() throws Exception {
+        List<Long> ackedIds = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // One queued id at most, the flusher is held inside the first update
+        TxMsgSentStatusCoalescer coalescer = new TxMsgSentStatusCoalescer(recordingStore(ackedIds, flushing, release), 1, 1, 10);
+        Assert.assertTrue(coalescer.submit(1L));
+        Assert.assertTrue(flushing.await(10, TimeUnit.SECONDS));
+
+        Assert.assertTrue(coalescer.submit(2L));
+        Assert.assertFalse(coalescer.submit(3L));
+
+        release.countDown();
+        coalescer.close();
+        Assert.assertEquals(Arrays.asList(1L, 2L), ackedIds);
+    }
+
+    @Test
+    public void testCloseFlushesQueuedIds() {
+        List<Long> ackedIds = Collections.synchronizedList(new ArrayList<>());
+        // Large batches and a long interval: nothing is written before close
+        TxMsgSentStatusCoalescer coalescer = new TxMsgSentStatusCoalescer(recordingStore(ackedIds, null, null), 100, 100, 200);
+        for (long msgId = 1; msgId <= 5; msgId++) {
+            Assert.assertTrue(coalescer.submit(msgId));
+        }
+        coalescer.close();
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), ackedIds);
+        Assert.assertFalse(coalescer.submit(6L));
+    }
+
+    /**
+     * Store recording the acknowledged ids, the first update signals {@code flushing} and waits for {@code release}
+     */
+    private static ITxMsgStore recordingStore(List<Long> ackedIds, CountDownLatch flushing, CountDownLatch release) {
+        return (ITxMsgStore) Proxy.newProxyInstance(ITxMsgStore.class.getClassLoader(), new Class<?>[]{ITxMsgStore.class},
+                (proxy, method, args) -> {
+                    if (!"ackSentMsg".equals(method.getName())) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    @SuppressWarnings("unchecked")
+                    List<Long> msgIds = (List<Long>) args[0];
+                    ackedIds.addAll(msgIds);
+                    if (flushing != null && flushing.getCount() > 0) {
+                        flushing.countDown();
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    return msgIds.size();
+                });
+    }
+}
@@ -0,0 +1,83 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class TxMsgSqlStoreAckModeTest {
+
+    @Test
+    public void testArchiveMovesOnlyWaitingRows() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newStore(ackModeConfig(TxMsgAckMode.ARCHIVE));
+            List<Long> ids = insert(store, 3);
+            database.getJdbcTemplate().update("UPDATE tx_msg_ack SET status = ? WHERE id = ?", TxMsgStatusEnum.SENT.getStatus(), ids.get(2));
+
+            List<Long> ackedIds = new ArrayList<>(ids);
+            ackedIds.add(-1L);
+            Assert.assertEquals(2, store.ackSentMsg(ackedIds));
+            Assert.assertEquals(2, database.queryForInt("SELECT COUNT(*) FROM tx_msg_ack_archive WHERE status = ? AND id IN (?, ?)",
+                    TxMsgStatusEnum.SENT.getStatus(), ids.get(0), ids.get(1)));
+            // The row no longer waiting was neither archived nor deleted
+            Assert.assertEquals(1, database.queryForInt("SELECT COUNT(*) FROM tx_msg_ack WHERE id = ?", ids.get(2)));
+            Assert.assertEquals(1, database.queryForInt("SELECT COUNT(*) FROM tx_msg_ack"));
+            Assert.assertEquals(0, store.ackSentMsg(ids));
+            Assert.assertEquals(2, database.queryForInt("SELECT COUNT(*) FROM tx_msg_ack_archive"));
+        }
+    }
+
+    @Test
+    public void testDeleteOnAck() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newStore(ackModeConfig(TxMsgAckMode.DELETE));
+            List<Long> ids = insert(store, 3);
+
+            Assert.assertEquals(2, store.ackSentMsg(ids.subList(0, 2)));
+            TxMsgModel last = new TxMsgModel();
+            last.setId(ids.get(2));
+            Assert.assertEquals(1, store.updateSendMsg(last));
+            Assert.assertEquals(0, database.queryForInt("SELECT COUNT(*) FROM tx_msg_ack"));
+            Assert.assertEquals(0, store.ackSentMsg(ids));
+            // Nothing is left for the cleanup job
+            store.deleteExpiredSendedMsg(Long.MAX_VALUE, 100, TxMsgStatusEnum.SENT);
+        }
+    }
+
+    @Test
+    public void testMarkSentThenCleanup() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newStore(ackModeConfig(TxMsgAckMode.MARK_SENT));
+            List<Long> ids = insert(store, 3);
+
+            Assert.assertEquals(2, store.ackSentMsg(ids.subList(0, 2)));
+            Assert.assertEquals(2, database.queryForInt("SELECT COUNT(*) FROM tx_msg_ack WHERE status = ?", TxMsgStatusEnum.SENT.getStatus()));
+            Assert.assertEquals(List.of(ids.get(2)), store.getWaitingMessages(10, 0L, "").stream().map(TxMsgModel::getId).toList());
+
+            store.deleteExpiredSendedMsg(System.currentTimeMillis(), 1, TxMsgStatusEnum.SENT);
+            Assert.assertEquals(1, database.queryForInt("SELECT COUNT(*) FROM tx_msg_ack WHERE id = ? AND status = ?",
+                    ids.get(2), TxMsgStatusEnum.WAITING.getStatus()));
+            Assert.assertEquals(1, database.queryForInt("SELECT COUNT(*) FROM tx_msg_ack"));
+        }
+    }
+
+    static TxMsgStoreConfig ackModeConfig(TxMsgAckMode ackMode) {
+        TxMsgStoreConfig storeConfig = TxMsgH2Database.v2Config("tx_msg_ack");
+        storeConfig.setAckMode(ackMode);
+        return storeConfig;
+    }
+
+    static List<Long> insert(TxMsgSqlStore store, int count) {
+        List<TxMsgParam> params = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            params.add(new TxMsgParam("key-" + i, "", "content-" + i));
+        }
+        return store.batchInsertTxMsg(params).stream().map(TxMsgModel::getId).toList();
+    }
+}
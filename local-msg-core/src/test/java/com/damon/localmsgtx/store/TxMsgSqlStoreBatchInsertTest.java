@@ -0,0 +1,48 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class TxMsgSqlStoreBatchInsertTest {
+
+    @Test
+    public void testGeneratedIdsFollowMessageOrder() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            assertIdsMatchRows(database, database.newV2Store("tx_msg_batch"));
+        }
+    }
+
+    @Test
+    public void testAssignedIdsFollowMessageOrder() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgStoreConfig storeConfig = TxMsgH2Database.v2Config("tx_msg_batch");
+            storeConfig.setIdGenerator(new TxMsgIdGenerator(3));
+            assertIdsMatchRows(database, database.newStore(storeConfig));
+        }
+    }
+
+    private static void assertIdsMatchRows(TxMsgH2Database database, TxMsgSqlStore store) {
+        List<TxMsgParam> params = new ArrayList<>();
+        // Keys in descending order, so that an id list sorted by key would not match the message order
+        for (int i = 0; i < 600; i++) {
+            params.add(new TxMsgParam(String.format("key-%04d", 600 - i), "tag", "content-" + i));
+        }
+        List<TxMsgModel> models = store.batchInsertTxMsg(params);
+        Assert.assertEquals(params.size(), models.size());
+        for (int i = 0; i < params.size(); i++) {
+            TxMsgModel model = models.get(i);
+            Assert.assertEquals(params.get(i).getMsgKey(), model.getMsgKey());
+            Assert.assertEquals(params.get(i).getMsgKey(), database.getJdbcTemplate().queryForObject(
+                    "SELECT msg_key FROM tx_msg_batch WHERE id = ?", String.class, model.getId()));
+            Assert.assertEquals("content-" + i, database.getJdbcTemplate().queryForObject(
+                    "SELECT content FROM tx_msg_batch WHERE id = ?", String.class, model.getId()));
+        }
+    }
+}
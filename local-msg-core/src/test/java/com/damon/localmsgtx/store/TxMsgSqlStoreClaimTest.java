@@ -0,0 +1,122 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class TxMsgSqlStoreClaimTest {
+
+    @Test
+    public void testConcurrentScannersClaimDisjointPages() throws Exception {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore first = database.newStore(claimConfig());
+            TxMsgSqlStore second = database.newStore(claimConfig());
+            Set<Long> insertedIds = insert(first, 300);
+
+            Set<Long> claimedIds = ConcurrentHashMap.newKeySet();
+            List<Long> duplicates = new ArrayList<>();
+            ExecutorService executor = Executors.newFixedThreadPool(6);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                TxMsgSqlStore store = i % 2 == 0 ? first : second;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<TxMsgModel> page;
+                    while (!(page = store.getWaitingMessages(7, 0L, "")).isEmpty()) {
+                        for (TxMsgModel model : page) {
+                            if (!claimedIds.add(model.getId())) {
+                                synchronized (duplicates) {
+                                    duplicates.add(model.getId());
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            Assert.assertTrue("Claimed twice: " + duplicates, duplicates.isEmpty());
+            Assert.assertEquals(insertedIds, claimedIds);
+            Assert.assertEquals(300, database.queryForInt("SELECT COUNT(*) FROM tx_msg_claim WHERE lease_owner IN (?, ?)",
+                    first.getLeaseOwner(), second.getLeaseOwner()));
+        }
+    }
+
+    @Test
+    public void testLeaseFilterAndExpiredLeaseReclaim() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore first = database.newStore(claimConfig());
+            TxMsgSqlStore second = database.newStore(claimConfig());
+            Set<Long> insertedIds = insert(first, 5);
+
+            Assert.assertEquals(insertedIds, ids(first.getWaitingMessages(10, 0L, "")));
+            // Leased to the first scanner: skipped by every scanner until the lease expires
+            Assert.assertTrue(second.getWaitingMessages(10, 0L, "").isEmpty());
+            Assert.assertTrue(first.getWaitingMessages(10, 0L, "").isEmpty());
+
+            database.getJdbcTemplate().update("UPDATE tx_msg_claim SET lease_until = ?", System.currentTimeMillis() - 1);
+            Assert.assertEquals(insertedIds, ids(second.getWaitingMessages(10, 0L, "")));
+            Assert.assertEquals(5, database.queryForInt("SELECT COUNT(*) FROM tx_msg_claim WHERE lease_owner = ?", second.getLeaseOwner()));
+        }
+    }
+
+    @Test
+    public void testSendFailureReleasesLease() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore first = database.newStore(claimConfig());
+            TxMsgSqlStore second = database.newStore(claimConfig());
+            List<Long> claimedIds = new ArrayList<>(insert(first, 3));
+            Assert.assertEquals(new HashSet<>(claimedIds), ids(first.getWaitingMessages(10, 0L, "")));
+
+            Assert.assertEquals(3, first.markSendFailed(claimedIds));
+            Assert.assertEquals(3, database.queryForInt(
+                    "SELECT COUNT(*) FROM tx_msg_claim WHERE lease_owner IS NULL AND lease_until = 0 AND retry_count = 1 AND next_retry_time > ?",
+                    System.currentTimeMillis()));
+            // The retry backoff applies instead of the lease
+            Assert.assertTrue(second.getWaitingMessages(10, 0L, "").isEmpty());
+
+            database.getJdbcTemplate().update("UPDATE tx_msg_claim SET next_retry_time = 0");
+            Assert.assertEquals(new HashSet<>(claimedIds), ids(second.getWaitingMessages(10, 0L, "")));
+        }
+    }
+
+    private static TxMsgStoreConfig claimConfig() {
+        TxMsgStoreConfig storeConfig = TxMsgH2Database.v2Config("tx_msg_claim");
+        storeConfig.setClaimWaitingMessages(true);
+        storeConfig.setLeaseMillis(60000);
+        return storeConfig;
+    }
+
+    private static Set<Long> insert(TxMsgSqlStore store, int count) {
+        List<TxMsgParam> params = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            params.add(new TxMsgParam("key-" + i, "", "content-" + i));
+        }
+        return ids(store.batchInsertTxMsg(params));
+    }
+
+    private static Set<Long> ids(List<TxMsgModel> models) {
+        Set<Long> ids = new HashSet<>();
+        models.forEach(model -> ids.add(model.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,79 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.codec.TxMsgContentCodec;
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.model.TxMsgModel;
+import com.damon.localmsgtx.model.TxMsgParam;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+
+public class TxMsgSqlStoreCodecTest {
+
+    private static final String LARGE_CONTENT = "{\"order\":1,\"状态\":\"已支付\"}".repeat(200);
+
+    @Test
+    public void testCompressedContentRoundTrip() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newStore(codecConfig(TxMsgContentCodec.LZ4));
+            List<TxMsgModel> models = store.batchInsertTxMsg(List.of(new TxMsgParam("large", "", LARGE_CONTENT),
+                    new TxMsgParam("small", "", "small content"),
+                    new TxMsgParam("bytes", "", LARGE_CONTENT.getBytes(StandardCharsets.UTF_8))));
+
+            // Content above the threshold is stored compressed, below it as text
+            assertStored(database, models.get(0).getId(), TxMsgContentCodec.LZ4, true);
+            assertStored(database, models.get(1).getId(), TxMsgContentCodec.NONE, false);
+            assertStored(database, models.get(2).getId(), TxMsgContentCodec.LZ4, true);
+
+            List<TxMsgModel> waiting = store.getWaitingMessages(10, 0L, "");
+            Assert.assertEquals(LARGE_CONTENT, new String(waiting.get(0).getContentBytes(), StandardCharsets.UTF_8));
+            Assert.assertEquals("small content", new String(waiting.get(1).getContentBytes(), StandardCharsets.UTF_8));
+            Assert.assertEquals(LARGE_CONTENT, waiting.get(2).getContent());
+        }
+    }
+
+    @Test
+    public void testUncompressedBytesStoredAsText() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore store = database.newStore(codecConfig(TxMsgContentCodec.NONE));
+            String content = "订单-order-✓-😀";
+            TxMsgModel model = store.insertTxMsg(new TxMsgParam("bytes", "", content.getBytes(StandardCharsets.UTF_8)));
+
+            // Bound as UTF-8 bytes, read back as the same text
+            Assert.assertEquals(content, database.getJdbcTemplate().queryForObject(
+                    "SELECT content FROM tx_msg_codec WHERE id = ?", String.class, model.getId()));
+            assertStored(database, model.getId(), TxMsgContentCodec.NONE, false);
+        }
+    }
+
+    @Test
+    public void testRowsOfAnotherCodecStayReadable() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgSqlStore deflateStore = database.newStore(codecConfig(TxMsgContentCodec.DEFLATE));
+            long id = deflateStore.insertTxMsg(new TxMsgParam("large", "", LARGE_CONTENT)).getId();
+            assertStored(database, id, TxMsgContentCodec.DEFLATE, true);
+
+            TxMsgSqlStore lz4Store = database.newStore(codecConfig(TxMsgContentCodec.LZ4));
+            Assert.assertEquals(LARGE_CONTENT, lz4Store.getWaitingMessages(10, 0L, "").get(0).getContent());
+        }
+    }
+
+    private static void assertStored(TxMsgH2Database database, long id, TxMsgContentCodec codec, boolean compressed) {
+        Map<String, Object> row = database.getJdbcTemplate().queryForMap(
+                "SELECT content, content_codec, content_bytes FROM tx_msg_codec WHERE id = ?", id);
+        Assert.assertEquals(codec.getCode(), ((Number) row.get("content_codec")).intValue());
+        Assert.assertEquals(compressed, row.get("content_bytes") != null);
+        Assert.assertEquals(compressed, ((String) row.get("content")).isEmpty());
+    }
+
+    private static TxMsgStoreConfig codecConfig(TxMsgContentCodec codec) {
+        TxMsgStoreConfig storeConfig = TxMsgH2Database.v2Config("tx_msg_codec");
+        storeConfig.setContentCodec(codec);
+        storeConfig.setContentCompressThreshold(512);
+        return storeConfig;
+    }
+}
@@ -0,0 +1,51 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.exception.TxMsgDuplicateKeyException;
+import com.damon.localmsgtx.exception.TxMsgException;
+import com.damon.localmsgtx.exception.TxMsgStoreException;
+import com.damon.localmsgtx.model.TxMsgParam;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+
+public class TxMsgSqlStoreIdGeneratorTest {
+
+    private static final long NOW = TxMsgIdGenerator.EPOCH_MILLIS + 86400000L;
+
+    @Test
+    public void testIdCollisionIsNotReportedAsDuplicateMsgKey() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            // Two writers sharing a worker id and a clock generate the same ids
+            TxMsgSqlStore first = database.newStore(idConfig(new TxMsgIdGenerator(() -> 7, 10, () -> NOW)));
+            TxMsgSqlStore second = database.newStore(idConfig(new TxMsgIdGenerator(() -> 7, 10, () -> NOW)));
+
+            long id = first.insertTxMsg(new TxMsgParam("k1", "", "content")).getId();
+            Assert.assertEquals(7, TxMsgIdGenerator.workerIdOf(id));
+            Assert.assertThrows(TxMsgStoreException.class, () -> second.insertTxMsg(new TxMsgParam("k2", "", "content")));
+            Assert.assertThrows(TxMsgDuplicateKeyException.class, () -> first.insertTxMsg(new TxMsgParam("k1", "", "content")));
+            Assert.assertThrows(TxMsgDuplicateKeyException.class,
+                    () -> first.batchInsertTxMsg(List.of(new TxMsgParam("k3", "", "content"), new TxMsgParam("k1", "", "content"))));
+        }
+    }
+
+    @Test
+    public void testTableWithIdSequenceRefused() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            database.newStore(TxMsgH2Database.v2Config("tx_msg_id"));
+            Assert.assertThrows(TxMsgException.class, () -> database.newStore(idConfig(new TxMsgIdGenerator(1))));
+
+            new TxMsgTableMigrator(database.getDataSource(), "tx_msg_id").dropIdSequence();
+            TxMsgSqlStore store = database.newStore(idConfig(new TxMsgIdGenerator(1)));
+            Assert.assertEquals(1, TxMsgIdGenerator.workerIdOf(store.insertTxMsg(new TxMsgParam("k1", "", "content")).getId()));
+        }
+    }
+
+    private static TxMsgStoreConfig idConfig(TxMsgIdGenerator idGenerator) {
+        TxMsgStoreConfig storeConfig = TxMsgH2Database.v2Config("tx_msg_id");
+        storeConfig.setIdGenerator(idGenerator);
+        return storeConfig;
+    }
+}
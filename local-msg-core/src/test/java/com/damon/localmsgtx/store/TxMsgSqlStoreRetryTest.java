@@ -0,0 +1,54 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.config.TxMsgStoreConfig;
+import com.damon.localmsgtx.model.TxMsgStatusEnum;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+
+public class TxMsgSqlStoreRetryTest {
+
+    @Test
+    public void testExponentialBackoffThenDeadLetter() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgStoreConfig storeConfig = TxMsgH2Database.v2Config("tx_msg_retry");
+            storeConfig.setMaxRetryCount(3);
+            storeConfig.setRetryBackoffMillis(1000);
+            storeConfig.setMaxRetryBackoffMillis(3000);
+            TxMsgSqlStore store = database.newStore(storeConfig);
+            long id = store.insertTxMsg("content", "key", "").getId();
+            List<Long> ids = List.of(id);
+
+            assertBackoff(database, store, ids, 1, TxMsgStatusEnum.WAITING, 1000);
+            // Not due yet: skipped by the scan
+            Assert.assertTrue(store.getWaitingMessages(10, 0L, "").isEmpty());
+            assertBackoff(database, store, ids, 2, TxMsgStatusEnum.WAITING, 2000);
+            // Capped at the maximum backoff, the last attempt moves the message to the dead letters
+            assertBackoff(database, store, ids, 3, TxMsgStatusEnum.FAILED, 3000);
+            Assert.assertEquals(0, store.markSendFailed(ids));
+
+            database.getJdbcTemplate().update("UPDATE tx_msg_retry SET next_retry_time = 0");
+            Assert.assertTrue(store.getWaitingMessages(10, 0L, "").isEmpty());
+            Assert.assertEquals(1, store.resetFailedMsg(ids));
+            Assert.assertEquals(1, database.queryForInt("SELECT COUNT(*) FROM tx_msg_retry WHERE status = ? AND retry_count = 0 AND next_retry_time = 0",
+                    TxMsgStatusEnum.WAITING.getStatus()));
+            Assert.assertEquals(1, store.getWaitingMessages(10, 0L, "").size());
+        }
+    }
+
+    private static void assertBackoff(TxMsgH2Database database, TxMsgSqlStore store, List<Long> ids, int retryCount,
+                                      TxMsgStatusEnum status, long backoffMillis) {
+        long before = System.currentTimeMillis();
+        Assert.assertEquals(1, store.markSendFailed(ids));
+        long after = System.currentTimeMillis();
+        Map<String, Object> row = database.getJdbcTemplate().queryForMap(
+                "SELECT status, retry_count, next_retry_time FROM tx_msg_retry WHERE id = ?", ids.get(0));
+        Assert.assertEquals(status.getStatus(), ((Number) row.get("status")).intValue());
+        Assert.assertEquals(retryCount, ((Number) row.get("retry_count")).intValue());
+        long nextRetryTime = ((Number) row.get("next_retry_time")).longValue();
+        Assert.assertTrue("next_retry_time " + nextRetryTime, nextRetryTime >= before + backoffMillis && nextRetryTime <= after + backoffMillis);
+    }
+}
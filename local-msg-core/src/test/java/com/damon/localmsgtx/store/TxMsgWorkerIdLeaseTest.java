@@ -0,0 +1,78 @@
+package com.damon.localmsgtx.store;
+
+import com.damon.localmsgtx.exception.TxMsgException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class TxMsgWorkerIdLeaseTest {
+
+    @Test
+    public void testNodesLeaseDistinctWorkerIds() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgWorkerIdLease first = new TxMsgWorkerIdLease(database.getDataSource(), "tx_msg_worker_id", 3000);
+            TxMsgWorkerIdLease second = new TxMsgWorkerIdLease(database.getDataSource(), "tx_msg_worker_id", 3000);
+            Assert.assertThrows(TxMsgException.class, first::getWorkerId);
+
+            first.start();
+            second.start();
+            Assert.assertEquals(0, first.getWorkerId());
+            Assert.assertEquals(1, second.getWorkerId());
+
+            // A released worker id is reused by the next node
+            first.shutdown();
+            Assert.assertThrows(TxMsgException.class, first::getWorkerId);
+            TxMsgWorkerIdLease third = new TxMsgWorkerIdLease(database.getDataSource(), "tx_msg_worker_id", 3000);
+            third.start();
+            Assert.assertEquals(0, third.getWorkerId());
+            second.shutdown();
+            third.shutdown();
+        }
+    }
+
+    @Test
+    public void testTakenOverLeaseMovesToNewWorkerId() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgWorkerIdLease first = new TxMsgWorkerIdLease(database.getDataSource(), "tx_msg_worker_id", 3000);
+            first.start();
+            Assert.assertEquals(0, first.getWorkerId());
+
+            // The first node stalled past its lease, the second takes its worker id over
+            database.getJdbcTemplate().update("UPDATE tx_msg_worker_id SET lease_until = ?", System.currentTimeMillis() - 1);
+            TxMsgWorkerIdLease second = new TxMsgWorkerIdLease(database.getDataSource(), "tx_msg_worker_id", 3000);
+            second.start();
+            Assert.assertEquals(0, second.getWorkerId());
+
+            first.renew();
+            Assert.assertEquals(1, first.getWorkerId());
+            Assert.assertEquals(2, database.queryForInt("SELECT COUNT(*) FROM tx_msg_worker_id"));
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    @Test
+    public void testWorkerIdRefusedWhenRenewFails() {
+        try (TxMsgH2Database database = new TxMsgH2Database()) {
+            TxMsgWorkerIdLease first = new TxMsgWorkerIdLease(database.getDataSource(), "tx_msg_worker_id", 3000);
+            first.start();
+
+            // Worker id 0 taken over and every other worker id leased: the renewal finds no worker id to move to
+            long leaseUntil = System.currentTimeMillis() + 60000;
+            database.getJdbcTemplate().update("UPDATE tx_msg_worker_id SET lease_owner = 'other'");
+            List<Object[]> leases = new ArrayList<>();
+            for (int workerId = 1; workerId <= TxMsgIdGenerator.MAX_WORKER_ID; workerId++) {
+                leases.add(new Object[]{workerId, "other", leaseUntil});
+            }
+            database.getJdbcTemplate().batchUpdate("INSERT INTO tx_msg_worker_id (worker_id, lease_owner, lease_until) VALUES (?, ?, ?)", leases);
+
+            first.renew();
+            Assert.assertThrows(TxMsgException.class, first::getWorkerId);
+            first.shutdown();
+            Assert.assertEquals(TxMsgIdGenerator.MAX_WORKER_ID + 1, database.queryForInt("SELECT COUNT(*) FROM tx_msg_worker_id"));
+        }
+    }
+}
@@ -15,12 +15,8 @@ public class OrderService {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    @Qualifier("kafkaTxMsgClient")
-    private ITxMsgClient kafkaTxMsgClient;
-
-    @Autowired
-    @Qualifier("rocketTxMsgClient")
-    private ITxMsgClient rocketTxMsgClient;
+    @Qualifier("fanoutTxMsgClient")
+    private ITxMsgClient fanoutTxMsgClient;
 
     /**
      * 创建订单并发送事务消息
@@ -33,15 +29,12 @@ public class OrderService {
         String insertOrderSql = "INSERT INTO orders (order_id, product, quantity, status) VALUES (?, ?, ?, ?)";
         jdbcTemplate.update(insertOrderSql, orderId, product, quantity, "CREATED");
 
-        // 2. 发送事务消息（将在事务提交后发送）
+        // 2. 发送事务消息（将在事务提交后发送到 Kafka 和 RocketMQ，只插入一条消息记录）
         String messageContent = String.format("{\"orderId\":\"%s\",\"product\":\"%s\",\"quantity\":%d}",
                 orderId, product, quantity);
 
-        Long rocketmqMsgId = rocketTxMsgClient.sendTxMsg(orderId, "test", messageContent);
-        log.info("Order created and transactional message registered, msgId: " + rocketmqMsgId);
-
-        Long kafkaMsgId = kafkaTxMsgClient.sendTxMsg(orderId, messageContent);
-        log.info("Order created and transactional message registered, msgId: " + kafkaMsgId);
+        Long msgId = fanoutTxMsgClient.sendTxMsg(orderId, "test", messageContent);
+        log.info("Order created and transactional message registered, msgId: " + msgId);
 
     }
 
@@ -50,8 +43,7 @@ public class OrderService {
      * 手动触发重发失败的消息
      */
     public void resendWaitingTxMsg(String shardTailNumber) {
-        kafkaTxMsgClient.resendWaitingTxMsg(shardTailNumber);
-        rocketTxMsgClient.resendWaitingTxMsg(shardTailNumber);
+        fanoutTxMsgClient.resendWaitingTxMsg(shardTailNumber);
     }
 
     /**
@@ -60,7 +52,6 @@ public class OrderService {
     public void cleanupExpiredMessages() {
         // 清理1小时前的过期消息
         long oneHourAgo = System.currentTimeMillis() - 60 * 60 * 1000;
-        kafkaTxMsgClient.cleanExpiredTxMsg(oneHourAgo);
-        rocketTxMsgClient.cleanExpiredTxMsg(oneHourAgo);
+        fanoutTxMsgClient.cleanExpiredTxMsg(oneHourAgo);
     }
 }
\ No newline at end of file
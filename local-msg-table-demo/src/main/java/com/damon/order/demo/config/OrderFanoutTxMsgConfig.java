@@ -3,31 +3,37 @@ package com.damon.order.demo.config;
 import com.damon.localmsgtx.client.DefaultTxMsgClient;
 import com.damon.localmsgtx.client.ITxMsgClient;
 import com.damon.localmsgtx.config.TxMsgConfig;
-import com.damon.localmsgtx.config.factory.TxMsgRocketConfigFactory;
+import com.damon.localmsgtx.config.factory.TxMsgFanoutConfigFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.sql.DataSource;
 
+/**
+ * Order events are stored once and delivered to both Kafka and RocketMQ
+ */
 @Configuration
-public class OrderRocketTxMsgConfig {
+public class OrderFanoutTxMsgConfig {
     public static final String ORDER_TOPIC = "order_events";
 
+    public static final String KAFKA_SERVER = "localhost:9092";
+
     public static final String ROCKETMQ_SERVER = "localhost:9876";
 
     public static final String ORDER_GROUP = "order_group";
 
-    public static final String ROCKET_TX_MSG_TABLE = "rocket_transactional_messages";
+    public static final String FANOUT_TX_MSG_TABLE = "fanout_transactional_messages";
 
-    @Bean("rocketTxMsgClient")
+    @Bean("fanoutTxMsgClient")
     public ITxMsgClient txMsgClient(DataSource dataSource) {
-        TxMsgConfig config = TxMsgRocketConfigFactory.simpleConfig(
+        TxMsgConfig config = TxMsgFanoutConfigFactory.simpleConfig(
+                KAFKA_SERVER,
                 ROCKETMQ_SERVER,
                 ORDER_TOPIC,
                 ORDER_GROUP,
                 dataSource,
-                ROCKET_TX_MSG_TABLE
+                FANOUT_TX_MSG_TABLE
         );
         return new DefaultTxMsgClient(config);
     }
-}
\ No newline at end of file
+}